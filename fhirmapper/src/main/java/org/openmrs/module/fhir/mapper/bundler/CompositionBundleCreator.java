@@ -11,6 +11,10 @@ import ca.uhn.fhir.model.dstu2.valueset.BundleTypeEnum;
 import ca.uhn.fhir.model.dstu2.valueset.CompositionStatusEnum;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import org.apache.commons.collections.CollectionUtils;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.DrugOrder;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.Order;
@@ -19,11 +23,14 @@ import org.openmrs.module.fhir.mapper.model.FHIREncounter;
 import org.openmrs.module.fhir.mapper.model.FHIRResource;
 import org.openmrs.module.fhir.utils.CodeableConceptService;
 import org.openmrs.module.fhir.utils.HibernateLazyLoader;
+import org.openmrs.module.shrclient.dao.IdMappingRepository;
+import org.openmrs.module.shrclient.model.IdMappingType;
 import org.openmrs.module.shrclient.util.SystemProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -48,20 +55,29 @@ public class CompositionBundleCreator {
     @Autowired
     private CodeableConceptService codeableConceptService;
 
+    @Autowired
+    private IdMappingRepository idMappingRepository;
+
     public Bundle create(org.openmrs.Encounter emrEncounter, String healthId, SystemProperties systemProperties) {
         HibernateLazyLoader hibernateLazyLoader = new HibernateLazyLoader();
-        FHIREncounter fhirEncounter = encounterMapper.map(emrEncounter, healthId, systemProperties);
-        Composition composition = createComposition(emrEncounter.getEncounterDatetime(), fhirEncounter, systemProperties);
-        Bundle bundle = createBundle(composition);
-        addBundleEntry(bundle, new FHIRResource("Composition", asList(composition.getIdentifier()), composition));
-        FHIRResource encounterResource = new FHIRResource("Encounter", fhirEncounter.getIdentifier(), fhirEncounter.getEncounter());
-        addResourceSectionToComposition(composition, encounterResource);
-        addBundleEntry(bundle, encounterResource);
-
-        mapObs(emrEncounter, systemProperties, fhirEncounter, composition, bundle);
-        mapOrders(emrEncounter, systemProperties, hibernateLazyLoader, fhirEncounter, composition, bundle);
-
-        return bundle;
+        idMappingRepository.beginPrefetch();
+        try {
+            prefetchIdMappings(emrEncounter, hibernateLazyLoader);
+            FHIREncounter fhirEncounter = encounterMapper.map(emrEncounter, healthId, systemProperties);
+            Composition composition = createComposition(emrEncounter.getEncounterDatetime(), fhirEncounter, systemProperties);
+            Bundle bundle = createBundle(composition);
+            addBundleEntry(bundle, new FHIRResource("Composition", asList(composition.getIdentifier()), composition));
+            FHIRResource encounterResource = new FHIRResource("Encounter", fhirEncounter.getIdentifier(), fhirEncounter.getEncounter());
+            addResourceSectionToComposition(composition, encounterResource);
+            addBundleEntry(bundle, encounterResource);
+
+            mapObs(emrEncounter, systemProperties, fhirEncounter, composition, bundle);
+            mapOrders(emrEncounter, systemProperties, hibernateLazyLoader, fhirEncounter, composition, bundle);
+
+            return bundle;
+        } finally {
+            idMappingRepository.endPrefetch();
+        }
     }
 
     public void mapOrders(Encounter emrEncounter, SystemProperties systemProperties, HibernateLazyLoader hibernateLazyLoader, FHIREncounter fhirEncounter, Composition composition, Bundle bundle) {
@@ -89,6 +105,53 @@ public class CompositionBundleCreator {
         }
     }
 
+    /**
+     * Resolves the TR mappings of every concept, reference term and drug used in the encounter with one query
+     * per mapping type, so the handlers' lookups while mapping the obs and orders are served from the bundle's
+     * prefetched mappings.
+     */
+    private void prefetchIdMappings(Encounter emrEncounter, HibernateLazyLoader hibernateLazyLoader) {
+        Set<String> conceptUuids = new HashSet<>();
+        Set<String> referenceTermUuids = new HashSet<>();
+        Set<String> drugUuids = new HashSet<>();
+        for (Obs obs : emrEncounter.getAllObs(false)) {
+            addConcept(obs.getConcept(), conceptUuids, referenceTermUuids);
+            addConcept(obs.getValueCoded(), conceptUuids, referenceTermUuids);
+            if (obs.getValueDrug() != null) {
+                drugUuids.add(obs.getValueDrug().getUuid());
+            }
+        }
+        for (Order order : emrEncounter.getOrders()) {
+            order = hibernateLazyLoader.load(order);
+            addConcept(order.getConcept(), conceptUuids, referenceTermUuids);
+            if (order instanceof DrugOrder) {
+                DrugOrder drugOrder = (DrugOrder) order;
+                if (drugOrder.getDrug() != null) {
+                    drugUuids.add(drugOrder.getDrug().getUuid());
+                }
+                addConcept(drugOrder.getDoseUnits(), conceptUuids, referenceTermUuids);
+                addConcept(drugOrder.getRoute(), conceptUuids, referenceTermUuids);
+                addConcept(drugOrder.getQuantityUnits(), conceptUuids, referenceTermUuids);
+                addConcept(drugOrder.getDurationUnits(), conceptUuids, referenceTermUuids);
+                if (drugOrder.getFrequency() != null) {
+                    addConcept(drugOrder.getFrequency().getConcept(), conceptUuids, referenceTermUuids);
+                }
+            }
+        }
+        idMappingRepository.prefetchByInternalIds(conceptUuids, IdMappingType.CONCEPT);
+        idMappingRepository.prefetchByInternalIds(referenceTermUuids, IdMappingType.CONCEPT_REFERENCE_TERM);
+        idMappingRepository.prefetchByInternalIds(drugUuids, IdMappingType.MEDICATION);
+    }
+
+    private void addConcept(Concept concept, Set<String> conceptUuids, Set<String> referenceTermUuids) {
+        if (concept == null || !conceptUuids.add(concept.getUuid())) return;
+        for (ConceptMap mapping : concept.getConceptMappings()) {
+            if (mapping.getConceptMapType().getUuid().equals(ConceptMapType.SAME_AS_MAP_TYPE_UUID)) {
+                referenceTermUuids.add(mapping.getConceptReferenceTerm().getUuid());
+            }
+        }
+    }
+
     public Bundle createBundle(Composition composition) {
         Bundle bundle = new Bundle();
         bundle.setType(BundleTypeEnum.COLLECTION);
@@ -12,6 +12,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.ConceptService;
 import org.openmrs.module.fhir.mapper.model.EmrEncounter;
 import org.openmrs.module.fhir.mapper.model.ShrEncounterBundle;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.fhir.utils.OMRSConceptLookup;
 import org.openmrs.module.fhir.utils.TrValueSetType;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
@@ -33,6 +34,9 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
     @Autowired
     private ConceptService conceptService;
 
+    @Autowired
+    private MetadataRegistry metadataRegistry;
+
     @Autowired
     private OMRSConceptLookup conceptLookup;
 
@@ -45,7 +49,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
     public void map(IResource resource, EmrEncounter emrEncounter, ShrEncounterBundle shrEncounterBundle, SystemProperties systemProperties) {
         FamilyMemberHistory familyMemberHistory = (FamilyMemberHistory) resource;
         Obs familyHistoryObs = new Obs();
-        familyHistoryObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_NAME_FAMILY_HISTORY));
+        familyHistoryObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_FAMILY_HISTORY));
         mapRelationships(familyHistoryObs, familyMemberHistory);
         emrEncounter.addObs(familyHistoryObs);
     }
@@ -53,7 +57,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
 
     private void mapRelationships(Obs familyHistoryObs, FamilyMemberHistory familyMemberHistory) {
         Obs personObs = new Obs();
-        personObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_NAME_PERSON));
+        personObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_PERSON));
         mapRelation(personObs, familyMemberHistory);
         familyHistoryObs.addGroupMember(personObs);
     }
@@ -75,7 +79,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
 
     private Obs mapRelationCondition(FamilyMemberHistory.Condition conditon) {
         Obs result = new Obs();
-        result.setConcept(conceptService.getConceptByName(MRS_CONCEPT_NAME_RELATIONSHIP_CONDITION));
+        result.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_RELATIONSHIP_CONDITION));
         mapOnsetDate(result, conditon.getOnset());
         mapNotes(result, conditon);
         mapCondition(conditon, result);
@@ -85,7 +89,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
     private void mapCondition(FamilyMemberHistory.Condition condition, Obs result) {
         Obs value = new Obs();
         Concept answerConcept = getAnswer(condition);
-        value.setConcept(conceptService.getConceptByName(MRS_CONCEPT_NAME_RELATIONSHIP_DIAGNOSIS));
+        value.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_RELATIONSHIP_DIAGNOSIS));
         value.setValueCoded(answerConcept);
         result.addGroupMember(value);
     }
@@ -104,7 +108,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
     private void mapNotes(Obs result, FamilyMemberHistory.Condition condition) {
         if (condition.getNote() != null && !condition.getNote().isEmpty()) {
             Obs notes = new Obs();
-            Concept onsetDateConcept = conceptService.getConceptByName(MRS_CONCEPT_NAME_RELATIONSHIP_NOTES);
+            Concept onsetDateConcept = metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_RELATIONSHIP_NOTES);
             notes.setConcept(onsetDateConcept);
             notes.setValueText(condition.getNote().getText());
             result.addGroupMember(notes);
@@ -114,7 +118,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
     private void mapOnsetDate(Obs result, IDatatype onset) {
         if (onset != null && !onset.isEmpty() && onset instanceof AgeDt) {
             Obs ageValue = new Obs();
-            Concept onsetDateConcept = conceptService.getConceptByName(MRS_CONCEPT_NAME_ONSET_AGE);
+            Concept onsetDateConcept = metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_ONSET_AGE);
             ageValue.setConcept(onsetDateConcept);
             ageValue.setValueNumeric(((AgeDt) onset).getValue().doubleValue());
             result.addGroupMember(ageValue);
@@ -136,7 +140,7 @@ public class FHIRFamilyMemberHistoryMapper implements FHIRResourceMapper {
     private Obs setBornOnObs(FamilyMemberHistory familyMemberHistory) {
         if (familyMemberHistory.getBorn() != null && !familyMemberHistory.getBorn().isEmpty() && familyMemberHistory.getBorn() instanceof DateDt) {
             Obs bornOnObs = new Obs();
-            Concept bornOnConcept = conceptService.getConceptByName(MRS_CONCEPT_NAME_BORN_ON);
+            Concept bornOnConcept = metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_BORN_ON);
             java.util.Date observationValue = ((DateDt) familyMemberHistory.getBorn()).getValue();
             bornOnObs.setValueDate(observationValue);
             bornOnObs.setConcept(bornOnConcept);
@@ -9,9 +9,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.openmrs.Concept;
 import org.openmrs.Drug;
 import org.openmrs.Obs;
-import org.openmrs.api.ConceptService;
 import org.openmrs.module.fhir.mapper.model.EmrEncounter;
 import org.openmrs.module.fhir.mapper.model.ShrEncounterBundle;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.fhir.utils.OMRSConceptLookup;
 import org.openmrs.module.fhir.utils.TrValueSetType;
 import org.openmrs.module.shrclient.util.SystemProperties;
@@ -26,7 +26,7 @@ import static org.openmrs.module.fhir.MRSProperties.*;
 public class FHIRImmunizationMapper implements FHIRResourceMapper {
 
     @Autowired
-    private ConceptService conceptService;
+    private MetadataRegistry metadataRegistry;
 
     @Autowired
     private OMRSConceptLookup omrsConceptLookup;
@@ -41,10 +41,10 @@ public class FHIRImmunizationMapper implements FHIRResourceMapper {
         Immunization immunization = (Immunization) resource;
 
         Obs immunizationIncidentTmpl = new Obs();
-        immunizationIncidentTmpl.setConcept(conceptService.getConceptByName(MRS_CONCEPT_IMMUNIZATION_INCIDENT_TEMPLATE));
+        immunizationIncidentTmpl.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_IMMUNIZATION_INCIDENT_TEMPLATE));
 
         Obs immunizationIncidentGroup = new Obs();
-        immunizationIncidentGroup.setConcept(conceptService.getConceptByName(MRS_CONCEPT_IMMUNIZATION_INCIDENT_GROUP));
+        immunizationIncidentGroup.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_IMMUNIZATION_INCIDENT_GROUP));
         immunizationIncidentGroup.addGroupMember(getVaccinationDate(immunization));
         immunizationIncidentGroup.addGroupMember(getVaccineReported(immunization));
         immunizationIncidentGroup.addGroupMember(getVaccineRefused(immunization));
@@ -65,7 +65,7 @@ public class FHIRImmunizationMapper implements FHIRResourceMapper {
         for (AnnotationDt annotationDt : immunization.getNote()) {
             if (StringUtils.isNotBlank(annotationDt.getText())) {
                 Obs notesObs = new Obs();
-                notesObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_IMMUNIZATION_NOTE));
+                notesObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_IMMUNIZATION_NOTE));
                 notesObs.setValueText(annotationDt.getText());
                 immunizationIncidentGroup.addGroupMember(notesObs);
             }
@@ -127,7 +127,7 @@ public class FHIRImmunizationMapper implements FHIRResourceMapper {
 
     private Obs getVaccineCode(Immunization immunization) {
         Obs obs = new Obs();
-        obs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_VACCINE));
+        obs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_VACCINE));
         Drug drug = omrsConceptLookup.findDrug(immunization.getVaccineCode().getCoding());
         if (drug != null) {
             obs.setValueCoded(drug.getConcept());
@@ -159,7 +159,7 @@ public class FHIRImmunizationMapper implements FHIRResourceMapper {
         QuantityDt doseQuantity = immunization.getDoseQuantity();
         if (doseQuantity != null && !doseQuantity.isEmpty()) {
             Obs obs = new Obs();
-            obs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_DOSAGE));
+            obs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_DOSAGE));
             obs.setValueNumeric(doseQuantity.getValue().doubleValue());
             return obs;
         }
@@ -168,21 +168,21 @@ public class FHIRImmunizationMapper implements FHIRResourceMapper {
 
     private Obs getVaccineReported(Immunization immunization) {
         Obs obs = new Obs();
-        obs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_VACCINATION_REPORTED));
+        obs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_VACCINATION_REPORTED));
         obs.setValueBoolean(immunization.getReported());
         return obs;
     }
 
     private Obs getVaccineRefused(Immunization immunization) {
         Obs obs = new Obs();
-        obs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_VACCINATION_REFUSED));
+        obs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_VACCINATION_REFUSED));
         obs.setValueBoolean(immunization.getWasNotGiven());
         return obs;
     }
 
     private Obs getVaccinationDate(Immunization immunization) {
         Obs obs = new Obs();
-        obs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_VACCINATION_DATE));
+        obs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_VACCINATION_DATE));
         obs.setValueDate(immunization.getDate());
         return obs;
     }
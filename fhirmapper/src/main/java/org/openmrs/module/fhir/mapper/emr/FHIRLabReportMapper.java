@@ -14,6 +14,7 @@ import org.openmrs.module.fhir.mapper.model.EntityReference;
 import org.openmrs.module.fhir.mapper.model.ShrEncounterBundle;
 import org.openmrs.module.fhir.utils.FHIRBundleHelper;
 import org.openmrs.module.fhir.utils.FHIRDiagnosticReportRequestHelper;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.fhir.utils.OMRSConceptLookup;
 import org.openmrs.module.shrclient.util.SystemProperties;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,14 +34,17 @@ public class FHIRLabReportMapper implements FHIRResourceMapper {
     private FHIRObservationsMapper observationsMapper;
     private ConceptService conceptService;
     private FHIRDiagnosticReportRequestHelper fhirDiagnosticReportRequestHelper;
+    private MetadataRegistry metadataRegistry;
 
     @Autowired
     public FHIRLabReportMapper(OMRSConceptLookup omrsConceptLookup, FHIRObservationsMapper observationsMapper,
-                               ConceptService conceptService, FHIRDiagnosticReportRequestHelper fhirDiagnosticReportRequestHelper) {
+                               ConceptService conceptService, FHIRDiagnosticReportRequestHelper fhirDiagnosticReportRequestHelper,
+                               MetadataRegistry metadataRegistry) {
         this.omrsConceptLookup = omrsConceptLookup;
         this.observationsMapper = observationsMapper;
         this.conceptService = conceptService;
         this.fhirDiagnosticReportRequestHelper = fhirDiagnosticReportRequestHelper;
+        this.metadataRegistry = metadataRegistry;
     }
 
     @Override
@@ -74,7 +78,7 @@ public class FHIRLabReportMapper implements FHIRResourceMapper {
             final ca.uhn.fhir.model.dstu2.resource.Encounter shrEncounter = FHIRBundleHelper.getEncounter(shrEncounterBundle.getBundle());
             String facilityId = new EntityReference().parse(Location.class, shrEncounter.getServiceProvider().getReference().getValue());
             ConceptDatatype textDatatype = conceptService.getConceptDatatypeByUuid(ConceptDatatype.TEXT_UUID);
-            ConceptClass labSetClass = conceptService.getConceptClassByName(MRSProperties.MRS_CONCEPT_CLASS_LAB_SET);
+            ConceptClass labSetClass = metadataRegistry.getConceptClassByName(MRSProperties.MRS_CONCEPT_CLASS_LAB_SET);
             concept = omrsConceptLookup.createLocalConceptFromCodings(diagnosticReport.getCode().getCoding(), facilityId, labSetClass, textDatatype);
         }
 
@@ -100,7 +104,7 @@ public class FHIRLabReportMapper implements FHIRResourceMapper {
     private Obs getNotes(Observation observation, Order order) {
         String comments = observation.getComments();
         if (StringUtils.isNotBlank(comments)) {
-            Concept labNotesConcept = conceptService.getConceptByName(MRS_CONCEPT_NAME_LAB_NOTES);
+            Concept labNotesConcept = metadataRegistry.getConceptByName(MRS_CONCEPT_NAME_LAB_NOTES);
             Obs notesObs = buildObs(labNotesConcept, order);
             notesObs.setValueText(comments);
             return notesObs;
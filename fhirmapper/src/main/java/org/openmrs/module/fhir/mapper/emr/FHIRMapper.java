@@ -4,10 +4,9 @@ import ca.uhn.fhir.model.dstu2.composite.PeriodDt;
 import ca.uhn.fhir.model.dstu2.valueset.EncounterClassEnum;
 import org.apache.commons.collections4.CollectionUtils;
 import org.openmrs.*;
-import org.openmrs.api.EncounterService;
-import org.openmrs.api.VisitService;
 import org.openmrs.module.fhir.mapper.model.ShrEncounterBundle;
 import org.openmrs.module.fhir.utils.FHIRBundleHelper;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.fhir.utils.ProviderLookupService;
 import org.openmrs.module.shrclient.ShrClientCallback;
 import org.openmrs.module.shrclient.util.SystemProperties;
@@ -24,18 +23,16 @@ import static org.openmrs.module.fhir.MRSProperties.MRS_OUT_PATIENT_VISIT_TYPE;
 public class FHIRMapper {
     public FHIREncounterMapper fhirEncounterMapper;
     private FHIRSubResourceMapper fhirSubResourceMapper;
-    private EncounterService encounterService;
     private ProviderLookupService providerLookupService;
-    private VisitService visitService;
+    private MetadataRegistry metadataRegistry;
 
     @Autowired
     public FHIRMapper(FHIREncounterMapper fhirEncounterMapper, FHIRSubResourceMapper fhirSubResourceMapper,
-                      EncounterService encounterService, ProviderLookupService providerLookupService, VisitService visitService) {
+                      ProviderLookupService providerLookupService, MetadataRegistry metadataRegistry) {
         this.fhirEncounterMapper = fhirEncounterMapper;
         this.fhirSubResourceMapper = fhirSubResourceMapper;
-        this.encounterService = encounterService;
         this.providerLookupService = providerLookupService;
-        this.visitService = visitService;
+        this.metadataRegistry = metadataRegistry;
     }
 
     public Encounter map(Patient emrPatient, ShrEncounterBundle shrEncounterBundle, SystemProperties systemProperties) throws ParseException {
@@ -50,7 +47,7 @@ public class FHIRMapper {
 
     private void addEncounterProviders(ca.uhn.fhir.model.dstu2.resource.Encounter fhirEncounter, Encounter openmrsEncounter) {
         List<Provider> encounterProviders = fhirEncounterMapper.getEncounterProviders(fhirEncounter);
-        EncounterRole unknownRole = encounterService.getEncounterRoleByUuid(EncounterRole.UNKNOWN_ENCOUNTER_ROLE_UUID);
+        EncounterRole unknownRole = metadataRegistry.getEncounterRoleByUuid(EncounterRole.UNKNOWN_ENCOUNTER_ROLE_UUID);
         if (CollectionUtils.isEmpty(openmrsEncounter.getEncounterProviders())) {
             Provider provider = providerLookupService.getShrClientSystemProvider();
             encounterProviders.add(provider);
@@ -73,29 +70,17 @@ public class FHIRMapper {
     public VisitType getVisitType(ShrEncounterBundle shrEncounterBundle) {
         ca.uhn.fhir.model.dstu2.resource.Encounter fhirEncounter = FHIRBundleHelper.getEncounter(shrEncounterBundle.getBundle());
         String encounterClass = fhirEncounter.getClassElement();
-        List<VisitType> allVisitTypes = visitService.getAllVisitTypes();
         if (encounterClass != null) {
-            VisitType encVisitType = identifyVisitTypeByName(allVisitTypes, encounterClass);
+            VisitType encVisitType = metadataRegistry.getVisitTypeByName(encounterClass);
             if (encVisitType != null) {
                 return encVisitType;
             }
 
             if (encounterClass.equals(EncounterClassEnum.INPATIENT.getCode())) {
-                return identifyVisitTypeByName(allVisitTypes, MRS_IN_PATIENT_VISIT_TYPE);
+                return metadataRegistry.getVisitTypeByName(MRS_IN_PATIENT_VISIT_TYPE);
             }
         }
-        return identifyVisitTypeByName(allVisitTypes, MRS_OUT_PATIENT_VISIT_TYPE);
-    }
-
-        private VisitType identifyVisitTypeByName (List < VisitType > allVisitTypes, String visitTypeName){
-            VisitType encVisitType = null;
-            for (VisitType visitType : allVisitTypes) {
-                if (visitType.getName().equalsIgnoreCase(visitTypeName)) {
-                    encVisitType = visitType;
-                    break;
-                }
-            }
-            return encVisitType;
+        return metadataRegistry.getVisitTypeByName(MRS_OUT_PATIENT_VISIT_TYPE);
     }
 
     public PeriodDt getVisitPeriod(ShrEncounterBundle shrEncounterBundle) {
@@ -18,6 +18,7 @@ import org.openmrs.module.fhir.mapper.model.EmrEncounter;
 import org.openmrs.module.fhir.mapper.model.EntityReference;
 import org.openmrs.module.fhir.mapper.model.ShrEncounterBundle;
 import org.openmrs.module.fhir.utils.FHIRBundleHelper;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.fhir.utils.OMRSConceptLookup;
 import org.openmrs.module.fhir.utils.TrValueSetType;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
@@ -35,6 +36,9 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
     @Autowired
     private ConceptService conceptService;
 
+    @Autowired
+    private MetadataRegistry metadataRegistry;
+
     @Autowired
     private OMRSConceptLookup omrsConceptLookup;
 
@@ -57,7 +61,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
         Procedure procedure = (Procedure) resource;
 
         Obs proceduresObs = new Obs();
-        proceduresObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_PROCEDURES_TEMPLATE));
+        proceduresObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURES_TEMPLATE));
 
         Order procedureOrder = getProcedureOrder(procedure);
         final ca.uhn.fhir.model.dstu2.resource.Encounter shrEncounter = FHIRBundleHelper.getEncounter(shrEncounterBundle.getBundle());
@@ -88,7 +92,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
             return;
         }
         Obs fulfillmentObs = new Obs();
-        fulfillmentObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_ORDER_FULFILLMENT_FORM));
+        fulfillmentObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_ORDER_FULFILLMENT_FORM));
         fulfillmentObs.addGroupMember(proceduresObs);
         fulfillmentObs.setOrder(procedureOrder);
         emrEncounter.addObs(fulfillmentObs);
@@ -129,7 +133,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
     private void getProcedureNotesObs(Procedure procedure, Obs proceduresObs, Order procedureOrder) {
         for (AnnotationDt annotationDt : procedure.getNotes()) {
             Obs procedureNotesObs = new Obs();
-            procedureNotesObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_NOTES));
+            procedureNotesObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_NOTES));
             procedureNotesObs.setValueText(annotationDt.getText());
             procedureNotesObs.setOrder(procedureOrder);
             proceduresObs.addGroupMember(procedureNotesObs);
@@ -138,7 +142,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
 
     private Obs getDiagnosisStudyObs(DiagnosticReport diagnosticReport, Bundle bundle, Order procedureOrder) {
         Obs diagnosisStudyObs = new Obs();
-        diagnosisStudyObs.setConcept(conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_DIAGNOSTIC_STUDY));
+        diagnosisStudyObs.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_DIAGNOSTIC_STUDY));
 
         Obs diagnosticTest = mapObservationForConcept(diagnosticReport.getCode(), MRS_CONCEPT_PROCEDURE_DIAGNOSTIC_TEST);
         if (diagnosticTest != null) {
@@ -163,7 +167,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
     }
 
     private void addDiagnosticResults(DiagnosticReport diagnosticReport, Bundle bundle, Obs diagnosisStudyObs, Order procedureOrder) {
-        Concept diagnosticResultConcept = conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_DIAGNOSTIC_RESULT);
+        Concept diagnosticResultConcept = metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_DIAGNOSTIC_RESULT);
         for (ResourceReferenceDt resultReference : diagnosticReport.getResult()) {
             Obs result = new Obs();
             result.setConcept(diagnosticResultConcept);
@@ -176,7 +180,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
 
     private Obs getProcedureType(Procedure procedure, Order procedureOrder, String facilityId) {
         CodeableConceptDt procedureType = procedure.getCode();
-        Concept concept = conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_TYPE);
+        Concept concept = metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_TYPE);
         Concept answerConcept = omrsConceptLookup.findOrCreateLocalConceptByCodings(procedureType.getCoding(), facilityId, ConceptClass.PROCEDURE_UUID, ConceptDatatype.N_A_UUID);
         if (concept != null && answerConcept != null) {
             Obs obs = new Obs();
@@ -193,7 +197,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
         Obs startDate = null;
         if (period != null) {
             startDate = new Obs();
-            startDate.setConcept(conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_START_DATE));
+            startDate.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_START_DATE));
             startDate.setValueDate(period.getStart());
             startDate.setOrder(procedureOrder);
         }
@@ -205,7 +209,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
         Obs endDate = null;
         if (period != null) {
             endDate = new Obs();
-            endDate.setConcept(conceptService.getConceptByName(MRS_CONCEPT_PROCEDURE_END_DATE));
+            endDate.setConcept(metadataRegistry.getConceptByName(MRS_CONCEPT_PROCEDURE_END_DATE));
             endDate.setValueDate(period.getEnd());
             endDate.setOrder(procedureOrder);
         }
@@ -234,7 +238,7 @@ public class FHIRProcedureMapper implements FHIRResourceMapper {
     }
 
     private Obs mapObservationForConcept(CodeableConceptDt codeableConcept, String conceptName) {
-        Concept concept = conceptService.getConceptByName(conceptName);
+        Concept concept = metadataRegistry.getConceptByName(conceptName);
         Concept answerConcept = omrsConceptLookup.findConceptByCodeOrDisplay(codeableConcept.getCoding());
         if (concept != null && answerConcept != null) {
             Obs obs = new Obs();
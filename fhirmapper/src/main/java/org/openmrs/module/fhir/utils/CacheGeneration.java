@@ -0,0 +1,49 @@
+package org.openmrs.module.fhir.utils;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Guards a cache that is dropped whenever what it holds changes. A value loaded while the cache was dropped is not
+ * to be cached, see isCurrent.
+ * Changes are usually made within a transaction, and a lookup from another thread before it commits still reads, and
+ * caches, the previously committed state. So the cache is dropped again once that transaction completes.
+ */
+public class CacheGeneration {
+    private final AtomicLong generation = new AtomicLong();
+    private final Runnable clearCache;
+
+    public CacheGeneration(Runnable clearCache) {
+        this.clearCache = clearCache;
+    }
+
+    /**
+     * To be taken before loading a value, and handed to isCurrent before caching it.
+     */
+    public long current() {
+        return generation.get();
+    }
+
+    public boolean isCurrent(long loadedAtGeneration) {
+        return loadedAtGeneration == generation.get();
+    }
+
+    public void invalidate() {
+        clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        }
+    }
+
+    private void clear() {
+        generation.incrementAndGet();
+        clearCache.run();
+    }
+}
@@ -0,0 +1,131 @@
+package org.openmrs.module.fhir.utils;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptName;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lookup tables over the answers and set members of value set concepts, built the first time a concept is looked
+ * into and dropped whenever a concept changes (see invalidate). Only concept ids are kept, so no concept is held on
+ * to beyond the hibernate session it was loaded in.
+ * A code is matched against reference term codes, short names and the fully specified name of each answer or member,
+ * in their order, and the first concept matching it wins, same as scanning them would.
+ */
+@Component
+public class ConceptLookupIndex {
+    private final ConcurrentMap<String, Integer> valueSetConceptIdsByName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Map<String, Integer>> answerIdsByCode = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Map<String, Integer>> memberIdsByCode = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Map<String, Integer>> memberIdsByName = new ConcurrentHashMap<>();
+    private final CacheGeneration generation = new CacheGeneration(new Runnable() {
+        @Override
+        public void run() {
+            valueSetConceptIdsByName.clear();
+            answerIdsByCode.clear();
+            memberIdsByCode.clear();
+            memberIdsByName.clear();
+        }
+    });
+
+    public Integer findValueSetConceptId(String valueSetName) {
+        return valueSetConceptIdsByName.get(valueSetName);
+    }
+
+    public void putValueSetConceptId(String valueSetName, Integer conceptId) {
+        if (conceptId != null) {
+            valueSetConceptIdsByName.put(valueSetName, conceptId);
+        }
+    }
+
+    public Integer findAnswerId(Concept valueSetConcept, String code) {
+        Map<String, Integer> answerIds = answerIdsByCode.get(valueSetConcept.getConceptId());
+        if (answerIds == null) {
+            long loadedAtGeneration = generation.current();
+            answerIds = indexByCode(getAnswerConcepts(valueSetConcept));
+            cache(answerIdsByCode, valueSetConcept, answerIds, loadedAtGeneration);
+        }
+        return answerIds.get(code);
+    }
+
+    public Integer findMemberId(Concept parentConcept, String code) {
+        Map<String, Integer> memberIds = memberIdsByCode.get(parentConcept.getConceptId());
+        if (memberIds == null) {
+            long loadedAtGeneration = generation.current();
+            memberIds = indexByCode(parentConcept.getSetMembers());
+            cache(memberIdsByCode, parentConcept, memberIds, loadedAtGeneration);
+        }
+        return memberIds.get(code);
+    }
+
+    public Integer findMemberIdByName(Concept parentConcept, String name) {
+        Map<String, Integer> memberIds = memberIdsByName.get(parentConcept.getConceptId());
+        if (memberIds == null) {
+            long loadedAtGeneration = generation.current();
+            memberIds = indexByName(parentConcept.getSetMembers());
+            cache(memberIdsByName, parentConcept, memberIds, loadedAtGeneration);
+        }
+        return memberIds.get(name);
+    }
+
+    public void invalidate() {
+        generation.invalidate();
+    }
+
+    private List<Concept> getAnswerConcepts(Concept valueSetConcept) {
+        List<Concept> answerConcepts = new ArrayList<>();
+        for (ConceptAnswer answer : valueSetConcept.getAnswers(false)) {
+            answerConcepts.add(answer.getAnswerConcept());
+        }
+        return answerConcepts;
+    }
+
+    private Map<String, Integer> indexByCode(List<Concept> concepts) {
+        Map<String, Integer> conceptIds = new HashMap<>();
+        for (Concept concept : concepts) {
+            for (ConceptMap conceptMap : concept.getConceptMappings()) {
+                putIfAbsent(conceptIds, conceptMap.getConceptReferenceTerm().getCode(), concept);
+            }
+            for (ConceptName shortName : concept.getShortNames()) {
+                putIfAbsent(conceptIds, shortName.getName(), concept);
+            }
+            if (concept.getName() != null) {
+                putIfAbsent(conceptIds, concept.getName().getName(), concept);
+            }
+        }
+        return conceptIds;
+    }
+
+    private Map<String, Integer> indexByName(List<Concept> concepts) {
+        Map<String, Integer> conceptIds = new HashMap<>();
+        for (Concept concept : concepts) {
+            for (ConceptName conceptName : concept.getNames()) {
+                putIfAbsent(conceptIds, conceptName.getName(), concept);
+            }
+        }
+        return conceptIds;
+    }
+
+    private void putIfAbsent(Map<String, Integer> conceptIds, String key, Concept concept) {
+        if (key != null && !conceptIds.containsKey(key)) {
+            conceptIds.put(key, concept.getConceptId());
+        }
+    }
+
+    /**
+     * Not cached if a concept changed while it was being built, or for a concept that is not saved yet.
+     */
+    private void cache(ConcurrentMap<Integer, Map<String, Integer>> index, Concept concept, Map<String, Integer> conceptIds, long loadedAtGeneration) {
+        if (concept.getConceptId() != null && generation.isCurrent(loadedAtGeneration)) {
+            index.put(concept.getConceptId(), conceptIds);
+        }
+    }
+}
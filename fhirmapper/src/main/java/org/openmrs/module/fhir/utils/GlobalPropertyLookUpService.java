@@ -3,21 +3,86 @@ package org.openmrs.module.fhir.utils;
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.GlobalProperty;
 import org.openmrs.api.AdministrationService;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.fhir.mapper.model.OpenMRSOrderTypeMap;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Arrays.asList;
 import static org.openmrs.module.fhir.MRSProperties.GLOBAL_PROPERTY_ORDER_TYPE_TO_FHIR_CODE_MAPPINGS;
 
+/**
+ * Global property values are cached, including the absence of a value, and so are the order types parsed from
+ * GLOBAL_PROPERTY_ORDER_TYPE_TO_FHIR_CODE_MAPPINGS. The cached values are dropped when a property is saved or deleted
+ * through the AdministrationService (see globalPropertyChanged), and again once the saving transaction completes, see
+ * CacheGeneration. A value is read again at the latest after VALUE_TIME_TO_LIVE_MILLIS, for changes made straight in
+ * the database.
+ */
 @Component
-public class GlobalPropertyLookUpService {
+public class GlobalPropertyLookUpService implements GlobalPropertyListener {
+    private static final long VALUE_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final ObjectMapper ORDER_TYPES_MAPPER = new ObjectMapper();
+
+    static {
+        ORDER_TYPES_MAPPER.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private final ConcurrentMap<String, CachedValue> propertyValues = new ConcurrentHashMap<>();
+    private volatile ParsedOrderTypes parsedOrderTypes;
+    private final CacheGeneration generation = new CacheGeneration(new Runnable() {
+        @Override
+        public void run() {
+            propertyValues.clear();
+        }
+    });
 
     public String getGlobalPropertyValue(String propertyName) {
+        CachedValue cachedValue = propertyValues.get(propertyName);
+        if (cachedValue == null || cachedValue.isExpired()) {
+            long loadedAtGeneration = generation.current();
+            cachedValue = new CachedValue(readGlobalPropertyValue(propertyName));
+            if (generation.isCurrent(loadedAtGeneration)) {
+                propertyValues.put(propertyName, cachedValue);
+            }
+        }
+        return cachedValue.value;
+    }
+
+    public List<OpenMRSOrderTypeMap> getConfiguredOrderTypes() {
+        String orderTypes = getGlobalPropertyValue(GLOBAL_PROPERTY_ORDER_TYPE_TO_FHIR_CODE_MAPPINGS);
+        if (StringUtils.isBlank(orderTypes)) return Collections.emptyList();
+        ParsedOrderTypes parsed = parsedOrderTypes;
+        if (parsed == null || !parsed.source.equals(orderTypes)) {
+            parsed = new ParsedOrderTypes(orderTypes, parseOrderTypes(orderTypes));
+            parsedOrderTypes = parsed;
+        }
+        return parsed.orderTypes;
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return true;
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        generation.invalidate();
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        generation.invalidate();
+    }
+
+    private String readGlobalPropertyValue(String propertyName) {
         AdministrationService administrationService = Context.getAdministrationService();
         String propertyValue = administrationService.getGlobalProperty(propertyName);
 
@@ -27,15 +92,34 @@ public class GlobalPropertyLookUpService {
         return null;
     }
 
-    public List<OpenMRSOrderTypeMap> getConfiguredOrderTypes() {
-        String orderTypes = getGlobalPropertyValue(GLOBAL_PROPERTY_ORDER_TYPE_TO_FHIR_CODE_MAPPINGS);
-        if (StringUtils.isBlank(orderTypes)) return Collections.emptyList();
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private List<OpenMRSOrderTypeMap> parseOrderTypes(String orderTypes) {
         try {
-            return asList(mapper.readValue(orderTypes, OpenMRSOrderTypeMap[].class));
+            return Collections.unmodifiableList(asList(ORDER_TYPES_MAPPER.readValue(orderTypes, OpenMRSOrderTypeMap[].class)));
         } catch (Exception e) {
             throw new RuntimeException(String.format("Invalid Property value for %s", GLOBAL_PROPERTY_ORDER_TYPE_TO_FHIR_CODE_MAPPINGS));
         }
     }
+
+    private static class CachedValue {
+        private final String value;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private CachedValue(String value) {
+            this.value = value;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - loadedAt > VALUE_TIME_TO_LIVE_MILLIS;
+        }
+    }
+
+    private static class ParsedOrderTypes {
+        private final String source;
+        private final List<OpenMRSOrderTypeMap> orderTypes;
+
+        private ParsedOrderTypes(String source, List<OpenMRSOrderTypeMap> orderTypes) {
+            this.source = source;
+            this.orderTypes = orderTypes;
+        }
+    }
 }
@@ -0,0 +1,197 @@
+package org.openmrs.module.fhir.utils;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.EncounterRole;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.ProviderAttributeType;
+import org.openmrs.VisitType;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.VisitService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the fixed metadata the mappers look up by name (template concepts, concept classes, encounter roles,
+ * visit types, person and provider attribute types) once, and then by id, which hibernate serves from its caches.
+ * Metadata not found is remembered as well. Everything is dropped whenever metadata changes (see invalidate).
+ * Metadata without an id, i.e. not saved, is never remembered.
+ */
+@Component
+public class MetadataRegistry {
+    private static final Integer NOT_FOUND = -1;
+
+    private final MetadataType<Concept> concepts;
+    private final MetadataType<ConceptClass> conceptClasses;
+    private final MetadataType<EncounterRole> encounterRoles;
+    private final MetadataType<VisitType> visitTypes;
+    private final MetadataType<PersonAttributeType> personAttributeTypes;
+    private final MetadataType<ProviderAttributeType> providerAttributeTypes;
+    private final List<MetadataType<?>> metadataTypes = new ArrayList<>();
+    private final CacheGeneration generation = new CacheGeneration(new Runnable() {
+        @Override
+        public void run() {
+            for (MetadataType<?> metadataType : metadataTypes) {
+                metadataType.ids.clear();
+            }
+        }
+    });
+
+    @Autowired
+    public MetadataRegistry(final ConceptService conceptService, final EncounterService encounterService,
+                            final VisitService visitService, final PersonService personService,
+                            final ProviderService providerService) {
+        concepts = register(new MetadataType<Concept>() {
+            @Override
+            Concept findByKey(String name) {
+                return conceptService.getConceptByName(name);
+            }
+
+            @Override
+            Concept findById(Integer id) {
+                return conceptService.getConcept(id);
+            }
+        });
+        conceptClasses = register(new MetadataType<ConceptClass>() {
+            @Override
+            ConceptClass findByKey(String name) {
+                return conceptService.getConceptClassByName(name);
+            }
+
+            @Override
+            ConceptClass findById(Integer id) {
+                return conceptService.getConceptClass(id);
+            }
+        });
+        encounterRoles = register(new MetadataType<EncounterRole>() {
+            @Override
+            EncounterRole findByKey(String uuid) {
+                return encounterService.getEncounterRoleByUuid(uuid);
+            }
+
+            @Override
+            EncounterRole findById(Integer id) {
+                return encounterService.getEncounterRole(id);
+            }
+        });
+        visitTypes = register(new MetadataType<VisitType>() {
+            @Override
+            VisitType findByKey(String name) {
+                for (VisitType visitType : visitService.getAllVisitTypes()) {
+                    if (visitType.getName().equalsIgnoreCase(name)) {
+                        return visitType;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            VisitType findById(Integer id) {
+                return visitService.getVisitType(id);
+            }
+        });
+        personAttributeTypes = register(new MetadataType<PersonAttributeType>() {
+            @Override
+            PersonAttributeType findByKey(String name) {
+                return personService.getPersonAttributeTypeByName(name);
+            }
+
+            @Override
+            PersonAttributeType findById(Integer id) {
+                return personService.getPersonAttributeType(id);
+            }
+        });
+        providerAttributeTypes = register(new MetadataType<ProviderAttributeType>() {
+            @Override
+            ProviderAttributeType findByKey(String name) {
+                for (ProviderAttributeType providerAttributeType : providerService.getAllProviderAttributeTypes(false)) {
+                    if (providerAttributeType.getName().equals(name)) {
+                        return providerAttributeType;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            ProviderAttributeType findById(Integer id) {
+                return providerService.getProviderAttributeType(id);
+            }
+        });
+    }
+
+    public Concept getConceptByName(String name) {
+        return concepts.get(name);
+    }
+
+    public ConceptClass getConceptClassByName(String name) {
+        return conceptClasses.get(name);
+    }
+
+    public EncounterRole getEncounterRoleByUuid(String uuid) {
+        return encounterRoles.get(uuid);
+    }
+
+    /**
+     * The visit type named so, ignoring case.
+     */
+    public VisitType getVisitTypeByName(String name) {
+        return visitTypes.get(name);
+    }
+
+    public PersonAttributeType getPersonAttributeTypeByName(String name) {
+        return personAttributeTypes.get(name);
+    }
+
+    /**
+     * The unretired provider attribute type named so.
+     */
+    public ProviderAttributeType getProviderAttributeTypeByName(String name) {
+        return providerAttributeTypes.get(name);
+    }
+
+    public void invalidate() {
+        generation.invalidate();
+    }
+
+    private <T extends OpenmrsObject> MetadataType<T> register(MetadataType<T> metadataType) {
+        metadataTypes.add(metadataType);
+        return metadataType;
+    }
+
+    private abstract class MetadataType<T extends OpenmrsObject> {
+        private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+        abstract T findByKey(String key);
+
+        abstract T findById(Integer id);
+
+        T get(String key) {
+            Integer id = key != null ? ids.get(key) : null;
+            if (NOT_FOUND.equals(id)) {
+                return null;
+            }
+            if (id != null) {
+                T metadata = findById(id);
+                if (metadata != null) {
+                    return metadata;
+                }
+            }
+            long loadedAtGeneration = generation.current();
+            T metadata = findByKey(key);
+            Integer foundId = metadata != null ? metadata.getId() : NOT_FOUND;
+            if (key != null && foundId != null && generation.isCurrent(loadedAtGeneration)) {
+                ids.put(key, foundId);
+            }
+            return metadata;
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class OMRSConceptLookup {
     private ConceptService conceptService;
     private IdMappingRepository idMappingsRepository;
     private GlobalPropertyLookUpService globalPropertyLookUpService;
+    private ConceptLookupIndex conceptLookupIndex;
 
     public static final String TR_DRUG_REST_URL = "/ws/rest/v1/tr/drugs";
     public static final String WS_REST_V1_TR_CONCEPTS = "/ws/rest/v1/tr/concepts/";
@@ -34,10 +35,12 @@ public class OMRSConceptLookup {
     private ConceptMapType conceptMapTypeByName;
 
     @Autowired
-    public OMRSConceptLookup(ConceptService conceptService, IdMappingRepository repository, GlobalPropertyLookUpService globalPropertyLookUpService) {
+    public OMRSConceptLookup(ConceptService conceptService, IdMappingRepository repository, GlobalPropertyLookUpService globalPropertyLookUpService,
+                             ConceptLookupIndex conceptLookupIndex) {
         this.conceptService = conceptService;
         this.idMappingsRepository = repository;
         this.globalPropertyLookUpService = globalPropertyLookUpService;
+        this.conceptLookupIndex = conceptLookupIndex;
     }
 
     public Concept findConceptByCodeOrDisplay(List<CodingDt> codings) {
@@ -89,7 +92,7 @@ public class OMRSConceptLookup {
 
     public Concept findConceptFromValueSetCode(String system, String code) {
         String valueSet = StringUtils.replace(StringUtils.substringAfterLast(system, "/"), "-", " ");
-        Concept valueSetConcept = conceptService.getConceptByName(valueSet);
+        Concept valueSetConcept = findValueSetConcept(valueSet);
         Concept answerConcept = findAnswerConceptFromValueSetCode(valueSetConcept, code);
         return answerConcept == null ? conceptService.getConceptByName(code) : answerConcept;
     }
@@ -128,27 +131,38 @@ public class OMRSConceptLookup {
     }
 
     public Concept findAnswerConceptFromValueSetCode(Concept codedConcept, String valueSetCode) {
-        if (codedConcept != null) {
-            for (ConceptAnswer answer : codedConcept.getAnswers(false)) {
-                Concept answerConcept = answer.getAnswerConcept();
-                if (isConceptForValuesetCode(valueSetCode, answerConcept))
-                    return answerConcept;
-            }
+        if (codedConcept == null) {
+            return null;
+        }
+        if (codedConcept.getConceptId() != null) {
+            return getConcept(conceptLookupIndex.findAnswerId(codedConcept, valueSetCode));
+        }
+        for (ConceptAnswer answer : codedConcept.getAnswers(false)) {
+            Concept answerConcept = answer.getAnswerConcept();
+            if (isConceptForValuesetCode(valueSetCode, answerConcept))
+                return answerConcept;
         }
         return null;
     }
 
     public Concept findMemberConceptFromValueSetCode(Concept parentConcept, String code) {
-        if (parentConcept != null) {
-            for (Concept memberConcept : parentConcept.getSetMembers()) {
-                if (isConceptForValuesetCode(code, memberConcept))
-                    return memberConcept;
-            }
+        if (parentConcept == null) {
+            return null;
+        }
+        if (parentConcept.getConceptId() != null) {
+            return getConcept(conceptLookupIndex.findMemberId(parentConcept, code));
+        }
+        for (Concept memberConcept : parentConcept.getSetMembers()) {
+            if (isConceptForValuesetCode(code, memberConcept))
+                return memberConcept;
         }
         return null;
     }
 
     public Concept findMemberFromDisplayName(Concept parentConcept, final String name) {
+        if (parentConcept.getConceptId() != null) {
+            return getConcept(conceptLookupIndex.findMemberIdByName(parentConcept, name));
+        }
         Collection<Concept> matchedConcepts = select(parentConcept.getSetMembers(), new Predicate<Concept>() {
             @Override
             public boolean evaluate(Concept concept) {
@@ -181,6 +195,22 @@ public class OMRSConceptLookup {
         });
     }
 
+    private Concept findValueSetConcept(String valueSetName) {
+        Integer valueSetConceptId = conceptLookupIndex.findValueSetConceptId(valueSetName);
+        if (valueSetConceptId != null) {
+            return conceptService.getConcept(valueSetConceptId);
+        }
+        Concept valueSetConcept = conceptService.getConceptByName(valueSetName);
+        if (valueSetConcept != null) {
+            conceptLookupIndex.putValueSetConceptId(valueSetName, valueSetConcept.getConceptId());
+        }
+        return valueSetConcept;
+    }
+
+    private Concept getConcept(Integer conceptId) {
+        return conceptId != null ? conceptService.getConcept(conceptId) : null;
+    }
+
     private Drug findDrug(String drugExternalId) {
         IdMapping idMapping = idMappingsRepository.findByExternalId(drugExternalId, IdMappingType.MEDICATION);
         if (idMapping != null) {
@@ -4,16 +4,46 @@ public class PropertyKeyConstants {
     public static final String PROVIDER_REFERENCE_PATH = "pr.referenceUrl";
     public static final String FACILITY_URL_FORMAT = "fr.facilityUrlFormat";
     public static final String FACILITY_REFERENCE_PATH = "fr.referenceUrl";
+    public static final String FR_PAGE_SIZE = "fr.pageSize";
+    public static final String FR_MAX_ENTRIES_PER_RUN = "fr.maxEntriesPerRun";
+    public static final String FR_PIPELINED = "fr.pipelined";
+    public static final String FR_CURSOR_SYNC = "fr.cursorSync";
+    public static final String FR_CONNECT_TIMEOUT = "fr.connectTimeout";
+    public static final String FR_SOCKET_TIMEOUT = "fr.socketTimeout";
     public static final String LOCATION_REFERENCE_PATH = "lr.referenceUrl";
+    public static final String LR_PAGE_SIZE = "lr.pageSize";
+    public static final String LR_MAX_ENTRIES_PER_RUN = "lr.maxEntriesPerRun";
+    public static final String LR_PIPELINED = "lr.pipelined";
+    public static final String LR_CURSOR_SYNC = "lr.cursorSync";
+    public static final String LR_CONNECT_TIMEOUT = "lr.connectTimeout";
+    public static final String LR_SOCKET_TIMEOUT = "lr.socketTimeout";
+    public static final String PR_PAGE_SIZE = "pr.pageSize";
+    public static final String PR_MAX_ENTRIES_PER_RUN = "pr.maxEntriesPerRun";
+    public static final String PR_CURSOR_SYNC = "pr.cursorSync";
+    public static final String PR_CONNECT_TIMEOUT = "pr.connectTimeout";
+    public static final String PR_SOCKET_TIMEOUT = "pr.socketTimeout";
 
     public static final String MCI_REFERENCE_PATH = "mci.referenceUrl";
     public static final String MCI_PATIENT_CONTEXT = "mci.patientContext";
     public static final String MCI_MAX_FAILED_EVENT = "mci.maxFailedEventCount";
+    public static final String MCI_CONNECT_TIMEOUT = "mci.connectTimeout";
+    public static final String MCI_SOCKET_TIMEOUT = "mci.socketTimeout";
+    public static final String MCI_PATIENT_PUSH_PARALLELISM = "mci.patientPushParallelism";
+    public static final String MCI_PATIENT_SYNC_WAIT = "mci.patientSyncWaitSeconds";
+    public static final String MCI_COMPRESS_REQUESTS = "mci.compressRequests";
 
     public static final String SHR_REFERENCE_PATH = "shr.referenceUrl";
     public static final String SHR_CATCHMENT_PATH_PATTERN = "shr.catchmentPathPattern"; ///catchments/%s/encounters
     public static final String SHR_PATIENT_ENC_PATH_PATTERN = "shr.patientEncPathPattern"; ///patients/%s/encounters
     public static final String SHR_MAX_FAILED_EVENT = "shr.maxFailedEventCount";
+    public static final String SHR_CONNECT_TIMEOUT = "shr.connectTimeout";
+    public static final String SHR_SOCKET_TIMEOUT = "shr.socketTimeout";
+    public static final String SHR_CATCHMENT_SYNC_PARALLELISM = "shr.catchmentSyncParallelism";
+    public static final String SHR_CATCHMENT_SYNC_DEADLINE = "shr.catchmentSyncDeadlineSeconds";
+    public static final String SHR_ENCOUNTER_PUSH_PARALLELISM = "shr.encounterPushParallelism";
+    public static final String SHR_CONTENT_TYPE = "shr.contentType"; //xml or json
+    public static final String SHR_COMPRESS_REQUESTS = "shr.compressRequests";
+    public static final String SHR_MCI_PATIENT_CACHE_TTL = "shr.mciPatientCacheTtlSeconds";
 
     public static final String IDP_SERVER_URL = "idP.referenceUrl";
     public static final String IDP_SIGNIN_PATH = "idP.signinPath";
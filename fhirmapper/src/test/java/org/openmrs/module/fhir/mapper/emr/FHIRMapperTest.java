@@ -10,6 +10,7 @@ import org.openmrs.api.VisitService;
 import org.openmrs.module.fhir.FhirContextHelper;
 import org.openmrs.module.fhir.mapper.model.ShrEncounterBundle;
 import org.openmrs.module.fhir.utils.FHIRBundleHelper;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,7 +30,7 @@ public class FHIRMapperTest {
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        fhirMapper = new FHIRMapper(null, null, null, null, mockVisitService);
+        fhirMapper = new FHIRMapper(null, null, null, new MetadataRegistry(null, null, mockVisitService, null, null));
     }
 
     @Test
@@ -0,0 +1,129 @@
+package org.openmrs.module.fhir.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Concept;
+import org.openmrs.VisitType;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.VisitService;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MetadataRegistryTest {
+    @Mock
+    private ConceptService conceptService;
+    @Mock
+    private EncounterService encounterService;
+    @Mock
+    private VisitService visitService;
+    @Mock
+    private PersonService personService;
+    @Mock
+    private ProviderService providerService;
+
+    private MetadataRegistry metadataRegistry;
+    private Concept concept;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        metadataRegistry = new MetadataRegistry(conceptService, encounterService, visitService, personService, providerService);
+        concept = new Concept(10);
+    }
+
+    @Test
+    public void shouldLookUpByNameOnceAndThenById() throws Exception {
+        when(conceptService.getConceptByName("Diagnosis")).thenReturn(concept);
+        when(conceptService.getConcept(10)).thenReturn(concept);
+
+        assertSame(concept, metadataRegistry.getConceptByName("Diagnosis"));
+        assertSame(concept, metadataRegistry.getConceptByName("Diagnosis"));
+        assertSame(concept, metadataRegistry.getConceptByName("Diagnosis"));
+
+        verify(conceptService, times(1)).getConceptByName("Diagnosis");
+        verify(conceptService, times(2)).getConcept(10);
+    }
+
+    @Test
+    public void shouldRememberMetadataNotFound() throws Exception {
+        assertNull(metadataRegistry.getConceptByName("Unknown"));
+        assertNull(metadataRegistry.getConceptByName("Unknown"));
+
+        verify(conceptService, times(1)).getConceptByName("Unknown");
+        verify(conceptService, never()).getConcept(anyInt());
+    }
+
+    @Test
+    public void shouldLookUpByNameAgainWhenTheRememberedIdIsGone() throws Exception {
+        when(conceptService.getConceptByName("Diagnosis")).thenReturn(concept);
+
+        metadataRegistry.getConceptByName("Diagnosis");
+        assertSame(concept, metadataRegistry.getConceptByName("Diagnosis"));
+
+        verify(conceptService, times(1)).getConcept(10);
+        verify(conceptService, times(2)).getConceptByName("Diagnosis");
+    }
+
+    @Test
+    public void shouldNotRememberUnsavedMetadata() throws Exception {
+        when(conceptService.getConceptByName("Unsaved")).thenReturn(new Concept());
+
+        metadataRegistry.getConceptByName("Unsaved");
+        metadataRegistry.getConceptByName("Unsaved");
+
+        verify(conceptService, times(2)).getConceptByName("Unsaved");
+    }
+
+    @Test
+    public void shouldLookUpAgainAfterInvalidation() throws Exception {
+        Concept renamedConcept = new Concept(11);
+        when(conceptService.getConceptByName("Diagnosis")).thenReturn(null, renamedConcept);
+        when(visitService.getAllVisitTypes()).thenReturn(asList(visitType(1, "OPD")));
+
+        assertNull(metadataRegistry.getConceptByName("Diagnosis"));
+        metadataRegistry.getVisitTypeByName("opd");
+        metadataRegistry.invalidate();
+
+        assertSame(renamedConcept, metadataRegistry.getConceptByName("Diagnosis"));
+        metadataRegistry.getVisitTypeByName("opd");
+        verify(conceptService, times(2)).getConceptByName("Diagnosis");
+        verify(visitService, times(2)).getAllVisitTypes();
+    }
+
+    @Test
+    public void shouldNotRememberALookUpThatRacedWithAnInvalidation() throws Exception {
+        when(conceptService.getConceptByName("Diagnosis")).thenAnswer(new Answer<Concept>() {
+            @Override
+            public Concept answer(InvocationOnMock invocation) throws Throwable {
+                metadataRegistry.invalidate();
+                return concept;
+            }
+        });
+
+        assertSame(concept, metadataRegistry.getConceptByName("Diagnosis"));
+        assertSame(concept, metadataRegistry.getConceptByName("Diagnosis"));
+
+        verify(conceptService, times(2)).getConceptByName("Diagnosis");
+        verify(conceptService, never()).getConcept(anyInt());
+    }
+
+    private VisitType visitType(int id, String name) {
+        VisitType visitType = new VisitType(name, null);
+        visitType.setId(id);
+        return visitType;
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
 import org.openmrs.ConceptClass;
 import org.openmrs.ConceptDatatype;
 import org.openmrs.Drug;
@@ -38,6 +39,9 @@ public class OMRSConceptLookupIT extends BaseModuleWebContextSensitiveTest {
     @Autowired
     private OMRSConceptLookup omrsConceptLookup;
 
+    @Autowired
+    private ConceptLookupIndex conceptLookupIndex;
+
     @Before
     public void setUp() throws Exception {
         executeDataSet("testDataSets/omrsConceptLookupTestDS.xml");
@@ -141,6 +145,19 @@ public class OMRSConceptLookupIT extends BaseModuleWebContextSensitiveTest {
         assertNull(omrsConceptLookup.findAnswerConceptFromValueSetCode(someOtherValueset, "completed"));
     }
 
+    @Test
+    public void shouldMapConceptFromValuesetCodeToAnswersAddedAfterTheValuesetWasLookedInto() throws Exception {
+        Concept valueSetConcept = conceptService.getConceptByName("Value Set Concept");
+        assertNull(omrsConceptLookup.findAnswerConceptFromValueSetCode(valueSetConcept, "completed"));
+
+        valueSetConcept.addAnswer(new ConceptAnswer(conceptService.getConcept(604)));
+        conceptService.saveConcept(valueSetConcept);
+        conceptLookupIndex.invalidate();
+
+        assertEquals(conceptService.getConcept(604), omrsConceptLookup.findAnswerConceptFromValueSetCode(valueSetConcept, "completed"));
+        assertEquals(conceptService.getConcept(401), omrsConceptLookup.findAnswerConceptFromValueSetCode(valueSetConcept, "VSA-1"));
+    }
+
     @Test
     public void shouldMapDrugOnlyIfTRSystem() throws Exception {
         Drug expectedDrug = conceptService.getDrug(301);
@@ -15,6 +15,8 @@ package org.openmrs.module.shrclient;
 
 import org.apache.log4j.Logger;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.shrclient.util.FhirBundleContextHolder;
+import org.openmrs.module.shrclient.util.ModuleStopHooks;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
@@ -48,6 +50,7 @@ public class ShrClientActivator implements ModuleActivator {
      * @see ModuleActivator#started()
      */
     public void started() {
+        FhirBundleContextHolder.initialize();
         log.info("shrclient Module started");
     }
 
@@ -62,6 +65,7 @@ public class ShrClientActivator implements ModuleActivator {
      * @see ModuleActivator#stopped()
      */
     public void stopped() {
+        ModuleStopHooks.runAll();
         log.info("shrclient Module stopped");
     }
 
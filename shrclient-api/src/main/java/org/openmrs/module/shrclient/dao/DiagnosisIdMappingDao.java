@@ -9,12 +9,10 @@ import org.openmrs.module.shrclient.util.Database;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
-import java.util.List;
 
 import static org.openmrs.module.fhir.utils.DateUtil.getDateFromTimestamp;
 
@@ -31,44 +29,36 @@ public class DiagnosisIdMappingDao extends IdMappingDao {
     }
 
     @Override
-    public PreparedStatement getInsertIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
+    protected boolean hasHealthIdColumn() {
+        return true;
+    }
+
+    @Override
+    public void setInsertIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException {
         DiagnosisIdMapping diagnosisIdMapping = (DiagnosisIdMapping) idMapping;
-        PreparedStatement statement = connection.prepareStatement(getInsertMappingSql());
         statement.setString(1, diagnosisIdMapping.getInternalId());
         statement.setString(2, diagnosisIdMapping.getExternalId());
         statement.setString(3, diagnosisIdMapping.getUri());
         statement.setTimestamp(4, diagnosisIdMapping.getCreatedAt());
-
-        return statement;
+        statement.setString(5, diagnosisIdMapping.getHealthId());
     }
     @Override
-    protected PreparedStatement getBatchStatement(Connection connection, List<IdMapping> idMappings) throws SQLException {
-        if (idMappings.size() == 0) {
-            return null;
-        }
-        String updateURIByInternalIdSql = String.format("update %s set uri=? where internal_id=?", getMappingTable());
-        PreparedStatement preparedStatement = connection.prepareStatement(updateURIByInternalIdSql);
-        for (IdMapping idMapping : idMappings) {
-            preparedStatement.setString(1, idMapping.getUri());
-            preparedStatement.setString(2, idMapping.getInternalId());
-            preparedStatement.addBatch();
-        }
-        return preparedStatement;
+    protected String getReplaceHealthIdSql() {
+        return String.format("update %s set uri = replace(uri, ?, ?), health_id = ? where health_id = ?", getMappingTable());
     }
 
     @Override
-    public PreparedStatement getUpdateIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(getUpdateMappingSql());
-        statement.setString(1, idMapping.getInternalId());
-        statement.setString(2, idMapping.getExternalId());
-        return statement;
+    protected void setReplaceHealthIdParameters(PreparedStatement statement, String toBeReplaced, String toReplaceWith, Date modifiedAt) throws SQLException {
+        statement.setString(1, HEALTH_ID_URI_SEGMENT + toBeReplaced);
+        statement.setString(2, HEALTH_ID_URI_SEGMENT + toReplaceWith);
+        statement.setString(3, toReplaceWith);
+        statement.setString(4, toBeReplaced);
     }
-    
+
     @Override
-    public PreparedStatement getCheckMappingExistsStatement(Connection connection, IdMapping idMapping) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(getMappingExistsQuery());
-        statement.setString(1, idMapping.getExternalId());
-        return statement;
+    public void setUpdateIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException {
+        statement.setString(1, idMapping.getInternalId());
+        statement.setString(2, idMapping.getExternalId());
     }
 
     @Override
@@ -88,19 +78,27 @@ public class DiagnosisIdMappingDao extends IdMappingDao {
     }
 
     @Override
-    public String getFetchByHealthIdSql() {
-        return String.format("select map.internal_id, map.external_id, map.uri, map.created_at from %s map where map.uri like ?", getMappingTable());
+    public String getFetchByInternalIdsSql(int count) {
+        return String.format("select distinct map.internal_id, map.external_id, map.uri, map.created_at from %s map where map.internal_id in (%s)", getMappingTable(), placeholders(count));
     }
 
-    private String getInsertMappingSql() {
-        return String.format("insert into %s (internal_id, external_id, uri, created_at) values (?,?,?,?)", getMappingTable());
+    @Override
+    public String getFetchByExternalIdsSql(int count) {
+        return String.format("select distinct map.internal_id, map.external_id, map.uri, map.created_at from %s map where map.external_id in (%s)", getMappingTable(), placeholders(count));
     }
 
-    private String getUpdateMappingSql() {
-        return String.format("update %s set internal_id = ? where external_id = ?", getMappingTable());
+    @Override
+    public String getFetchByHealthIdSql() {
+        return String.format("select map.internal_id, map.external_id, map.uri, map.created_at from %s map where map.health_id=?", getMappingTable());
     }
 
-    private String getMappingExistsQuery() {
-        return String.format("select distinct map.internal_id from %s map where map.external_id=?", getMappingTable());
+    @Override
+    public String getInsertMappingSql() {
+        return String.format("insert into %s (internal_id, external_id, uri, created_at, health_id) values (?,?,?,?,?)", getMappingTable());
+    }
+
+    @Override
+    public String getUpdateMappingSql() {
+        return String.format("update %s set internal_id = ? where external_id = ?", getMappingTable());
     }
 }
@@ -13,8 +13,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Component("bdShrClientFacilityCatchmentRepository")
@@ -26,7 +28,17 @@ public class FacilityCatchmentRepository {
     private Database database;
 
     public void saveMappings(final int locationId, final List<String> catchments) {
-        final Set<String> uniqueCatchments = findUniqueCatchments(catchments);
+        saveMappings(Collections.singletonMap(locationId, catchments));
+    }
+
+    /**
+     * Replaces the catchments of all the given locations in one transaction, with one batch of deletes
+     * followed by one batch of inserts.
+     */
+    public void saveMappings(final Map<Integer, List<String>> catchmentsByLocationId) {
+        if (catchmentsByLocationId.isEmpty()) {
+            return;
+        }
         database.executeInTransaction(new TxWork<Object>() {
             @Override
             public Object execute(Connection connection) {
@@ -36,15 +48,20 @@ public class FacilityCatchmentRepository {
                 PreparedStatement createStatement = null;
                 try {
                     deleteStatement = connection.prepareStatement(deleteQuery);
-                    deleteStatement.setInt(1, locationId);
-                    deleteStatement.execute();
+                    createStatement = connection.prepareStatement(createQuery);
+                    for (Map.Entry<Integer, List<String>> locationCatchments : catchmentsByLocationId.entrySet()) {
+                        int locationId = locationCatchments.getKey();
+                        deleteStatement.setInt(1, locationId);
+                        deleteStatement.addBatch();
 
-                    for (String catchment : uniqueCatchments) {
-                        createStatement = connection.prepareStatement(createQuery);
-                        createStatement.setInt(1, locationId);
-                        createStatement.setString(2, catchment);
-                        createStatement.execute();
+                        for (String catchment : findUniqueCatchments(locationCatchments.getValue())) {
+                            createStatement.setInt(1, locationId);
+                            createStatement.setString(2, catchment);
+                            createStatement.addBatch();
+                        }
                     }
+                    deleteStatement.executeBatch();
+                    createStatement.executeBatch();
                 } catch (Exception e) {
                     throw new RuntimeException("Error occurred while creating facility catchment mapping", e);
                 } finally {
@@ -0,0 +1,194 @@
+package org.openmrs.module.shrclient.dao;
+
+import org.openmrs.module.shrclient.model.IdMapping;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, expiring read-through cache for single id mapping lookups, kept per mapping table.
+ * Absent mappings are cached too, since most lookups for local concepts never find one.
+ * Entries are evicted least-recently-used once a table holds more than maxEntries,
+ * and expire ttlMillis after they were loaded.
+ */
+public class IdMappingCache {
+    public static final int DEFAULT_MAX_ENTRIES = 2000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String INTERNAL_ID_KEY = "internal:";
+    private static final String EXTERNAL_ID_KEY = "external:";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ConcurrentMap<String, Region> regions = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    public IdMappingCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public IdMappingCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public interface Loader {
+        IdMapping load(String id);
+    }
+
+    public IdMapping getByInternalId(String table, String internalId, Loader loader) {
+        return get(table, INTERNAL_ID_KEY + internalId, internalId, loader);
+    }
+
+    public IdMapping getByExternalId(String table, String externalId, Loader loader) {
+        return get(table, EXTERNAL_ID_KEY + externalId, externalId, loader);
+    }
+
+    /**
+     * Drops every cached entry of the table that refers to the mapping's internal or external id,
+     * including cached absences and entries pointing to an older counterpart of either id.
+     */
+    public void invalidate(String table, IdMapping idMapping) {
+        getRegion(table).invalidate(idMapping.getInternalId(), idMapping.getExternalId());
+    }
+
+    public void invalidate(String table) {
+        regions.remove(table);
+    }
+
+    public void clear() {
+        regions.clear();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int size(String table) {
+        Region region = regions.get(table);
+        return region != null ? region.size() : 0;
+    }
+
+    private IdMapping get(String table, String key, String id, Loader loader) {
+        if (!enabled || id == null) {
+            return loader.load(id);
+        }
+        Region region = getRegion(table);
+        CachedMapping cached = region.get(key);
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            return cached.idMapping;
+        }
+        missCount.incrementAndGet();
+        long generation = region.getGeneration();
+        IdMapping idMapping = loader.load(id);
+        region.put(key, new CachedMapping(idMapping, System.currentTimeMillis() + ttlMillis), generation);
+        return idMapping;
+    }
+
+    private Region getRegion(String table) {
+        Region region = regions.get(table);
+        if (region == null) {
+            Region newRegion = new Region(maxEntries);
+            region = regions.putIfAbsent(table, newRegion);
+            if (region == null) {
+                region = newRegion;
+            }
+        }
+        return region;
+    }
+
+    private static class CachedMapping {
+        private final IdMapping idMapping;
+        private final long expiresAt;
+
+        CachedMapping(IdMapping idMapping, long expiresAt) {
+            this.idMapping = idMapping;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+
+        boolean refersTo(String internalId, String externalId) {
+            return idMapping != null &&
+                    (idMapping.getInternalId().equals(internalId) || idMapping.getExternalId().equals(externalId));
+        }
+    }
+
+    private static class Region {
+        private final LinkedHashMap<String, CachedMapping> entries;
+        private long generation;
+
+        Region(final int maxEntries) {
+            entries = new LinkedHashMap<String, CachedMapping>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedMapping> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        synchronized CachedMapping get(String key) {
+            CachedMapping cached = entries.get(key);
+            if (cached != null && cached.isExpired()) {
+                entries.remove(key);
+                return null;
+            }
+            return cached;
+        }
+
+        synchronized long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Skips the put if the region was invalidated while the mapping was being loaded,
+         * so a concurrent save is never shadowed by the value read before it.
+         */
+        synchronized void put(String key, CachedMapping cached, long loadedAtGeneration) {
+            if (generation == loadedAtGeneration) {
+                entries.put(key, cached);
+            }
+        }
+
+        synchronized void invalidate(String internalId, String externalId) {
+            generation++;
+            entries.remove(INTERNAL_ID_KEY + internalId);
+            entries.remove(EXTERNAL_ID_KEY + externalId);
+            Iterator<CachedMapping> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().refersTo(internalId, externalId)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
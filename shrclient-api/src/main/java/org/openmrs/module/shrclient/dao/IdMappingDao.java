@@ -10,10 +10,21 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public abstract class IdMappingDao {
+    private static final int MAX_IDS_PER_QUERY = 500;
+    protected static final String HEALTH_ID_URI_SEGMENT = "patients/";
 
     protected Logger logger;
     protected Database database;
@@ -29,71 +40,56 @@ public abstract class IdMappingDao {
 
     public abstract String getFetchByInternalIdSql();
 
+    /**
+     * Same as getFetchByInternalIdSql, for count internal ids in one "in (...)" query.
+     */
+    public abstract String getFetchByInternalIdsSql(int count);
+
+    /**
+     * Same as getFetchByExternalIdSql, for count external ids in one "in (...)" query.
+     */
+    public abstract String getFetchByExternalIdsSql(int count);
+
     public abstract String getFetchByHealthIdSql();
 
-    public abstract PreparedStatement getInsertIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException;
+    public abstract String getInsertMappingSql();
+
+    public abstract String getUpdateMappingSql();
 
-    public abstract PreparedStatement getUpdateIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException;
+    public abstract void setInsertIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException;
 
-    public abstract PreparedStatement getCheckMappingExistsStatement(Connection connection, IdMapping idMapping) throws SQLException;
+    public abstract void setUpdateIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException;
 
     public abstract IdMapping buildIdMapping(ResultSet resultSet) throws SQLException;
 
-    private boolean mappingExists(final IdMapping idMapping) {
-        return database.executeInTransaction(new Database.TxWork<Boolean>() {
-            @Override
-            public Boolean execute(Connection connection) {
-                PreparedStatement statement = null;
-                ResultSet resultSet = null;
-                boolean result = false;
-                try {
-                    statement = getCheckMappingExistsStatement(connection, idMapping);
-                    resultSet = statement.executeQuery();
-                    while (resultSet.next()) {
-                        if (null != resultSet.getObject(1)) {
-                            result = true;
-                            break;
-                        }
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException("Error occurred while querying id mapping", e);
-                } finally {
-                    try {
-                        if (resultSet != null) resultSet.close();
-                        if (statement != null) statement.close();
-                    } catch (SQLException e) {
-                        logger.warn("Could not close db statement or result set", e);
-                    }
-                }
-                return result;
-            }
-        });
+    /**
+     * Whether the table keeps the health id of each mapping in its own indexed health_id column. Mappings of the
+     * other tables are looked up by health id with a "like" on their uri.
+     */
+    protected boolean hasHealthIdColumn() {
+        return false;
+    }
+
+    public PreparedStatement getInsertIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(getInsertMappingSql());
+        setInsertIdMappingParameters(statement, idMapping);
+        return statement;
+    }
+
+    public PreparedStatement getUpdateIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(getUpdateMappingSql());
+        setUpdateIdMappingParameters(statement, idMapping);
+        return statement;
     }
 
     protected void saveOrUpdateIdMapping(final IdMapping idMapping) {
         database.executeInTransaction(new Database.TxWork<Object>() {
             @Override
             public Object execute(Connection connection) {
-                PreparedStatement statement = null;
                 try {
-                    if (!mappingExists(idMapping)) {
-                        statement = getInsertIdMappingStatement(connection, idMapping);
-                        statement.execute();
-                    } else {
-                        statement = getUpdateIdMappingStatement(connection, idMapping);
-                        if (null != statement) {
-                            statement.executeUpdate();
-                        }
-                    }
-
+                    saveOrUpdateIdMapping(connection, idMapping);
                 } catch (Exception e) {
                     throw new RuntimeException("Error occurred while creating id mapping", e);
-                } finally {
-                    try {
-                        if (statement != null) statement.close();
-                    } catch (SQLException e) {
-                        logger.warn("Could not close db statement or resultset", e);
-                    }
                 }
                 return null;
             }
@@ -101,6 +97,83 @@ public abstract class IdMappingDao {
         });
     }
 
+    /**
+     * Updates the mapping if it exists, otherwise inserts it. The update statement of each table only matches
+     * the row(s) of the existing mapping, so an existing mapping costs one round trip and a new one two,
+     * without a separate existence query. This relies on the update count being the number of matched rows
+     * (the MySQL driver and H2 default), as the update of an existing mapping may not change any value.
+     */
+    protected void saveOrUpdateIdMapping(Connection connection, IdMapping idMapping) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = getUpdateIdMappingStatement(connection, idMapping);
+            if (statement.executeUpdate() > 0) {
+                return;
+            }
+            statement.close();
+            statement = getInsertIdMappingStatement(connection, idMapping);
+            statement.execute();
+        } finally {
+            try {
+                if (statement != null) statement.close();
+            } catch (SQLException e) {
+                logger.warn("Could not close db statement or resultset", e);
+            }
+        }
+    }
+
+    /**
+     * Batched form of saveOrUpdateIdMapping: all updates go in one JDBC batch, followed by one batch inserting
+     * the mappings whose update matched no row. Repeated mappings are written once.
+     */
+    protected void saveOrUpdateIdMappings(Connection connection, Collection<IdMapping> idMappings) throws SQLException {
+        List<IdMapping> distinctIdMappings = distinct(idMappings);
+        if (distinctIdMappings.isEmpty()) {
+            return;
+        }
+        List<IdMapping> newIdMappings = new ArrayList<>();
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(getUpdateMappingSql());
+            for (IdMapping idMapping : distinctIdMappings) {
+                setUpdateIdMappingParameters(statement, idMapping);
+                statement.addBatch();
+            }
+            int[] updateCounts = statement.executeBatch();
+            for (int i = 0; i < updateCounts.length; i++) {
+                if (updateCounts[i] == 0) {
+                    newIdMappings.add(distinctIdMappings.get(i));
+                } else if (updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                    saveOrUpdateIdMapping(connection, distinctIdMappings.get(i));
+                }
+            }
+            statement.close();
+            if (newIdMappings.isEmpty()) {
+                return;
+            }
+            statement = connection.prepareStatement(getInsertMappingSql());
+            for (IdMapping idMapping : newIdMappings) {
+                setInsertIdMappingParameters(statement, idMapping);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            try {
+                if (statement != null) statement.close();
+            } catch (SQLException e) {
+                logger.warn("Could not close db statement or resultset", e);
+            }
+        }
+    }
+
+    private List<IdMapping> distinct(Collection<IdMapping> idMappings) {
+        Map<String, IdMapping> distinctIdMappings = new LinkedHashMap<>();
+        for (IdMapping idMapping : idMappings) {
+            distinctIdMappings.put(idMapping.getInternalId() + "|" + idMapping.getExternalId(), idMapping);
+        }
+        return new ArrayList<>(distinctIdMappings.values());
+    }
+
     protected IdMapping findByExternalId(final String externalId) {
         List<IdMapping> idMappings = getIdMappings(externalId, getFetchByExternalIdSql());
         return idMappings.size() > 0 ? idMappings.get(0) : null;
@@ -116,26 +189,93 @@ public abstract class IdMappingDao {
     }
 
     protected List<IdMapping> findByHealthId(String healthID) {
-        String likeHealthId = "%" + healthID + "%";
-        return getIdMappings(likeHealthId, getFetchByHealthIdSql());
+        String healthIdParameter = hasHealthIdColumn() ? healthID : "%" + healthID + "%";
+        return getIdMappings(healthIdParameter, getFetchByHealthIdSql());
     }
 
-    protected PreparedStatement getBatchStatement(Connection connection, List<IdMapping> idMappings) throws SQLException {
-        if (idMappings.size() == 0) {
-            return null;
+    /**
+     * Moves all the mappings of a health id over to another one with a single update, rewriting the health id in
+     * their uri, and returns the number of mappings moved. Only for tables with a health_id column.
+     */
+    protected int replaceHealthId(Connection connection, String toBeReplaced, String toReplaceWith, Date modifiedAt) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(getReplaceHealthIdSql());
+            setReplaceHealthIdParameters(statement, toBeReplaced, toReplaceWith, modifiedAt);
+            return statement.executeUpdate();
+        } finally {
+            try {
+                if (statement != null) statement.close();
+            } catch (SQLException e) {
+                logger.warn("Could not close db statement", e);
+            }
         }
-        String updateURIByInternalIdSql = String.format("update %s set uri=?, last_sync_datetime=? where internal_id=?", getMappingTable());
-        PreparedStatement preparedStatement = connection.prepareStatement(updateURIByInternalIdSql);
-        for (IdMapping idMapping : idMappings) {
-            preparedStatement.setString(1, idMapping.getUri());
-            preparedStatement.setTimestamp(2, idMapping.getLastSyncTimestamp());
-            preparedStatement.setString(3, idMapping.getInternalId());
-            preparedStatement.addBatch();
+    }
+
+    protected String getReplaceHealthIdSql() {
+        return String.format("update %s set uri = replace(uri, ?, ?), health_id = ?, last_sync_datetime = ? where health_id = ?", getMappingTable());
+    }
+
+    protected void setReplaceHealthIdParameters(PreparedStatement statement, String toBeReplaced, String toReplaceWith, Date modifiedAt) throws SQLException {
+        statement.setString(1, HEALTH_ID_URI_SEGMENT + toBeReplaced);
+        statement.setString(2, HEALTH_ID_URI_SEGMENT + toReplaceWith);
+        statement.setString(3, toReplaceWith);
+        statement.setTimestamp(4, new Timestamp(modifiedAt.getTime()));
+        statement.setString(5, toBeReplaced);
+    }
+
+    /**
+     * Fetches the mappings of all the given internal ids with "in (...)" queries of at most
+     * MAX_IDS_PER_QUERY ids each. Ids without a mapping are absent from the result.
+     */
+    protected Map<String, IdMapping> findByInternalIds(Collection<String> internalIds) {
+        Map<String, IdMapping> idMappings = new HashMap<>();
+        for (List<String> batch : batches(internalIds)) {
+            for (IdMapping idMapping : getIdMappings(batch, getFetchByInternalIdsSql(batch.size()))) {
+                if (!idMappings.containsKey(idMapping.getInternalId())) {
+                    idMappings.put(idMapping.getInternalId(), idMapping);
+                }
+            }
         }
-        return preparedStatement;
+        return idMappings;
+    }
+
+    /**
+     * Same as findByInternalIds, keyed by external id.
+     */
+    protected Map<String, IdMapping> findByExternalIds(Collection<String> externalIds) {
+        Map<String, IdMapping> idMappings = new HashMap<>();
+        for (List<String> batch : batches(externalIds)) {
+            for (IdMapping idMapping : getIdMappings(batch, getFetchByExternalIdsSql(batch.size()))) {
+                if (!idMappings.containsKey(idMapping.getExternalId())) {
+                    idMappings.put(idMapping.getExternalId(), idMapping);
+                }
+            }
+        }
+        return idMappings;
+    }
+
+    /**
+     * The distinct ids, in batches of at most MAX_IDS_PER_QUERY.
+     */
+    private List<List<String>> batches(Collection<String> idsToFind) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(idsToFind));
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            batches.add(ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size())));
+        }
+        return batches;
+    }
+
+    protected static String placeholders(int count) {
+        return StringUtils.repeat("?", ",", count);
     }
 
     private List<IdMapping> getIdMappings(final String id, final String query) {
+        return getIdMappings(Collections.singletonList(id), query);
+    }
+
+    private List<IdMapping> getIdMappings(final List<String> ids, final String query) {
         return database.executeInTransaction(new Database.TxWork<List<IdMapping>>() {
             @Override
             public List<IdMapping> execute(Connection connection) {
@@ -144,7 +284,9 @@ public abstract class IdMappingDao {
                 List<IdMapping> idMappings = new ArrayList<>();
                 try {
                     statement = connection.prepareStatement(query);
-                    statement.setString(1, id);
+                    for (int i = 0; i < ids.size(); i++) {
+                        statement.setString(i + 1, ids.get(i));
+                    }
                     resultSet = statement.executeQuery();
                     while (resultSet.next()) {
                         if (StringUtils.isNotBlank(resultSet.getString(1))) {
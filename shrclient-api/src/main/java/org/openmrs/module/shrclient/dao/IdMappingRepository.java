@@ -6,13 +6,17 @@ import org.openmrs.module.shrclient.model.IdMappingType;
 import org.openmrs.module.shrclient.util.Database;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class IdMappingRepository {
@@ -24,6 +28,8 @@ public class IdMappingRepository {
     private OrderIdMappingDao orderIdMappingDao;
     private ProviderIdMappingDao providerIdMappingDao;
     Database database;
+    private IdMappingCache idMappingCache = new IdMappingCache();
+    private final ThreadLocal<Map<String, IdMapping>> prefetchedIdMappings = new ThreadLocal<>();
     Logger logger = Logger.getLogger(IdMappingRepository.class);
 
 
@@ -39,11 +45,74 @@ public class IdMappingRepository {
     }
 
     public void saveOrUpdateIdMapping(IdMapping idMapping) {
-        idMappingDao(idMapping.getType()).saveOrUpdateIdMapping(idMapping);
+        IdMappingDao idMappingDao = idMappingDao(idMapping.getType());
+        idMappingDao.saveOrUpdateIdMapping(idMapping);
+        invalidate(idMappingDao.getMappingTable(), idMapping);
+    }
+
+    /**
+     * Saves all the mappings in one transaction, writing them as one JDBC batch per mapping table.
+     */
+    public void saveOrUpdateAll(Collection<? extends IdMapping> idMappings) {
+        final Map<IdMappingDao, List<IdMapping>> idMappingsByDao = new LinkedHashMap<>();
+        for (IdMapping idMapping : idMappings) {
+            IdMappingDao idMappingDao = idMappingDao(idMapping.getType());
+            if (!idMappingsByDao.containsKey(idMappingDao)) {
+                idMappingsByDao.put(idMappingDao, new ArrayList<IdMapping>());
+            }
+            idMappingsByDao.get(idMappingDao).add(idMapping);
+        }
+        if (idMappingsByDao.isEmpty()) {
+            return;
+        }
+        database.executeInTransaction(new Database.TxWork<Object>() {
+            @Override
+            public Object execute(Connection connection) {
+                try {
+                    for (Map.Entry<IdMappingDao, List<IdMapping>> entry : idMappingsByDao.entrySet()) {
+                        entry.getKey().saveOrUpdateIdMappings(connection, entry.getValue());
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("Error occurred while creating id mappings", e);
+                }
+                return null;
+            }
+        });
+        for (Map.Entry<IdMappingDao, List<IdMapping>> entry : idMappingsByDao.entrySet()) {
+            for (IdMapping idMapping : entry.getValue()) {
+                invalidate(entry.getKey().getMappingTable(), idMapping);
+            }
+        }
+    }
+
+    /**
+     * When saved within an enclosing transaction, the mapping is invalidated again once that transaction completes,
+     * since a lookup from another thread in between still reads, and caches, the previously committed state.
+     */
+    private void invalidate(final String mappingTable, final IdMapping idMapping) {
+        idMappingCache.invalidate(mappingTable, idMapping);
+        Map<String, IdMapping> prefetched = prefetchedIdMappings.get();
+        if (prefetched != null) {
+            prefetched.remove(prefetchKey(mappingTable, idMapping.getInternalId()));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    idMappingCache.invalidate(mappingTable, idMapping);
+                }
+            });
+        }
     }
 
     public IdMapping findByExternalId(String externalId, String idMappingType) {
-        return idMappingDao(idMappingType).findByExternalId(externalId);
+        final IdMappingDao idMappingDao = idMappingDao(idMappingType);
+        return idMappingCache.getByExternalId(idMappingDao.getMappingTable(), externalId, new IdMappingCache.Loader() {
+            @Override
+            public IdMapping load(String id) {
+                return idMappingDao.findByExternalId(id);
+            }
+        });
     }
 
     public List<IdMapping> findMappingsByExternalId(String externalId, String idMappingType) {
@@ -51,69 +120,107 @@ public class IdMappingRepository {
     }
 
     public IdMapping findByInternalId(String internalId, String idMappingType) {
-        return idMappingDao(idMappingType).findByInternalId(internalId);
+        final IdMappingDao idMappingDao = idMappingDao(idMappingType);
+        Map<String, IdMapping> prefetched = prefetchedIdMappings.get();
+        String prefetchKey = prefetchKey(idMappingDao.getMappingTable(), internalId);
+        if (prefetched != null && prefetched.containsKey(prefetchKey)) {
+            return prefetched.get(prefetchKey);
+        }
+        return idMappingCache.getByInternalId(idMappingDao.getMappingTable(), internalId, new IdMappingCache.Loader() {
+            @Override
+            public IdMapping load(String id) {
+                return idMappingDao.findByInternalId(id);
+            }
+        });
+    }
+
+    /**
+     * Fetches the mappings of all the given internal ids with bulk queries, keyed by internal id. Ids without a
+     * mapping are absent from the result.
+     */
+    public Map<String, IdMapping> findByInternalIds(Collection<String> internalIds, String idMappingType) {
+        return idMappingDao(idMappingType).findByInternalIds(internalIds);
+    }
+
+    /**
+     * Starts keeping the mappings prefetched on this thread, for the span of one bundle (see prefetchByInternalIds),
+     * until endPrefetch.
+     */
+    public void beginPrefetch() {
+        prefetchedIdMappings.set(new HashMap<String, IdMapping>());
+    }
+
+    public void endPrefetch() {
+        prefetchedIdMappings.remove();
+    }
+
+    /**
+     * Resolves the mappings of all the given internal ids with bulk queries up front and keeps them, found or absent,
+     * until endPrefetch, so that findByInternalId calls for them on this thread do not go to the database, whether
+     * or not the id mapping cache is enabled. Does nothing outside of beginPrefetch and endPrefetch.
+     */
+    public void prefetchByInternalIds(Collection<String> internalIds, String idMappingType) {
+        Map<String, IdMapping> prefetched = prefetchedIdMappings.get();
+        if (prefetched == null || internalIds.isEmpty()) {
+            return;
+        }
+        IdMappingDao idMappingDao = idMappingDao(idMappingType);
+        Map<String, IdMapping> idMappings = idMappingDao.findByInternalIds(internalIds);
+        for (String internalId : internalIds) {
+            prefetched.put(prefetchKey(idMappingDao.getMappingTable(), internalId), idMappings.get(internalId));
+        }
+    }
+
+    /**
+     * Same as findByInternalIds, keyed by external id.
+     */
+    public Map<String, IdMapping> findByExternalIds(Collection<String> externalIds, String idMappingType) {
+        return idMappingDao(idMappingType).findByExternalIds(externalIds);
     }
 
     public List<IdMapping> findByHealthId(String healthId, String idMappingType) {
         return idMappingDao(idMappingType).findByHealthId(healthId);
     }
 
-    public void replaceHealthId(final String toBeReplaced, final String toReplaceWith) {
-        final List<IdMapping> reassignedEncounterIdMappings = updateHealthIds(findByHealthId(toBeReplaced, IdMappingType.ENCOUNTER), toBeReplaced, toReplaceWith);
-        final List<IdMapping> reassignedMedicationOrderIdMappings = updateHealthIds(findByHealthId(toBeReplaced, IdMappingType.MEDICATION_ORDER), toBeReplaced, toReplaceWith);
-//        not required now with type procedureOrder as medication order will take care of all orders.
-//        final List<IdMapping> reassignedProcedureOrderIdMappings = updateHealthIds(findByHealthId(toBeReplaced, IdMappingType.PROCEDURE_ORDER), toBeReplaced, toReplaceWith);
-        final List<IdMapping> reassignedDiagnosisIdMappings = updateHealthIds(findByHealthId(toBeReplaced, IdMappingType.DIAGNOSIS), toBeReplaced, toReplaceWith);
-        database.executeInTransaction(new Database.TxWork<Object>() {
+    /**
+     * Moves the encounter, order and diagnosis mappings of a health id over to another one in one transaction, with
+     * one update per mapping table, and returns the number of mappings moved from each table.
+     */
+    public Map<String, Integer> replaceHealthId(final String toBeReplaced, final String toReplaceWith) {
+        final List<IdMappingDao> idMappingDaos = new ArrayList<>();
+        idMappingDaos.add(idMappingDao(IdMappingType.ENCOUNTER));
+        // the medication order mappings dao also moves procedure and diagnostic orders, as they share its table
+        idMappingDaos.add(idMappingDao(IdMappingType.MEDICATION_ORDER));
+        idMappingDaos.add(idMappingDao(IdMappingType.DIAGNOSIS));
+        final Date modifiedAt = new Date();
+        Map<String, Integer> replacedMappingCounts = database.executeInTransaction(new Database.TxWork<Map<String, Integer>>() {
             @Override
-            public Object execute(Connection connection) {
-                PreparedStatement updateEncounterIdMappingBatch = null;
-                PreparedStatement updateMedicationOrderMappingBatch = null;
-                PreparedStatement updateProcedureOrderIdMappingBatch = null;
-                PreparedStatement updateDiagnosisIdMappingBatch = null;
+            public Map<String, Integer> execute(Connection connection) {
+                Map<String, Integer> replacedMappingCounts = new LinkedHashMap<>();
                 try {
-                    updateEncounterIdMappingBatch = idMappingDao(IdMappingType.ENCOUNTER).getBatchStatement(connection, reassignedEncounterIdMappings);
-                    updateMedicationOrderMappingBatch = idMappingDao(IdMappingType.MEDICATION_ORDER).getBatchStatement(connection, reassignedMedicationOrderIdMappings);
-//                    updateProcedureOrderIdMappingBatch = idMappingDao(IdMappingType.PROCEDURE_ORDER).getBatchStatement(connection, reassignedProcedureOrderIdMappings);
-                    updateDiagnosisIdMappingBatch = idMappingDao(IdMappingType.DIAGNOSIS).getBatchStatement(connection, reassignedDiagnosisIdMappings);
-                    executeBatch(updateEncounterIdMappingBatch, updateMedicationOrderMappingBatch, updateDiagnosisIdMappingBatch, updateProcedureOrderIdMappingBatch);
+                    for (IdMappingDao idMappingDao : idMappingDaos) {
+                        replacedMappingCounts.put(idMappingDao.getMappingTable(),
+                                idMappingDao.replaceHealthId(connection, toBeReplaced, toReplaceWith, modifiedAt));
+                    }
                 } catch (Exception e) {
                     throw new RuntimeException("Error occurred while replacing healthids of id mapping", e);
-                } finally {
-                    try {
-                        close(updateMedicationOrderMappingBatch, updateEncounterIdMappingBatch);
-                    } catch (SQLException e) {
-                        logger.warn("Could not close db statement or resultset", e);
-                    }
                 }
-                return null;
+                return replacedMappingCounts;
             }
         });
-    }
-
-    private List<IdMapping> updateHealthIds(List<IdMapping> idMappings, String originalHID, String replaceHID) {
-        Date modifiedDate = new Date();
-        for (IdMapping idMapping : idMappings) {
-            String uri = idMapping.getUri();
-            idMapping.setUri(uri.replace(originalHID, replaceHID));
-            idMapping.setLastSyncDateTime(modifiedDate);
+        for (IdMappingDao idMappingDao : idMappingDaos) {
+            idMappingCache.invalidate(idMappingDao.getMappingTable());
         }
-        return idMappings;
+        logger.info(String.format("Replaced health id %s with %s in id mappings %s", toBeReplaced, toReplaceWith, replacedMappingCounts));
+        return replacedMappingCounts;
     }
 
-    private void close(Statement... statements) throws SQLException {
-        for (Statement statement : statements) {
-            if (statement != null)
-                statement.close();
-        }
+    private String prefetchKey(String mappingTable, String internalId) {
+        return mappingTable + ":" + internalId;
     }
 
-    private void executeBatch(Statement... statements) throws SQLException {
-        for (Statement statement : statements) {
-            if (statement != null) {
-                statement.executeBatch();
-            }
-        }
+    public IdMappingCache getIdMappingCache() {
+        return idMappingCache;
     }
 
     private IdMappingDao idMappingDao(String idMappingType) {
@@ -8,11 +8,10 @@ import org.openmrs.module.shrclient.util.Database;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.Date;
 
 import static org.openmrs.module.fhir.utils.DateUtil.getDateFromTimestamp;
 
@@ -29,31 +28,25 @@ public class OrderIdMappingDao extends IdMappingDao {
     }
 
     @Override
-    public PreparedStatement getInsertIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(getInsertMappingSql());
-        statement.setString(1, idMapping.getInternalId());
-        statement.setString(2, idMapping.getExternalId());
-        statement.setString(3, idMapping.getType());
-        statement.setString(4, idMapping.getUri());
-        statement.setTimestamp(5, idMapping.getCreatedAt());
-
-        return statement;
+    protected boolean hasHealthIdColumn() {
+        return true;
     }
 
     @Override
-    public PreparedStatement getUpdateIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(getUpdateMappingSql());
+    public void setInsertIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException {
         statement.setString(1, idMapping.getInternalId());
         statement.setString(2, idMapping.getExternalId());
-        return statement;
+        statement.setString(3, idMapping.getType());
+        statement.setString(4, idMapping.getUri());
+        statement.setTimestamp(5, idMapping.getCreatedAt());
+        statement.setString(6, idMapping.getHealthId());
     }
 
     @Override
-    public PreparedStatement getCheckMappingExistsStatement(Connection connection, IdMapping idMapping) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(getMappingExistsQuery());
+    public void setUpdateIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException {
         statement.setString(1, idMapping.getInternalId());
-        statement.setString(2, idMapping.getExternalId());
-        return statement;
+        statement.setString(2, idMapping.getInternalId());
+        statement.setString(3, idMapping.getExternalId());
     }
 
     @Override
@@ -73,35 +66,41 @@ public class OrderIdMappingDao extends IdMappingDao {
         return String.format("select distinct map.internal_id, map.external_id, map.type, map.uri, map.created_at from %s map where map.internal_id=?", getMappingTable());
     }
 
+    @Override
+    public String getFetchByInternalIdsSql(int count) {
+        return String.format("select distinct map.internal_id, map.external_id, map.type, map.uri, map.created_at from %s map where map.internal_id in (%s)", getMappingTable(), placeholders(count));
+    }
+
+    @Override
+    public String getFetchByExternalIdsSql(int count) {
+        return String.format("select distinct map.internal_id, map.external_id, map.type, map.uri, map.created_at from %s map where map.external_id in (%s)", getMappingTable(), placeholders(count));
+    }
+
     @Override
     public String getFetchByHealthIdSql() {
-        return String.format("select map.internal_id, map.external_id, map.type, map.uri, map.created_at from %s map where map.uri like ?", getMappingTable());
+        return String.format("select map.internal_id, map.external_id, map.type, map.uri, map.created_at from %s map where map.health_id=?", getMappingTable());
     }
 
     @Override
-    protected PreparedStatement getBatchStatement(Connection connection, List<IdMapping> idMappings) throws SQLException {
-        if (idMappings.size() == 0) {
-            return null;
-        }
-        String updateURIByInternalIdSql = String.format("update %s set uri=? where internal_id=?", getMappingTable());
-        PreparedStatement preparedStatement = connection.prepareStatement(updateURIByInternalIdSql);
-        for (IdMapping idMapping : idMappings) {
-            preparedStatement.setString(1, idMapping.getUri());
-            preparedStatement.setString(2, idMapping.getInternalId());
-            preparedStatement.addBatch();
-        }
-        return preparedStatement;
+    protected String getReplaceHealthIdSql() {
+        return String.format("update %s set uri = replace(uri, ?, ?), health_id = ? where health_id = ?", getMappingTable());
     }
 
-    private String getInsertMappingSql() {
-        return String.format("insert into %s (internal_id, external_id, type, uri, created_at) values (?,?,?,?,?)", getMappingTable());
+    @Override
+    protected void setReplaceHealthIdParameters(PreparedStatement statement, String toBeReplaced, String toReplaceWith, Date modifiedAt) throws SQLException {
+        statement.setString(1, HEALTH_ID_URI_SEGMENT + toBeReplaced);
+        statement.setString(2, HEALTH_ID_URI_SEGMENT + toReplaceWith);
+        statement.setString(3, toReplaceWith);
+        statement.setString(4, toBeReplaced);
     }
 
-    private String getUpdateMappingSql() {
-        return String.format("update %s set internal_id = ? where external_id = ?", getMappingTable());
+    @Override
+    public String getInsertMappingSql() {
+        return String.format("insert into %s (internal_id, external_id, type, uri, created_at, health_id) values (?,?,?,?,?,?)", getMappingTable());
     }
 
-    private String getMappingExistsQuery() {
-        return String.format("select distinct map.internal_id from %s map where map.internal_id=? and map.external_id=?", getMappingTable());
+    @Override
+    public String getUpdateMappingSql() {
+        return String.format("update %s set internal_id = ? where internal_id = ? and external_id = ?", getMappingTable());
     }
 }
\ No newline at end of file
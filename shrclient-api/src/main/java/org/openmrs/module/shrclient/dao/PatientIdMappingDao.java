@@ -8,7 +8,6 @@ import org.openmrs.module.shrclient.util.Database;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -30,36 +29,23 @@ public class PatientIdMappingDao extends IdMappingDao {
     }
 
     @Override
-    public PreparedStatement getInsertIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
+    public void setInsertIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException {
         PatientIdMapping patientIdMapping = (PatientIdMapping) idMapping;
-        PreparedStatement statement = connection.prepareStatement(getInsertMappingSql());
         statement.setString(1, patientIdMapping.getInternalId());
         statement.setString(2, patientIdMapping.getExternalId());
         statement.setString(3, patientIdMapping.getUri());
         statement.setTimestamp(4, patientIdMapping.getCreatedAt());
         statement.setTimestamp(5, patientIdMapping.getLastSyncTimestamp());
         statement.setTimestamp(6, patientIdMapping.getServerUpdateTimestamp());
-
-        return statement;
     }
 
     @Override
-    public PreparedStatement getUpdateIdMappingStatement(Connection connection, IdMapping idMapping) throws SQLException {
+    public void setUpdateIdMappingParameters(PreparedStatement statement, IdMapping idMapping) throws SQLException {
         PatientIdMapping patientIdMapping = (PatientIdMapping) idMapping;
-        PreparedStatement statement = connection.prepareStatement(getUpdateMappingSql());
         statement.setTimestamp(1, patientIdMapping.getLastSyncTimestamp());
         statement.setTimestamp(2, patientIdMapping.getServerUpdateTimestamp());
         statement.setString(3, patientIdMapping.getInternalId());
-
-        return statement;
-    }
-
-    @Override
-    public PreparedStatement getCheckMappingExistsStatement(Connection connection, IdMapping idMapping) throws SQLException {
-        PreparedStatement statement = connection.prepareStatement(getMappingExistsQuery());
-        statement.setString(1, idMapping.getInternalId());
-        statement.setString(2, idMapping.getExternalId());
-        return statement;
+        statement.setString(4, patientIdMapping.getExternalId());
     }
 
     @Override
@@ -80,21 +66,29 @@ public class PatientIdMappingDao extends IdMappingDao {
         return String.format("select distinct map.internal_id, map.external_id, map.uri, map.created_at, map.last_sync_datetime, map.server_update_datetime from %s map where map.internal_id=?", getMappingTable());
     }
 
+    @Override
+    public String getFetchByInternalIdsSql(int count) {
+        return String.format("select distinct map.internal_id, map.external_id, map.uri, map.created_at, map.last_sync_datetime, map.server_update_datetime from %s map where map.internal_id in (%s)", getMappingTable(), placeholders(count));
+    }
+
+    @Override
+    public String getFetchByExternalIdsSql(int count) {
+        return String.format("select distinct map.internal_id, map.external_id, map.uri, map.created_at, map.last_sync_datetime, map.server_update_datetime from %s map where map.external_id in (%s)", getMappingTable(), placeholders(count));
+    }
+
     @Override
     public String getFetchByHealthIdSql() {
         return String.format("select map.internal_id, map.external_id, map.uri, map.created_at, map.last_sync_datetime, map.server_update_datetime from %s map where map.uri like ?", getMappingTable());
     }
 
 
-    private String getInsertMappingSql() {
+    @Override
+    public String getInsertMappingSql() {
         return String.format("insert into %s (internal_id, external_id, uri, created_at, last_sync_datetime, server_update_datetime) values (?,?,?,?,?,?)", getMappingTable());
     }
 
-    private String getUpdateMappingSql() {
-        return String.format("update %s set last_sync_datetime = ?, server_update_datetime = ? where internal_id = ?", getMappingTable());
-    }
-
-    private String getMappingExistsQuery() {
-        return String.format("select distinct map.internal_id from %s map where map.internal_id=? and map.external_id=?", getMappingTable());
+    @Override
+    public String getUpdateMappingSql() {
+        return String.format("update %s set last_sync_datetime = ?, server_update_datetime = ? where internal_id = ? and external_id = ?", getMappingTable());
     }
 }
@@ -1,6 +1,7 @@
 package org.openmrs.module.shrclient.model;
 
 import org.apache.commons.lang.Validate;
+import org.apache.commons.lang3.StringUtils;
 
 import java.sql.Timestamp;
 import java.util.Date;
@@ -12,6 +13,7 @@ public class IdMapping {
     private String externalId;
     private String type;
     private String uri;
+    private String healthId;
     private Date createdAt;
     private Date lastSyncDateTime;
     private Date serverUpdateDateTime;
@@ -24,6 +26,7 @@ public class IdMapping {
         this.externalId = externalId;
         this.type = type;
         this.uri = uri;
+        this.healthId = healthIdOf(uri);
         this.createdAt = createdAt;
         this.lastSyncDateTime = lastSyncDateTime;
         this.serverUpdateDateTime = serverUpdateDateTime;
@@ -78,6 +81,23 @@ public class IdMapping {
 
     public void setUri(String uri) {
         this.uri = uri;
+        this.healthId = healthIdOf(uri);
+    }
+
+    /**
+     * The health id of the patient the mapped resource belongs to, taken from the patients/{healthId} segment of
+     * the uri.
+     */
+    public String getHealthId() {
+        return healthId;
+    }
+
+    public void setHealthId(String healthId) {
+        this.healthId = healthId;
+    }
+
+    public static String healthIdOf(String uri) {
+        return StringUtils.substringBefore(StringUtils.substringAfter(uri, "patients/"), "/");
     }
 
     public void setLastSyncDateTime(Date lastSyncDateTime) {
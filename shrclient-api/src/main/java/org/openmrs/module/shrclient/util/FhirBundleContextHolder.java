@@ -0,0 +1,65 @@
+package org.openmrs.module.shrclient.util;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the single FhirContext of the module. The context is thread-safe but expensive to build, since it scans
+ * the model classes of every resource type the first time it is used. Parsers are not meant to be shared between
+ * threads, but are cheap to create from a built context, so each call gets a new one. They are not kept per thread,
+ * since the threads of the web container outlive the module.
+ */
+public class FhirBundleContextHolder {
+    private static final Logger log = Logger.getLogger(FhirBundleContextHolder.class);
+
+    private static final String[] RESOURCES_EXCHANGED = {"Bundle", "Composition", "Encounter", "Observation",
+            "Condition", "FamilyMemberHistory", "Immunization", "Procedure", "ProcedureRequest", "DiagnosticOrder",
+            "DiagnosticReport", "MedicationOrder"};
+
+    private static final FhirContext fhirContext = FhirContext.forDstu2();
+
+    public static FhirContext getFhirContext() {
+        return fhirContext;
+    }
+
+    public static IParser getXmlParser() {
+        return fhirContext.newXmlParser();
+    }
+
+    public static IParser getJsonParser() {
+        return fhirContext.newJsonParser();
+    }
+
+    /**
+     * @return the JSON parser if the content is a JSON document, the XML parser otherwise
+     */
+    public static IParser getParserFor(String content) {
+        return isJson(content) ? getJsonParser() : getXmlParser();
+    }
+
+    private static boolean isJson(String content) {
+        if (content == null) {
+            return false;
+        }
+        for (int index = 0; index < content.length(); index++) {
+            char character = content.charAt(index);
+            if (!Character.isWhitespace(character)) {
+                return character == '{';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scans the definitions of the resources exchanged with SHR up front, so that the first sync after a restart
+     * does not pay for it.
+     */
+    public static void initialize() {
+        long start = System.currentTimeMillis();
+        for (String resourceName : RESOURCES_EXCHANGED) {
+            fhirContext.getResourceDefinition(resourceName);
+        }
+        log.info(String.format("FHIR context initialized in %d ms", System.currentTimeMillis() - start));
+    }
+}
@@ -0,0 +1,31 @@
+package org.openmrs.module.shrclient.util;
+
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Lets classes outside the api, which the activator cannot see, release threads and shared state when the module
+ * stops. Hooks run once, in the order they were added, and are then forgotten.
+ */
+public class ModuleStopHooks {
+    private static final Logger log = Logger.getLogger(ModuleStopHooks.class);
+
+    private static final List<Runnable> hooks = new CopyOnWriteArrayList<>();
+
+    public static void add(Runnable hook) {
+        hooks.add(hook);
+    }
+
+    public static void runAll() {
+        for (Runnable hook : hooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                log.warn("Error while releasing resources of the stopped module.", e);
+            }
+        }
+        hooks.clear();
+    }
+}
@@ -0,0 +1,107 @@
+package org.openmrs.module.shrclient.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.shrclient.model.IdMapping;
+import org.openmrs.module.shrclient.model.IdMappingType;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IdMappingCacheTest {
+    private static final String TABLE = "shr_id_mapping";
+
+    private IdMappingCache idMappingCache;
+    private CountingLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        idMappingCache = new IdMappingCache(2, 60000);
+        loader = new CountingLoader(new IdMapping("internal-1", "external-1", IdMappingType.CONCEPT, "uri", new Date()));
+    }
+
+    @Test
+    public void shouldLoadOnceAndServeSubsequentLookupsFromCache() throws Exception {
+        IdMapping first = idMappingCache.getByInternalId(TABLE, "internal-1", loader);
+        IdMapping second = idMappingCache.getByInternalId(TABLE, "internal-1", loader);
+
+        assertSame(first, second);
+        assertEquals(1, loader.loadCount);
+        assertEquals(1, idMappingCache.getHitCount());
+        assertEquals(1, idMappingCache.getMissCount());
+    }
+
+    @Test
+    public void shouldCacheAbsentMappings() throws Exception {
+        CountingLoader absentLoader = new CountingLoader(null);
+
+        assertNull(idMappingCache.getByExternalId(TABLE, "unknown", absentLoader));
+        assertNull(idMappingCache.getByExternalId(TABLE, "unknown", absentLoader));
+        assertEquals(1, absentLoader.loadCount);
+    }
+
+    @Test
+    public void shouldReloadAfterMappingIsInvalidated() throws Exception {
+        idMappingCache.getByInternalId(TABLE, "internal-1", loader);
+        idMappingCache.getByExternalId(TABLE, "external-1", loader);
+
+        idMappingCache.invalidate(TABLE, new IdMapping("internal-2", "external-1", IdMappingType.CONCEPT, "uri", new Date()));
+
+        idMappingCache.getByInternalId(TABLE, "internal-1", loader);
+        idMappingCache.getByExternalId(TABLE, "external-1", loader);
+        assertEquals(4, loader.loadCount);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntriesBeyondMaxSize() throws Exception {
+        idMappingCache.getByInternalId(TABLE, "a", loader);
+        idMappingCache.getByInternalId(TABLE, "b", loader);
+        idMappingCache.getByInternalId(TABLE, "a", loader);
+        idMappingCache.getByInternalId(TABLE, "c", loader);
+
+        assertEquals(2, idMappingCache.size(TABLE));
+        idMappingCache.getByInternalId(TABLE, "a", loader);
+        assertEquals(3, loader.loadCount);
+        idMappingCache.getByInternalId(TABLE, "b", loader);
+        assertEquals(4, loader.loadCount);
+    }
+
+    @Test
+    public void shouldExpireEntriesAfterTtl() throws Exception {
+        IdMappingCache expiringCache = new IdMappingCache(10, 0);
+
+        expiringCache.getByInternalId(TABLE, "internal-1", loader);
+        expiringCache.getByInternalId(TABLE, "internal-1", loader);
+
+        assertEquals(2, loader.loadCount);
+    }
+
+    @Test
+    public void shouldAlwaysLoadWhenDisabled() throws Exception {
+        idMappingCache.setEnabled(false);
+
+        idMappingCache.getByInternalId(TABLE, "internal-1", loader);
+        idMappingCache.getByInternalId(TABLE, "internal-1", loader);
+
+        assertEquals(2, loader.loadCount);
+        assertEquals(0, idMappingCache.getHitCount());
+    }
+
+    private static class CountingLoader implements IdMappingCache.Loader {
+        private final IdMapping idMapping;
+        private int loadCount;
+
+        CountingLoader(IdMapping idMapping) {
+            this.idMapping = idMapping;
+        }
+
+        @Override
+        public IdMapping load(String id) {
+            loadCount++;
+            return idMapping;
+        }
+    }
+}
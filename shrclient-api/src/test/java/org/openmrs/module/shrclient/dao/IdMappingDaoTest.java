@@ -0,0 +1,95 @@
+package org.openmrs.module.shrclient.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.module.shrclient.model.IdMapping;
+import org.openmrs.module.shrclient.model.IdMappingType;
+import org.openmrs.module.shrclient.util.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Date;
+
+import static java.util.Arrays.asList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class IdMappingDaoTest {
+    @Mock
+    private Database database;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement batchUpdateStatement;
+    @Mock
+    private PreparedStatement batchInsertStatement;
+    @Mock
+    private PreparedStatement updateStatement;
+    @Mock
+    private PreparedStatement insertStatement;
+
+    private SHRIdMappingDao idMappingDao;
+    private IdMapping existingMapping;
+    private IdMapping newMapping;
+    private IdMapping unknownMapping;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        idMappingDao = new SHRIdMappingDao(database);
+        Date syncedAt = new Date();
+        existingMapping = new IdMapping("internal-1", "external-1", IdMappingType.CONCEPT, "/concepts/1", syncedAt, syncedAt, syncedAt);
+        newMapping = new IdMapping("internal-2", "external-2", IdMappingType.CONCEPT, "/concepts/2", syncedAt, syncedAt, syncedAt);
+        unknownMapping = new IdMapping("internal-3", "external-3", IdMappingType.CONCEPT, "/concepts/3", syncedAt, syncedAt, syncedAt);
+    }
+
+    @Test
+    public void shouldUpdateInOneBatchAndInsertTheMappingsNoRowMatchedInAnother() throws Exception {
+        when(connection.prepareStatement(idMappingDao.getUpdateMappingSql())).thenReturn(batchUpdateStatement);
+        when(connection.prepareStatement(idMappingDao.getInsertMappingSql())).thenReturn(batchInsertStatement);
+        when(batchUpdateStatement.executeBatch()).thenReturn(new int[]{1, 0});
+
+        idMappingDao.saveOrUpdateIdMappings(connection, asList(existingMapping, newMapping, newMapping));
+
+        verify(batchUpdateStatement, times(2)).addBatch();
+        verify(batchUpdateStatement).setString(3, "internal-1");
+        verify(batchUpdateStatement).setString(3, "internal-2");
+        verify(batchInsertStatement, times(1)).addBatch();
+        verify(batchInsertStatement).setString(1, "internal-2");
+        verify(batchInsertStatement, never()).setString(1, "internal-1");
+        verify(batchInsertStatement).executeBatch();
+    }
+
+    @Test
+    public void shouldNotInsertWhenEveryUpdateMatchedARow() throws Exception {
+        when(connection.prepareStatement(idMappingDao.getUpdateMappingSql())).thenReturn(batchUpdateStatement);
+        when(batchUpdateStatement.executeBatch()).thenReturn(new int[]{1});
+
+        idMappingDao.saveOrUpdateIdMappings(connection, asList(existingMapping));
+
+        verify(connection, never()).prepareStatement(idMappingDao.getInsertMappingSql());
+    }
+
+    @Test
+    public void shouldSaveAMappingOnItsOwnWhenTheDriverDoesNotReportItsUpdateCount() throws Exception {
+        when(connection.prepareStatement(idMappingDao.getUpdateMappingSql())).thenReturn(batchUpdateStatement, updateStatement);
+        when(connection.prepareStatement(idMappingDao.getInsertMappingSql())).thenReturn(insertStatement, batchInsertStatement);
+        when(batchUpdateStatement.executeBatch()).thenReturn(new int[]{1, Statement.SUCCESS_NO_INFO, 0});
+        when(updateStatement.executeUpdate()).thenReturn(0);
+
+        idMappingDao.saveOrUpdateIdMappings(connection, asList(existingMapping, unknownMapping, newMapping));
+
+        verify(updateStatement).setString(3, "internal-3");
+        verify(updateStatement).executeUpdate();
+        verify(insertStatement).setString(1, "internal-3");
+        verify(insertStatement).execute();
+        verify(batchInsertStatement, times(1)).addBatch();
+        verify(batchInsertStatement).setString(1, "internal-2");
+        verify(batchInsertStatement).executeBatch();
+    }
+}
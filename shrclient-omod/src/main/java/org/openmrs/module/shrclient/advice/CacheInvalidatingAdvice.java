@@ -0,0 +1,26 @@
+package org.openmrs.module.shrclient.advice;
+
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+import java.util.regex.Pattern;
+
+/**
+ * Drops a cache whenever a service method whose name matches changingMethods returns.
+ */
+public abstract class CacheInvalidatingAdvice implements AfterReturningAdvice {
+    private final Pattern changingMethods;
+
+    protected CacheInvalidatingAdvice(String changingMethods) {
+        this.changingMethods = Pattern.compile(changingMethods);
+    }
+
+    protected abstract void invalidate();
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+        if (changingMethods.matcher(method.getName()).matches()) {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.openmrs.module.shrclient.advice;
+
+import org.openmrs.module.fhir.utils.ConceptLookupIndex;
+import org.openmrs.module.shrclient.util.PlatformUtil;
+
+/**
+ * Drops the concept lookup index whenever a ConceptService call changes concepts, so answers and set members
+ * added or removed after the index was built are picked up.
+ */
+public class ConceptLookupIndexAdvice extends CacheInvalidatingAdvice {
+    private static final String CHANGING_METHODS = "(save|retire|unretire|purge|update).*";
+    private final ConceptLookupIndex conceptLookupIndex;
+
+    public ConceptLookupIndexAdvice() {
+        this(PlatformUtil.getRegisteredComponent(ConceptLookupIndex.class));
+    }
+
+    public ConceptLookupIndexAdvice(ConceptLookupIndex conceptLookupIndex) {
+        super(CHANGING_METHODS);
+        this.conceptLookupIndex = conceptLookupIndex;
+    }
+
+    @Override
+    protected void invalidate() {
+        conceptLookupIndex.invalidate();
+    }
+}
@@ -0,0 +1,28 @@
+package org.openmrs.module.shrclient.advice;
+
+import org.openmrs.module.fhir.utils.MetadataRegistry;
+import org.openmrs.module.shrclient.util.PlatformUtil;
+
+/**
+ * Drops the metadata registry whenever a service call changes the metadata it holds, so renamed, retired or
+ * newly added metadata is looked up again.
+ */
+public class MetadataRegistryAdvice extends CacheInvalidatingAdvice {
+    private static final String CHANGING_METHODS =
+            "(save|retire|unretire|purge|update)(Concept|ConceptClass|EncounterRole|VisitType|PersonAttributeType|ProviderAttributeType)";
+    private final MetadataRegistry metadataRegistry;
+
+    public MetadataRegistryAdvice() {
+        this(PlatformUtil.getRegisteredComponent(MetadataRegistry.class));
+    }
+
+    public MetadataRegistryAdvice(MetadataRegistry metadataRegistry) {
+        super(CHANGING_METHODS);
+        this.metadataRegistry = metadataRegistry;
+    }
+
+    @Override
+    protected void invalidate() {
+        metadataRegistry.invalidate();
+    }
+}
@@ -0,0 +1,347 @@
+package org.openmrs.module.shrclient.feeds.openmrs;
+
+import com.sun.syndication.feed.atom.Entry;
+import org.apache.log4j.Logger;
+import org.ict4h.atomfeed.client.domain.Event;
+import org.ict4h.atomfeed.client.domain.Marker;
+import org.ict4h.atomfeed.client.repository.AllFailedEvents;
+import org.ict4h.atomfeed.client.repository.AllFeeds;
+import org.ict4h.atomfeed.client.repository.AllMarkers;
+import org.ict4h.atomfeed.client.service.FeedEnumerator;
+import org.ict4h.atomfeed.client.util.Util;
+import org.ict4h.atomfeed.transaction.AFTransactionManager;
+import org.ict4h.atomfeed.transaction.AFTransactionWorkWithoutResult;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.shrclient.util.WorkerThreadContext;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads an OpenMRS feed from its marker and processes the events on a number of lanes, each a single thread.
+ * Events are assigned to a lane by their partition key, so events of the same partition keep their feed order.
+ * The partition keys of a batch are looked up on the lanes too, as that may need a database read per event.
+ * Events are dispatched in batches, and after each batch the marker is advanced only past the contiguous prefix
+ * of successfully processed events. Once an event fails, the events of the batch that have not started are skipped,
+ * so a later event of the failed event's partition never runs before it. The pass stops at the first batch with a
+ * failure, leaving the failed event and everything after it to the regular feed client, which records failures in
+ * failed events as usual. Events that were already running on other lanes when the failure happened complete, and
+ * the feed client processes them again.
+ * The feed is read with atomfeed's FeedEnumerator, the same way the feed client reads it.
+ */
+public class ConcurrentFeedProcessor {
+    private static final Logger log = Logger.getLogger(ConcurrentFeedProcessor.class);
+
+    private static final int EVENTS_PER_BATCH = 100;
+
+    private final AllFeeds allFeeds;
+    private final AllMarkers allMarkers;
+    private final AllFailedEvents allFailedEvents;
+    private final AFTransactionManager txManager;
+    private final URI feedUri;
+    private final PartitionedEventWorker eventWorker;
+    private final int maxFailedEvents;
+    private final int parallelism;
+
+    public ConcurrentFeedProcessor(AllFeeds allFeeds, AllMarkers allMarkers, AllFailedEvents allFailedEvents,
+                                   AFTransactionManager txManager, URI feedUri, PartitionedEventWorker eventWorker,
+                                   int maxFailedEvents, int parallelism) {
+        this.allFeeds = allFeeds;
+        this.allMarkers = allMarkers;
+        this.allFailedEvents = allFailedEvents;
+        this.txManager = txManager;
+        this.feedUri = feedUri;
+        this.eventWorker = eventWorker;
+        this.maxFailedEvents = maxFailedEvents;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return true if every event up to the end of the feed was processed and the marker points at the last one
+     */
+    public boolean processEvents() {
+        if (allFailedEvents.getNumberOfFailedEvents(feedUri.toString()) >= maxFailedEvents) {
+            log.warn(String.format("Too many failed events for feed [%s]. Not processing events concurrently.", feedUri));
+            return false;
+        }
+        ExecutorService[] lanes = createLanes();
+        try {
+            return processFeed(lanes);
+        } catch (URISyntaxException e) {
+            log.error("Invalid feed link for feed " + feedUri, e);
+            return false;
+        } finally {
+            shutdown(lanes);
+        }
+    }
+
+    /**
+     * @return the events after the marker up to the end of the feed, in feed order, without processing them
+     */
+    public List<Event> getUnprocessedEvents() throws URISyntaxException {
+        final List<Event> events = new ArrayList<>();
+        readFeed(new FeedEventVisitor() {
+            @Override
+            public boolean visit(FeedEvent feedEvent) {
+                events.add(feedEvent.event);
+                return true;
+            }
+        });
+        return events;
+    }
+
+    private boolean processFeed(final ExecutorService[] lanes) throws URISyntaxException {
+        final UserContext userContext = getTaskUserContext();
+        final List<FeedEvent> batch = new ArrayList<>();
+        boolean completed = readFeed(new FeedEventVisitor() {
+            @Override
+            public boolean visit(FeedEvent feedEvent) {
+                batch.add(feedEvent);
+                if (batch.size() < EVENTS_PER_BATCH) {
+                    return true;
+                }
+                boolean processed = processBatch(batch, lanes, userContext);
+                batch.clear();
+                return processed;
+            }
+        });
+        return completed && (batch.isEmpty() || processBatch(batch, lanes, userContext));
+    }
+
+    /**
+     * Walks the feed from the event after the marker, stopping when the visitor returns false.
+     * @return true if the visitor went through to the end of the feed
+     */
+    private boolean readFeed(FeedEventVisitor visitor) throws URISyntaxException {
+        Marker marker = allMarkers.get(feedUri);
+        FeedEnumerator feedEnumerator = new FeedEnumerator(allFeeds, marker != null ? marker : new Marker(feedUri, null, null));
+        for (Entry entry : feedEnumerator) {
+            URI pageUri = Util.getViaLink(feedEnumerator.getCurrentFeed());
+            if (!visitor.visit(new FeedEvent(new Event(entry, feedUri.toString()), pageUri))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean processBatch(List<FeedEvent> batch, ExecutorService[] lanes, UserContext userContext) {
+        List<String> partitionKeys = getPartitionKeys(batch, lanes, userContext);
+        if (partitionKeys == null) {
+            return false;
+        }
+        AtomicBoolean batchFailed = new AtomicBoolean();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int index = 0; index < batch.size(); index++) {
+            Event event = batch.get(index).event;
+            futures.add(getLane(lanes, partitionKeys.get(index)).submit(new EventTask(event, userContext, batchFailed)));
+        }
+
+        FeedEvent lastProcessed = null;
+        boolean contiguous = true;
+        for (int index = 0; index < futures.size(); index++) {
+            try {
+                boolean processed = futures.get(index).get();
+                if (processed && contiguous) {
+                    lastProcessed = batch.get(index);
+                } else {
+                    contiguous = false;
+                }
+            } catch (ExecutionException e) {
+                if (contiguous) {
+                    log.warn(String.format("Event [%s] failed. Leaving it and later events of feed [%s] to the feed client.",
+                            batch.get(index).event.getId(), feedUri), e.getCause());
+                }
+                contiguous = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batchFailed.set(true);
+                contiguous = false;
+                break;
+            }
+        }
+        if (lastProcessed != null) {
+            updateMarker(lastProcessed);
+        }
+        return contiguous;
+    }
+
+    /**
+     * Looks up the partition keys of a batch spread over all lanes, which are idle between batches.
+     * @return the key of each event of the batch in order, or null if a lookup failed
+     */
+    private List<String> getPartitionKeys(List<FeedEvent> batch, ExecutorService[] lanes, UserContext userContext) {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int index = 0; index < batch.size(); index++) {
+            futures.add(lanes[index % lanes.length].submit(new PartitionKeyTask(batch.get(index).event, userContext)));
+        }
+        List<String> partitionKeys = new ArrayList<>();
+        try {
+            for (Future<String> future : futures) {
+                partitionKeys.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            log.warn(String.format("Could not find the partition of an event of feed [%s]. Leaving the batch to the feed client.",
+                    feedUri), e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return partitionKeys;
+    }
+
+    private ExecutorService getLane(ExecutorService[] lanes, String partitionKey) {
+        return lanes[(partitionKey.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    protected UserContext getTaskUserContext() {
+        return Context.getUserContext();
+    }
+
+    protected void openWorkerSession(UserContext taskUserContext) {
+        WorkerThreadContext.open(taskUserContext);
+    }
+
+    protected void closeWorkerSession() {
+        WorkerThreadContext.close();
+    }
+
+    private void updateMarker(final FeedEvent feedEvent) {
+        txManager.executeWithTransaction(new AFTransactionWorkWithoutResult() {
+            @Override
+            protected void doInTransaction() {
+                allMarkers.put(feedUri, feedEvent.event.getId(), feedEvent.pageUri);
+            }
+
+            @Override
+            public PropagationDefinition getTxPropagationDefinition() {
+                return PropagationDefinition.PROPAGATION_REQUIRED;
+            }
+        });
+    }
+
+    private ExecutorService[] createLanes() {
+        ExecutorService[] lanes = new ExecutorService[parallelism];
+        FeedWorkerThreadFactory threadFactory = new FeedWorkerThreadFactory();
+        for (int index = 0; index < lanes.length; index++) {
+            lanes[index] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        return lanes;
+    }
+
+    private void shutdown(ExecutorService[] lanes) {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                while (!lane.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.info("Waiting for in-progress events of feed " + feedUri + " to complete.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface FeedEventVisitor {
+        boolean visit(FeedEvent feedEvent);
+    }
+
+    private static class FeedEvent {
+        private final Event event;
+        private final URI pageUri;
+
+        FeedEvent(Event event, URI pageUri) {
+            this.event = event;
+            this.pageUri = pageUri;
+        }
+    }
+
+    /**
+     * Processes an event unless an event of its batch has failed already.
+     * @return true if the event was processed, false if it was skipped
+     */
+    private class EventTask implements Callable<Boolean> {
+        private final Event event;
+        private final UserContext userContext;
+        private final AtomicBoolean batchFailed;
+
+        EventTask(Event event, UserContext userContext, AtomicBoolean batchFailed) {
+            this.event = event;
+            this.userContext = userContext;
+            this.batchFailed = batchFailed;
+        }
+
+        @Override
+        public Boolean call() {
+            if (batchFailed.get()) {
+                return false;
+            }
+            openWorkerSession(userContext);
+            try {
+                txManager.executeWithTransaction(new AFTransactionWorkWithoutResult() {
+                    @Override
+                    protected void doInTransaction() {
+                        eventWorker.process(event);
+                    }
+
+                    @Override
+                    public PropagationDefinition getTxPropagationDefinition() {
+                        return PropagationDefinition.PROPAGATION_REQUIRED;
+                    }
+                });
+                return true;
+            } catch (RuntimeException e) {
+                batchFailed.set(true);
+                throw e;
+            } finally {
+                closeWorkerSession();
+            }
+        }
+    }
+
+    private class PartitionKeyTask implements Callable<String> {
+        private final Event event;
+        private final UserContext userContext;
+
+        PartitionKeyTask(Event event, UserContext userContext) {
+            this.event = event;
+            this.userContext = userContext;
+        }
+
+        @Override
+        public String call() {
+            openWorkerSession(userContext);
+            try {
+                String partitionKey = eventWorker.getPartitionKey(event);
+                return partitionKey != null ? partitionKey : event.getId();
+            } finally {
+                closeWorkerSession();
+            }
+        }
+    }
+
+    private static class FeedWorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "openmrs-feed-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -47,6 +47,23 @@ public class OpenMRSFeedClientFactory {
         return this.getFeedClient(uri,eventWorker, maxFailedEvents);
     }
 
+    public ConcurrentFeedProcessor getConcurrentFeedProcessor(String feedURI, PartitionedEventWorker eventWorker,
+                                                              int maxFailedEvents, int parallelism) throws URISyntaxException {
+        URI uri = new URI(feedURI);
+        AFTransactionManager txMgr = getAtomFeedTransactionManager();
+        JdbcConnectionProvider connectionProvider = getConnectionProvider(txMgr);
+
+        return new ConcurrentFeedProcessor(
+                getAllFeeds(uri, connectionProvider),
+                getAllMarkers(connectionProvider),
+                getAllFailedEvent(connectionProvider),
+                txMgr,
+                uri,
+                eventWorker,
+                maxFailedEvents,
+                parallelism);
+    }
+
     private AllFailedEvents getAllFailedEvent(JdbcConnectionProvider connectionProvider) {
         return new AllFailedEventsJdbcImpl(connectionProvider);
     }
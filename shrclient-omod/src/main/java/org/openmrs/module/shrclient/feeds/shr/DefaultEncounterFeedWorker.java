@@ -11,12 +11,16 @@ import org.openmrs.module.shrclient.util.PropertiesReader;
 import org.openmrs.module.shrclient.util.RestClient;
 import org.openmrs.module.shrclient.util.StringUtil;
 import org.openmrs.module.shrclient.web.controller.dto.EncounterEvent;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 public class DefaultEncounterFeedWorker implements EncounterEventWorker {
     private EMRPatientService emrPatientService;
     private PropertiesReader propertiesReader;
     private ClientRegistry clientRegistry;
     private EMREncounterService emrEncounterService;
+    private final MciPatientCache patientCache;
+    private final HealthIdLocks healthIdLocks = new HealthIdLocks();
 
     private final Logger logger = Logger.getLogger(DefaultEncounterFeedWorker.class);
 
@@ -26,6 +30,7 @@ public class DefaultEncounterFeedWorker implements EncounterEventWorker {
         this.propertiesReader = propertiesReader;
         this.clientRegistry = clientRegistry;
         this.emrEncounterService = emrEncounterService;
+        this.patientCache = new MciPatientCache(propertiesReader.getShrMciPatientCacheTtlSeconds());
     }
 
     @Override
@@ -36,14 +41,20 @@ public class DefaultEncounterFeedWorker implements EncounterEventWorker {
             Patient patient = downloadActivePatient(healthId);
             if(!healthId.equals(patient.getHealthId()))
                 encounterEvent.setHealthId(patient.getHealthId());
-            org.openmrs.Patient emrPatient = emrPatientService.createOrUpdateEmrPatient(patient);
+            String activeHealthId = patient.getHealthId() != null ? patient.getHealthId() : healthId;
+            healthIdLocks.lock(activeHealthId);
+            try {
+                org.openmrs.Patient emrPatient = getOrUpdateEmrPatient(patient);
 
-            if (null == emrPatient) {
-                String message = String.format("Can not identify patient[%s]", healthId);
-                logger.error(message);
-                throw new Exception(message);
+                if (null == emrPatient) {
+                    String message = String.format("Can not identify patient[%s]", healthId);
+                    logger.error(message);
+                    throw new Exception(message);
+                }
+                emrEncounterService.createOrUpdateEncounter(emrPatient, encounterEvent);
+            } finally {
+                healthIdLocks.unlock(activeHealthId);
             }
-            emrEncounterService.createOrUpdateEncounter(emrPatient, encounterEvent);
         } catch (Exception e) {
             String message = String.format("Error occurred while trying to process encounter[%s] of patient[%s]",
                     encounterEvent.getEncounterId(), healthId);
@@ -52,9 +63,46 @@ public class DefaultEncounterFeedWorker implements EncounterEventWorker {
         }
     }
 
+    /**
+     * A catchment feed page often carries several encounters of the same patient. The EMR patient is only
+     * saved again when MCI returned something different from what was last saved in this run.
+     */
+    private org.openmrs.Patient getOrUpdateEmrPatient(Patient patient) {
+        if (patientCache.isSaved(patient)) {
+            org.openmrs.Patient emrPatient = emrPatientService.getEMRPatientByHealthId(patient.getHealthId());
+            if (emrPatient != null) {
+                return emrPatient;
+            }
+        }
+        org.openmrs.Patient emrPatient = emrPatientService.createOrUpdateEmrPatient(patient);
+        if (emrPatient != null) {
+            markSaved(patient);
+        }
+        return emrPatient;
+    }
+
+    private void markSaved(final Patient patient) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    patientCache.markSaved(patient);
+                }
+            });
+        } else {
+            patientCache.markSaved(patient);
+        }
+    }
+
     private Patient downloadActivePatient(String healthId) throws IdentityUnauthorizedException {
-        RestClient mciClient = clientRegistry.getMCIClient();
-        Patient patient = mciClient.get(StringUtil.ensureSuffix(propertiesReader.getMciPatientContext(), "/") + healthId, Patient.class);
+        Patient patient = patientCache.get(healthId);
+        if (patient == null) {
+            RestClient mciClient = clientRegistry.getMCIClient();
+            patient = mciClient.get(StringUtil.ensureSuffix(propertiesReader.getMciPatientContext(), "/") + healthId, Patient.class);
+            if (patient != null) {
+                patientCache.put(healthId, patient);
+            }
+        }
         if(!patient.isActive() && patient.getMergedWith()!= null) {
             patient = downloadActivePatient(patient.getMergedWith());
         }
@@ -0,0 +1,51 @@
+package org.openmrs.module.shrclient.feeds.shr;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the work on one patient across catchment feeds that are processed concurrently. Catchments are
+ * hierarchical, so the same patient and encounter show up in several feeds, and two threads must not both miss the
+ * id mapping and create the EMR patient or encounter twice.
+ * A lock released inside a transaction is held until the transaction completes, so that the next thread finds the
+ * committed mappings. Health ids are spread over a fixed number of locks, and a thread holds one lock at a time.
+ */
+public class HealthIdLocks {
+    private static final int NUMBER_OF_LOCKS = 64;
+
+    private final ReentrantLock[] locks = new ReentrantLock[NUMBER_OF_LOCKS];
+
+    public HealthIdLocks() {
+        for (int i = 0; i < NUMBER_OF_LOCKS; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public void lock(String healthId) {
+        getLock(healthId).lock();
+    }
+
+    /**
+     * Releases the lock once the current transaction completes, or right away outside of a transaction.
+     */
+    public void unlock(String healthId) {
+        final ReentrantLock lock = getLock(healthId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    lock.unlock();
+                }
+            });
+        } else {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock getLock(String healthId) {
+        int hash = healthId != null ? healthId.hashCode() : 0;
+        return locks[Math.abs(hash % NUMBER_OF_LOCKS)];
+    }
+}
@@ -0,0 +1,72 @@
+package org.openmrs.module.shrclient.feeds.shr;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openmrs.module.shrclient.model.Patient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MCI patients downloaded during one catchment sync run, keyed by the health id they were requested with. Entries
+ * older than the time to live are downloaded again; a time to live of 0 keeps them for the whole run.
+ * The cache also remembers what was last saved to the EMR for each health id, so that a patient is saved again
+ * only when MCI returns different data.
+ */
+public class MciPatientCache {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final long timeToLiveMillis;
+    private final ConcurrentMap<String, CachedPatient> patients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> savedPatients = new ConcurrentHashMap<>();
+
+    public MciPatientCache(int timeToLiveSeconds) {
+        this.timeToLiveMillis = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+    }
+
+    public Patient get(String healthId) {
+        CachedPatient cachedPatient = patients.get(healthId);
+        if (cachedPatient == null) {
+            return null;
+        }
+        if (timeToLiveMillis > 0 && System.currentTimeMillis() - cachedPatient.downloadedAt > timeToLiveMillis) {
+            patients.remove(healthId, cachedPatient);
+            return null;
+        }
+        return cachedPatient.patient;
+    }
+
+    public void put(String healthId, Patient patient) {
+        patients.put(healthId, new CachedPatient(patient));
+    }
+
+    public boolean isSaved(Patient patient) {
+        String content = getContent(patient);
+        return patient.getHealthId() != null && content != null && content.equals(savedPatients.get(patient.getHealthId()));
+    }
+
+    public void markSaved(Patient patient) {
+        String content = getContent(patient);
+        if (patient.getHealthId() != null && content != null) {
+            savedPatients.put(patient.getHealthId(), content);
+        }
+    }
+
+    private String getContent(Patient patient) {
+        try {
+            return objectMapper.writeValueAsString(patient);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static class CachedPatient {
+        private final Patient patient;
+        private final long downloadedAt = System.currentTimeMillis();
+
+        CachedPatient(Patient patient) {
+            this.patient = patient;
+        }
+    }
+}
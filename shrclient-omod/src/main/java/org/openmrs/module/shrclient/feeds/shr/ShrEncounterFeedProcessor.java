@@ -1,7 +1,6 @@
 package org.openmrs.module.shrclient.feeds.shr;
 
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import org.ict4h.atomfeed.client.AtomFeedProperties;
 import org.ict4h.atomfeed.client.domain.Event;
@@ -98,12 +97,11 @@ public class ShrEncounterFeedProcessor {
         @Override
         public void process(Event event) {
             String content = event.getContent();
-            FhirContext fhirContext = FhirBundleContextHolder.getFhirContext();
             Bundle bundle;
             try {
-                bundle = fhirContext.newXmlParser().parseResource(Bundle.class, content);
+                bundle = FhirBundleContextHolder.getParserFor(content).parseResource(Bundle.class, content);
             } catch (Exception e) {
-                throw new RuntimeException("Unable to parse XML", e);
+                throw new RuntimeException("Unable to parse bundle", e);
             }
             EncounterEvent encounterEvent = new EncounterEvent();
             encounterEvent.setTitle(event.getTitle());
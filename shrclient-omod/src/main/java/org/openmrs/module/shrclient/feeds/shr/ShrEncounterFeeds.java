@@ -3,24 +3,25 @@ package org.openmrs.module.shrclient.feeds.shr;
 import com.sun.syndication.feed.atom.Feed;
 import com.sun.syndication.io.FeedException;
 import com.sun.syndication.io.WireFeedInput;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultRedirectStrategy;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.ict4h.atomfeed.client.repository.AllFeeds;
 import org.openmrs.module.shrclient.handlers.ClientRegistry;
+import org.openmrs.module.shrclient.identity.IdentityToken;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
+import org.openmrs.module.shrclient.util.Headers;
+import org.openmrs.module.shrclient.util.HttpClientProvider;
+import org.openmrs.module.shrclient.util.WebClient;
 import org.springframework.http.HttpStatus;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.Map;
 
@@ -37,16 +38,24 @@ public class ShrEncounterFeeds extends AllFeeds {
     @Override
     public Feed getFor(URI uri) {
         HttpGet request = new HttpGet(uri);
+        request.setConfig(clientRegistry.getShrRequestConfig());
         addHeaders(request);
         try {
-            String response = execute(request);
-            //works only for application/atom+xml
-            WireFeedInput input = new WireFeedInput();
-            return (Feed) input.build(new StringReader(response));
+            IdentityToken identityToken = clientRegistry.getOrCreateIdentityToken();
+            request.setHeader(Headers.AUTH_TOKEN_KEY, identityToken.toString());
+            try {
+                return execute(request, identityToken);
+            } catch (IdentityUnauthorizedException e) {
+                logger.info("Identity token rejected. Retrying with a refreshed token. URL: " + uri);
+                request.reset();
+                IdentityToken refreshedToken = clientRegistry.refreshIdentityToken(identityToken);
+                request.setHeader(Headers.AUTH_TOKEN_KEY, refreshedToken.toString());
+                return execute(request, refreshedToken);
+            }
         } catch (IdentityUnauthorizedException e) {
             logger.error(e);
-            clientRegistry.clearIdentityToken();
-        } catch (IOException | FeedException e) {
+            clientRegistry.clearIdentityToken(e.getRejectedToken());
+        } catch (IOException e) {
             logger.error(e);
         }
         return null;
@@ -58,25 +67,31 @@ public class ShrEncounterFeeds extends AllFeeds {
         }
     }
 
-    private String execute(HttpRequestBase request) throws IOException {
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        httpClientBuilder.setRedirectStrategy(new DefaultRedirectStrategy());
-        try (CloseableHttpClient httpClient = httpClientBuilder.build()) {
-            ResponseHandler<String> responseHandler = new ResponseHandler<String>() {
-                public String handleResponse(final HttpResponse response) throws IOException {
-                    int status = response.getStatusLine().getStatusCode();
-                    if (status >= 200 && status < 300) {
-                        return response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : null;
-                    } else if (status == HttpStatus.NOT_FOUND.value()) {
-                        return null;
-                    } else if (status == HttpStatus.UNAUTHORIZED.value()) {
-                        throw new IdentityUnauthorizedException("Identity not authorized");
-                    } else {
-                        throw new ClientProtocolException("Unexpected response status: " + status);
-                    }
+    private Feed execute(HttpRequestBase request, final IdentityToken identityToken) throws IOException {
+        ResponseHandler<Feed> responseHandler = new ResponseHandler<Feed>() {
+            public Feed handleResponse(final HttpResponse response) throws IOException {
+                int status = response.getStatusLine().getStatusCode();
+                if (status >= 200 && status < 300) {
+                    return response.getEntity() != null ? buildFeed(response.getEntity()) : null;
+                } else if (status == HttpStatus.NOT_FOUND.value()) {
+                    return null;
+                } else if (status == HttpStatus.UNAUTHORIZED.value()) {
+                    throw new IdentityUnauthorizedException("Identity not authorized", identityToken);
+                } else {
+                    throw new ClientProtocolException("Unexpected response status: " + status);
                 }
-            };
-            return httpClient.execute(request, responseHandler);
+            }
+        };
+        return HttpClientProvider.getHttpClient().execute(request, responseHandler);
+    }
+
+    private Feed buildFeed(HttpEntity entity) throws IOException {
+        //works only for application/atom+xml
+        try (InputStream content = WebClient.withoutByteOrderMark(entity.getContent())) {
+            WireFeedInput input = new WireFeedInput();
+            return (Feed) input.build(new InputStreamReader(content, WebClient.UTF_8));
+        } catch (FeedException e) {
+            throw new IOException(e);
         }
     }
 }
@@ -1,59 +1,213 @@
 package org.openmrs.module.shrclient.handlers;
 
+import org.apache.http.client.config.RequestConfig;
+import org.openmrs.module.fhir.utils.PropertyKeyConstants;
 import org.openmrs.module.shrclient.identity.IdentityProviderService;
 import org.openmrs.module.shrclient.identity.IdentityStore;
 import org.openmrs.module.shrclient.identity.IdentityToken;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.openmrs.module.shrclient.util.Headers;
+import org.openmrs.module.shrclient.util.HttpClientProvider;
+import org.openmrs.module.shrclient.util.ModuleStopHooks;
 import org.openmrs.module.shrclient.util.PropertiesReader;
 import org.openmrs.module.shrclient.util.RestClient;
 import org.openmrs.module.shrclient.util.SHRClient;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
+/**
+ * Hands out clients that are shared by every registry and thread. A client is built once and rebuilt only when
+ * anything it was built from changes, be it the headers, the base url, the request settings or the identity provider
+ * settings. The identity token is not part of it, as clients set the current token on every request.
+ * The clients are dropped when the module stops.
+ */
 public class ClientRegistry {
+    private static final String MCI_CLIENT = "mci";
+    private static final String SHR_CLIENT = "shr";
+    private static final String LR_CLIENT = "lr";
+    private static final String FR_CLIENT = "fr";
+    private static final String PR_CLIENT = "pr";
+    private static final ConcurrentMap<String, CachedClient> clients = new ConcurrentHashMap<>();
+
+    static {
+        ModuleStopHooks.add(new Runnable() {
+            @Override
+            public void run() {
+                clearClients();
+            }
+        });
+    }
+
     private PropertiesReader propertiesReader;
     private IdentityStore identityStore;
+    private final IdentityProviderService identityProviderService;
 
     public ClientRegistry(PropertiesReader propertiesReader, IdentityStore identityStore) {
         this.propertiesReader = propertiesReader;
         this.identityStore = identityStore;
+        this.identityProviderService = new IdentityProviderService(propertiesReader, identityStore);
     }
 
     public RestClient getMCIClient() throws IdentityUnauthorizedException {
-        return new RestClient(propertiesReader.getMciBaseUrl(),
-                Headers.getHrmAccessTokenHeaders(getOrCreateIdentityToken(), propertiesReader.getFacilityInstanceProperties()));
+        final String baseUrl = propertiesReader.getMciBaseUrl();
+        final HashMap<String, String> headers = Headers.getHrmAccessTokenHeaders(getOrCreateIdentityToken(), propertiesReader.getFacilityInstanceProperties());
+        final RequestConfig requestConfig = getMciRequestConfig();
+        final boolean compressRequests = propertiesReader.isMciRequestCompressionEnabled();
+        List<Object> configuration = getConfiguration(baseUrl, withoutToken(headers), getTimeouts(requestConfig),
+                compressRequests, getIdentityProviderSettings(), identityStore);
+
+        return (RestClient) getOrCreateClient(MCI_CLIENT, configuration, new ClientFactory() {
+            @Override
+            public Object create() {
+                return new RestClient(baseUrl, headers, requestConfig, compressRequests, identityProviderService);
+            }
+        });
     }
 
     public SHRClient getSHRClient() throws IdentityUnauthorizedException {
-        HashMap<String, String> headers = Headers.getHrmAccessTokenHeaders(getOrCreateIdentityToken(), propertiesReader.getFacilityInstanceProperties());
-        return new SHRClient(propertiesReader.getShrBaseUrl(), headers);
+        final String baseUrl = propertiesReader.getShrBaseUrl();
+        final HashMap<String, String> headers = Headers.getHrmAccessTokenHeaders(getOrCreateIdentityToken(), propertiesReader.getFacilityInstanceProperties());
+        final RequestConfig requestConfig = getShrRequestConfig();
+        final boolean jsonContent = propertiesReader.isShrJsonContent();
+        final boolean compressRequests = propertiesReader.isShrRequestCompressionEnabled();
+        List<Object> configuration = getConfiguration(baseUrl, withoutToken(headers), getTimeouts(requestConfig),
+                jsonContent, compressRequests, getIdentityProviderSettings(), identityStore);
+
+        return (SHRClient) getOrCreateClient(SHR_CLIENT, configuration, new ClientFactory() {
+            @Override
+            public Object create() {
+                return new SHRClient(baseUrl, headers, requestConfig, jsonContent, compressRequests, identityProviderService);
+            }
+        });
+    }
+
+    public RequestConfig getShrRequestConfig() {
+        return HttpClientProvider.getRequestConfig(propertiesReader.getShrConnectTimeout(), propertiesReader.getShrSocketTimeout());
+    }
+
+    public RequestConfig getMciRequestConfig() {
+        return HttpClientProvider.getRequestConfig(propertiesReader.getMciConnectTimeout(), propertiesReader.getMciSocketTimeout());
+    }
+
+    public RequestConfig getLrRequestConfig() {
+        return HttpClientProvider.getRequestConfig(propertiesReader.getLrConnectTimeout(), propertiesReader.getLrSocketTimeout());
+    }
+
+    public RequestConfig getFrRequestConfig() {
+        return HttpClientProvider.getRequestConfig(propertiesReader.getFrConnectTimeout(), propertiesReader.getFrSocketTimeout());
+    }
+
+    public RequestConfig getPrRequestConfig() {
+        return HttpClientProvider.getRequestConfig(propertiesReader.getPrConnectTimeout(), propertiesReader.getPrSocketTimeout());
     }
 
     public IdentityToken getOrCreateIdentityToken() throws IdentityUnauthorizedException {
-        return new IdentityProviderService(propertiesReader, identityStore).getOrCreateToken();
+        return identityProviderService.getOrCreateToken();
+    }
+
+    public IdentityToken refreshIdentityToken(IdentityToken rejectedToken) throws IdentityUnauthorizedException {
+        return identityProviderService.refreshToken(rejectedToken);
     }
 
-    public void clearIdentityToken() {
-        identityStore.clearToken();
+    /**
+     * Clears the token only if it is still the one the server rejected, so a token another thread refreshed meanwhile
+     * is kept.
+     */
+    public void clearIdentityToken(IdentityToken rejectedToken) {
+        identityStore.clearToken(rejectedToken);
     }
 
     public RestClient getLRClient() throws IdentityUnauthorizedException {
-        return getRestClient(propertiesReader.getLrBaseUrl());
+        return getRestClient(LR_CLIENT, propertiesReader.getLrBaseUrl(), getLrRequestConfig());
     }
 
     public RestClient getFRClient() throws IdentityUnauthorizedException {
-        return getRestClient(propertiesReader.getFrBaseUrl());
+        return getRestClient(FR_CLIENT, propertiesReader.getFrBaseUrl(), getFrRequestConfig());
     }
 
     public RestClient getPRClient() throws IdentityUnauthorizedException {
-        return getRestClient(propertiesReader.getPrBaseUrl());
+        return getRestClient(PR_CLIENT, propertiesReader.getPrBaseUrl(), getPrRequestConfig());
     }
 
-    private RestClient getRestClient(String baseUrl) throws IdentityUnauthorizedException {
-        HashMap<String, String> headers = Headers.getHrmIdentityHeaders(propertiesReader.getFacilityInstanceProperties());
-        return new RestClient(baseUrl, headers);
+    private RestClient getRestClient(String clientName, final String baseUrl, final RequestConfig requestConfig) throws IdentityUnauthorizedException {
+        final HashMap<String, String> headers = Headers.getHrmIdentityHeaders(propertiesReader.getFacilityInstanceProperties());
+        List<Object> configuration = getConfiguration(baseUrl, headers, getTimeouts(requestConfig));
+
+        return (RestClient) getOrCreateClient(clientName, configuration, new ClientFactory() {
+            @Override
+            public Object create() {
+                return new RestClient(baseUrl, headers, requestConfig);
+            }
+        });
+    }
+
+    /**
+     * Drops every cached client, so the next call builds them again.
+     */
+    static void clearClients() {
+        clients.clear();
+    }
+
+    /**
+     * Returns the cached client if it was built from the same configuration, or builds one and swaps it in.
+     * When two threads build a client at once, both get the one that made it into the cache.
+     */
+    private Object getOrCreateClient(String clientName, List<Object> configuration, ClientFactory clientFactory) {
+        while (true) {
+            CachedClient cachedClient = clients.get(clientName);
+            if (cachedClient != null && cachedClient.configuration.equals(configuration)) {
+                return cachedClient.client;
+            }
+            CachedClient newClient = new CachedClient(configuration, clientFactory.create());
+            boolean swapped = cachedClient == null
+                    ? clients.putIfAbsent(clientName, newClient) == null
+                    : clients.replace(clientName, cachedClient, newClient);
+            if (swapped) {
+                return newClient.client;
+            }
+        }
+    }
+
+    private Map<String, String> withoutToken(Map<String, String> headers) {
+        Map<String, String> headersWithoutToken = new HashMap<>(headers);
+        headersWithoutToken.remove(Headers.AUTH_TOKEN_KEY);
+        return headersWithoutToken;
+    }
+
+    private List<Object> getIdentityProviderSettings() {
+        Properties facilityInstanceProperties = propertiesReader.getFacilityInstanceProperties();
+        return getConfiguration(propertiesReader.getIdPBaseUrl(), propertiesReader.getIdPSignInPath(),
+                facilityInstanceProperties.getProperty(PropertyKeyConstants.FACILITY_EMAIL_KEY),
+                facilityInstanceProperties.getProperty(PropertyKeyConstants.FACILITY_PASSWORD_KEY));
+    }
+
+    private List<Object> getConfiguration(Object... values) {
+        return Arrays.asList(values);
+    }
+
+    private List<Integer> getTimeouts(RequestConfig requestConfig) {
+        return Arrays.asList(requestConfig.getConnectTimeout(), requestConfig.getSocketTimeout(),
+                requestConfig.getConnectionRequestTimeout());
+    }
+
+    private interface ClientFactory {
+        Object create();
+    }
+
+    private static class CachedClient {
+        private final List<Object> configuration;
+        private final Object client;
+
+        CachedClient(List<Object> configuration, Object client) {
+            this.configuration = configuration;
+            this.client = client;
+        }
     }
 }
@@ -2,6 +2,8 @@ package org.openmrs.module.shrclient.handlers;
 
 
 import org.apache.log4j.Logger;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
 import org.openmrs.module.fhir.utils.PropertyKeyConstants;
 import org.openmrs.module.shrclient.feeds.shr.DefaultEncounterFeedWorker;
 import org.openmrs.module.shrclient.feeds.shr.ShrEncounterFeedProcessor;
@@ -12,12 +14,23 @@ import org.openmrs.module.shrclient.service.EMRPatientService;
 import org.openmrs.module.shrclient.util.PlatformUtil;
 import org.openmrs.module.shrclient.util.PropertiesReader;
 import org.openmrs.module.shrclient.util.StringUtil;
+import org.openmrs.module.shrclient.util.WorkerThreadContext;
 
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.openmrs.module.fhir.utils.PropertyKeyConstants.FACILITY_ID;
 import static org.openmrs.module.shrclient.util.Headers.ACCEPT_HEADER_KEY;
@@ -31,11 +44,15 @@ public class EncounterPull {
     private PropertiesReader propertiesReader;
     private IdentityStore identityStore;
     private ClientRegistry clientRegistry;
+    private DefaultEncounterFeedWorker encounterFeedWorker;
+    private long deadline;
 
     public EncounterPull(PropertiesReader propertiesReader, IdentityStore identityStore) {
         this.propertiesReader = propertiesReader;
         this.identityStore = identityStore;
         clientRegistry = new ClientRegistry(propertiesReader, identityStore);
+        int deadlineSeconds = propertiesReader.getShrCatchmentSyncDeadlineSeconds();
+        deadline = deadlineSeconds > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(deadlineSeconds) : 0;
     }
 
     public void download() {
@@ -43,27 +60,24 @@ public class EncounterPull {
         try {
             Map<String, String> requestHeaders = getRequestHeaders(propertiesReader);
             DefaultEncounterFeedWorker defaultEncounterFeedWorker = getEncounterFeedWorker();
-            for (String encounterFeedUrl : encounterFeedUrls) {
-                ShrEncounterFeedProcessor feedProcessor =
-                        new ShrEncounterFeedProcessor(encounterFeedUrl, requestHeaders, defaultEncounterFeedWorker,
-                                clientRegistry, propertiesReader);
-                try {
-                    feedProcessor.process();
-                } catch (URISyntaxException e) {
-                    logger.error("Couldn't download catchment encounters. Error: ", e);
-                }
-            }
+            processCatchmentFeeds(encounterFeedUrls, requestHeaders, defaultEncounterFeedWorker, propertiesReader, false);
         } catch (IdentityUnauthorizedException e) {
             logger.info("Clearing unauthorized identity token.");
-            identityStore.clearToken();
+            identityStore.clearToken(e.getRejectedToken());
         }
     }
 
+    /**
+     * download() and retry() of a run share one worker, and with it the MCI patients already downloaded in the run.
+     */
     private DefaultEncounterFeedWorker getEncounterFeedWorker() {
-        EMRPatientService emrPatientService = PlatformUtil.getRegisteredComponent("hieEmrPatientService", EMRPatientService.class);
-        EMREncounterService emrEncounterService = PlatformUtil.getRegisteredComponent("hieEmrEncounterService", EMREncounterService.class);
-        PropertiesReader propertiesReader = PlatformUtil.getPropertiesReader();
-        return new DefaultEncounterFeedWorker(emrPatientService, emrEncounterService, propertiesReader, clientRegistry);
+        if (encounterFeedWorker == null) {
+            EMRPatientService emrPatientService = PlatformUtil.getRegisteredComponent("hieEmrPatientService", EMRPatientService.class);
+            EMREncounterService emrEncounterService = PlatformUtil.getRegisteredComponent("hieEmrEncounterService", EMREncounterService.class);
+            PropertiesReader propertiesReader = PlatformUtil.getPropertiesReader();
+            encounterFeedWorker = new DefaultEncounterFeedWorker(emrPatientService, emrEncounterService, propertiesReader, clientRegistry);
+        }
+        return encounterFeedWorker;
     }
 
     private HashMap<String, String> getRequestHeaders(PropertiesReader propertiesReader) throws IdentityUnauthorizedException {
@@ -105,19 +119,152 @@ public class EncounterPull {
         try {
             Map<String, String> requestProperties = getRequestHeaders(propertiesReader);
             DefaultEncounterFeedWorker defaultEncounterFeedWorker = getEncounterFeedWorker();
+            processCatchmentFeeds(encounterFeedUrls, requestProperties, defaultEncounterFeedWorker, propertiesReader, true);
+        } catch (IdentityUnauthorizedException e) {
+            logger.info("Clearing unauthorized identity token.");
+            identityStore.clearToken(e.getRejectedToken());
+        }
+    }
+
+    /**
+     * Each catchment is an independent feed with its own row in the markers and failed_events tables (keyed by
+     * feed url), so catchments can be processed concurrently. At most shr.catchmentSyncParallelism catchments
+     * are processed at a time. Catchments overlap, so the feed worker serializes the work on each patient (see
+     * HealthIdLocks). Catchments not yet started when the run's deadline passes are skipped and picked up
+     * from their markers in the next run; catchments already in progress are allowed to finish, so that two runs
+     * never process the same feed at once.
+     */
+    private void processCatchmentFeeds(List<String> encounterFeedUrls, Map<String, String> requestHeaders,
+                                       DefaultEncounterFeedWorker encounterFeedWorker, PropertiesReader propertiesReader,
+                                       boolean failedEventsOnly) {
+        int parallelism = Math.min(propertiesReader.getShrCatchmentSyncParallelism(), encounterFeedUrls.size());
+        if (parallelism <= 1) {
             for (String encounterFeedUrl : encounterFeedUrls) {
-                ShrEncounterFeedProcessor feedProcessor =
-                        new ShrEncounterFeedProcessor(encounterFeedUrl, requestProperties, defaultEncounterFeedWorker,
-                                clientRegistry, propertiesReader);
-                try {
-                    feedProcessor.processFailedEvents();
-                } catch (URISyntaxException e) {
-                    logger.error("Couldn't download catchment encounters. Error: ", e);
+                if (isPastDeadline()) {
+                    logger.warn("Catchment sync deadline reached. Skipping catchment feed " + encounterFeedUrl);
+                    continue;
                 }
+                processCatchmentFeed(encounterFeedUrl, requestHeaders, encounterFeedWorker, propertiesReader, failedEventsOnly);
             }
-        } catch (IdentityUnauthorizedException e) {
-            logger.info("Clearing unauthorized identity token.");
-            identityStore.clearToken();
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism, new CatchmentThreadFactory());
+        UserContext userContext = Context.getUserContext();
+        List<Future<?>> futures = new ArrayList<>();
+        for (String encounterFeedUrl : encounterFeedUrls) {
+            futures.add(executorService.submit(new CatchmentFeedTask(encounterFeedUrl, requestHeaders, encounterFeedWorker,
+                    propertiesReader, failedEventsOnly, userContext)));
+        }
+        executorService.shutdown();
+        try {
+            waitForCatchmentFeeds(futures);
+        } finally {
+            awaitTermination(executorService);
+        }
+    }
+
+    private void waitForCatchmentFeeds(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                if (deadline > 0) {
+                    future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                } else {
+                    future.get();
+                }
+            } catch (TimeoutException e) {
+                logger.warn("Catchment sync deadline reached. Catchments not yet started will be synced in the next run.");
+                for (Future<?> pending : futures) {
+                    pending.cancel(false);
+                }
+                return;
+            } catch (CancellationException e) {
+                // skipped after deadline
+            } catch (ExecutionException e) {
+                logger.error("Couldn't download catchment encounters. Error: ", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> pending : futures) {
+                    pending.cancel(false);
+                }
+                return;
+            }
+        }
+    }
+
+    private void awaitTermination(ExecutorService executorService) {
+        try {
+            while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for in-progress catchment feeds to complete.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processCatchmentFeed(String encounterFeedUrl, Map<String, String> requestHeaders,
+                                      DefaultEncounterFeedWorker encounterFeedWorker, PropertiesReader propertiesReader,
+                                      boolean failedEventsOnly) {
+        ShrEncounterFeedProcessor feedProcessor =
+                new ShrEncounterFeedProcessor(encounterFeedUrl, requestHeaders, encounterFeedWorker,
+                        clientRegistry, propertiesReader);
+        try {
+            if (failedEventsOnly) {
+                feedProcessor.processFailedEvents();
+            } else {
+                feedProcessor.process();
+            }
+        } catch (URISyntaxException e) {
+            logger.error("Couldn't download catchment encounters. Error: ", e);
+        }
+    }
+
+    private boolean isPastDeadline() {
+        return deadline > 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    private class CatchmentFeedTask implements Runnable {
+        private final String encounterFeedUrl;
+        private final Map<String, String> requestHeaders;
+        private final DefaultEncounterFeedWorker encounterFeedWorker;
+        private final PropertiesReader propertiesReader;
+        private final boolean failedEventsOnly;
+        private final UserContext userContext;
+
+        CatchmentFeedTask(String encounterFeedUrl, Map<String, String> requestHeaders,
+                          DefaultEncounterFeedWorker encounterFeedWorker, PropertiesReader propertiesReader,
+                          boolean failedEventsOnly, UserContext userContext) {
+            this.encounterFeedUrl = encounterFeedUrl;
+            this.requestHeaders = requestHeaders;
+            this.encounterFeedWorker = encounterFeedWorker;
+            this.propertiesReader = propertiesReader;
+            this.failedEventsOnly = failedEventsOnly;
+            this.userContext = userContext;
+        }
+
+        @Override
+        public void run() {
+            if (isPastDeadline()) {
+                logger.warn("Catchment sync deadline reached. Skipping catchment feed " + encounterFeedUrl);
+                return;
+            }
+            WorkerThreadContext.open(userContext);
+            try {
+                processCatchmentFeed(encounterFeedUrl, requestHeaders, encounterFeedWorker, propertiesReader, failedEventsOnly);
+            } finally {
+                WorkerThreadContext.close();
+            }
+        }
+    }
+
+    private static class CatchmentThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "shr-catchment-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
@@ -6,7 +6,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.log4j.Logger;
 import org.ict4h.atomfeed.client.domain.Event;
 import org.ict4h.atomfeed.client.exceptions.AtomFeedClientException;
-import org.ict4h.atomfeed.client.service.EventWorker;
 import org.openmrs.Encounter;
 import org.openmrs.*;
 import org.openmrs.Order;
@@ -17,6 +16,7 @@ import org.openmrs.module.fhir.mapper.bundler.CompositionBundleCreator;
 import org.openmrs.module.fhir.mapper.model.CompoundObservation;
 import org.openmrs.module.fhir.mapper.model.EntityReference;
 import org.openmrs.module.fhir.mapper.model.ObservationType;
+import org.openmrs.module.shrclient.feeds.openmrs.PartitionedEventWorker;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.openmrs.module.shrclient.model.*;
@@ -24,20 +24,24 @@ import org.openmrs.module.shrclient.util.*;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class EncounterPush implements EventWorker {
+public class EncounterPush implements PartitionedEventWorker {
 
     private static final Logger log = Logger.getLogger(EncounterPush.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     private IdMappingRepository idMappingsRepository;
     private CompositionBundleCreator compositionBundleCreator;
     private EncounterService encounterService;
     private PropertiesReader propertiesReader;
     private ClientRegistry clientRegistry;
     private SHRClient shrClient;
-    private List<String> encounterUuidsProcessed;
+    private Set<String> encounterUuidsProcessed;
     private SystemUserService systemUserService;
+    private PatientSyncTracker patientSyncTracker;
 
     public EncounterPush(EncounterService encounterService, PropertiesReader propertiesReader,
                          CompositionBundleCreator compositionBundleCreator, IdMappingRepository idMappingsRepository,
@@ -50,7 +54,11 @@ public class EncounterPush implements EventWorker {
         this.shrClient = clientRegistry.getSHRClient();
         this.compositionBundleCreator = compositionBundleCreator;
         this.idMappingsRepository = idMappingsRepository;
-        this.encounterUuidsProcessed = new ArrayList<>();
+        this.encounterUuidsProcessed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    public void setPatientSyncTracker(PatientSyncTracker patientSyncTracker) {
+        this.patientSyncTracker = patientSyncTracker;
     }
 
     @Override
@@ -84,44 +92,49 @@ public class EncounterPush implements EventWorker {
                 shrEncounterId = pushEncounterCreate(openMrsEncounter, healthId, systemProperties);
             }
             encounterUuidsProcessed.add(openMrsEncounter.getUuid());
-            saveEncounterIdMapping(openMrsEncounter.getUuid(), healthId, shrEncounterId, systemProperties);
-            saveIdMappingForDiagnosis(openMrsEncounter, healthId, shrEncounterId, systemProperties);
-            saveIdMappingsForOrders(openMrsEncounter.getOrders(), healthId, shrEncounterId, systemProperties);
+            List<IdMapping> idMappings = new ArrayList<>();
+            idMappings.add(getEncounterIdMapping(openMrsEncounter.getUuid(), healthId, shrEncounterId, systemProperties));
+            idMappings.addAll(getIdMappingsForDiagnosis(openMrsEncounter, healthId, shrEncounterId, systemProperties));
+            idMappings.addAll(getIdMappingsForOrders(openMrsEncounter.getOrders(), healthId, shrEncounterId, systemProperties));
+            idMappingsRepository.saveOrUpdateAll(idMappings);
         } catch (Exception e) {
             log.error("Error while processing encounter sync event.", e);
             throw new RuntimeException(e);
         }
     }
 
-    private void saveIdMappingsForOrders(Set<Order> orders, String healthId, String shrEncounterId, SystemProperties systemProperties) {
+    private List<IdMapping> getIdMappingsForOrders(Set<Order> orders, String healthId, String shrEncounterId, SystemProperties systemProperties) {
+        List<IdMapping> orderIdMappings = new ArrayList<>();
         HashMap<String, String> orderUrlReferenceIds = new HashMap<>();
         orderUrlReferenceIds.put(EntityReference.HEALTH_ID_REFERENCE, healthId);
         orderUrlReferenceIds.put(EntityReference.ENCOUNTER_ID_REFERENCE, shrEncounterId);
         for (Order order : orders) {
             if (order.getOrderType().getUuid().equals(OrderType.DRUG_ORDER_TYPE_UUID)) {
                 orderUrlReferenceIds.put(EntityReference.REFERENCE_RESOURCE_NAME, new MedicationOrder().getResourceName());
-                saveOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.MEDICATION_ORDER, orderUrlReferenceIds, systemProperties);
+                orderIdMappings.add(getOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.MEDICATION_ORDER, orderUrlReferenceIds, systemProperties));
             } else if (order.getOrderType().getName().equals(MRSProperties.MRS_PROCEDURE_ORDER_TYPE)) {
                 orderUrlReferenceIds.put(EntityReference.REFERENCE_RESOURCE_NAME, new ProcedureRequest().getResourceName());
-                saveOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.PROCEDURE_ORDER, orderUrlReferenceIds, systemProperties);
+                orderIdMappings.add(getOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.PROCEDURE_ORDER, orderUrlReferenceIds, systemProperties));
             } else if (order.getOrderType().getName().equals(MRSProperties.MRS_LAB_ORDER_TYPE)) {
                 orderUrlReferenceIds.put(EntityReference.REFERENCE_RESOURCE_NAME, new DiagnosticOrder().getResourceName());
-                saveOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.DIAGNOSTIC_ORDER, orderUrlReferenceIds, systemProperties);
+                orderIdMappings.add(getOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.DIAGNOSTIC_ORDER, orderUrlReferenceIds, systemProperties));
             } else if (order.getOrderType().getName().equals(MRSProperties.MRS_RADIOLOGY_ORDER_TYPE)) {
                 orderUrlReferenceIds.put(EntityReference.REFERENCE_RESOURCE_NAME, new DiagnosticOrder().getResourceName());
-                saveOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.DIAGNOSTIC_ORDER, orderUrlReferenceIds, systemProperties);
+                orderIdMappings.add(getOrderIdMapping(shrEncounterId, order.getUuid(), IdMappingType.DIAGNOSTIC_ORDER, orderUrlReferenceIds, systemProperties));
             }
         }
+        return orderIdMappings;
     }
 
-    private void saveOrderIdMapping(String shrEncounterId, String orderUuid, String idMappingType, HashMap<String, String> orderUrlReferenceIds, SystemProperties systemProperties) {
+    private IdMapping getOrderIdMapping(String shrEncounterId, String orderUuid, String idMappingType, HashMap<String, String> orderUrlReferenceIds, SystemProperties systemProperties) {
         orderUrlReferenceIds.put(EntityReference.REFERENCE_ID, orderUuid);
         String orderUrl = new EntityReference().build(BaseResource.class, systemProperties, orderUrlReferenceIds);
         String externalId = String.format(MRSProperties.RESOURCE_MAPPING_EXTERNAL_ID_FORMAT, shrEncounterId, orderUuid);
-        idMappingsRepository.saveOrUpdateIdMapping(new OrderIdMapping(orderUuid, externalId, idMappingType, orderUrl, new Date()));
+        return new OrderIdMapping(orderUuid, externalId, idMappingType, orderUrl, new Date());
     }
 
-    private void saveIdMappingForDiagnosis(Encounter openMrsEncounter, String healthId, String shrEncounterId, SystemProperties systemProperties) {
+    private List<IdMapping> getIdMappingsForDiagnosis(Encounter openMrsEncounter, String healthId, String shrEncounterId, SystemProperties systemProperties) {
+        List<IdMapping> diagnosisIdMappings = new ArrayList<>();
         HashMap<String, String> conditionUrlReferenceIds = new HashMap<>();
         conditionUrlReferenceIds.put(EntityReference.HEALTH_ID_REFERENCE, healthId);
         conditionUrlReferenceIds.put(EntityReference.ENCOUNTER_ID_REFERENCE, shrEncounterId);
@@ -134,13 +147,14 @@ public class EncounterPush implements EventWorker {
             conditionUrlReferenceIds.put(EntityReference.REFERENCE_ID, obs.getUuid());
             String diagnosisUrl = entityReference.build(BaseResource.class, systemProperties, conditionUrlReferenceIds);
             String externalId = String.format(MRSProperties.RESOURCE_MAPPING_EXTERNAL_ID_FORMAT, shrEncounterId, obs.getUuid());
-            idMappingsRepository.saveOrUpdateIdMapping(new DiagnosisIdMapping(obs.getUuid(), externalId, diagnosisUrl));
+            diagnosisIdMappings.add(new DiagnosisIdMapping(obs.getUuid(), externalId, diagnosisUrl));
         }
+        return diagnosisIdMappings;
     }
 
-    private void saveEncounterIdMapping(String openMrsEncounterUuid, String healthId, String shrEncounterId, SystemProperties systemProperties) {
+    private IdMapping getEncounterIdMapping(String openMrsEncounterUuid, String healthId, String shrEncounterId, SystemProperties systemProperties) {
         String shrEncounterUrl = getShrEncounterUrl(healthId, shrEncounterId, systemProperties);
-        idMappingsRepository.saveOrUpdateIdMapping(new EncounterIdMapping(openMrsEncounterUuid, shrEncounterId, shrEncounterUrl, new Date()));
+        return new EncounterIdMapping(openMrsEncounterUuid, shrEncounterId, shrEncounterUrl, new Date());
     }
 
     private String getShrEncounterUrl(String healthId, String shrEncounterId, SystemProperties systemProperties) {
@@ -157,7 +171,8 @@ public class EncounterPush implements EventWorker {
         }
         /*
         * To avoid processing of events for the same encounter in a job run, we store the encounter uuids processed in this job run.
-        * It is cleared once the job has finished processing.
+        * It is cleared once the job has finished processing. Encounters of a patient are processed on the same thread,
+        * so checking and adding to this set need not be atomic.
         */
         if (encounterUuidsProcessed.contains(openMrsEncounter.getUuid())) {
             log.debug(String.format("Enounter[%s] has been processed in the same job run before.", openMrsEncounter.getUuid()));
@@ -174,7 +189,7 @@ public class EncounterPush implements EventWorker {
             return getEncounterIdFromResponse(shrEncounterCreateResponse);
         } catch (IdentityUnauthorizedException e) {
             log.error("Clearing unauthorized identity token.");
-            clientRegistry.clearIdentityToken();
+            clientRegistry.clearIdentityToken(e.getRejectedToken());
             throw e;
         }
     }
@@ -188,26 +203,24 @@ public class EncounterPush implements EventWorker {
                     compositionBundleCreator.create(openMrsEncounter, healthId, systemProperties));
         } catch (IdentityUnauthorizedException e) {
             log.error("Clearing unauthorized identity token.");
-            clientRegistry.clearIdentityToken();
+            clientRegistry.clearIdentityToken(e.getRejectedToken());
             throw e;
         }
     }
 
     private String getEncounterIdFromResponse(String shrEncounterResponse) throws java.io.IOException {
-        EncounterResponse encounterResponse = configureObjectMapper().readValue(shrEncounterResponse,
+        EncounterResponse encounterResponse = objectMapper.readValue(shrEncounterResponse,
                 EncounterResponse.class);
         //TODO : set the right url
         return encounterResponse.getEncounterId();
     }
 
-    private ObjectMapper configureObjectMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        return objectMapper;
-    }
-
     private String getPatientHealthId(Patient emrPatient) {
         PatientIdMapping patientIdMapping = (PatientIdMapping) idMappingsRepository.findByInternalId(emrPatient.getUuid(), IdMappingType.PATIENT);
+        if (patientIdMapping == null && patientSyncTracker != null) {
+            awaitPatientSync(emrPatient);
+            patientIdMapping = (PatientIdMapping) idMappingsRepository.findByInternalId(emrPatient.getUuid(), IdMappingType.PATIENT);
+        }
         if (patientIdMapping == null) {
             throw new AtomFeedClientException(String.format("Patient [%s] is not yet synced to MCI.",
                     emrPatient.getUuid()));
@@ -216,10 +229,33 @@ public class EncounterPush implements EventWorker {
         return patientIdMapping.getExternalId();
     }
 
+    private void awaitPatientSync(Patient emrPatient) {
+        log.debug(String.format("Waiting for patient [%s] to be synced to MCI.", emrPatient.getUuid()));
+        try {
+            if (!patientSyncTracker.awaitRelease(emrPatient.getUuid())) {
+                log.warn(String.format("Timed out waiting for patient [%s] to be synced to MCI.", emrPatient.getUuid()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AtomFeedClientException(String.format("Interrupted while waiting for patient [%s] to be synced to MCI.",
+                    emrPatient.getUuid()), e);
+        }
+    }
+
     private IdMapping getEncounterMapping(Encounter openMrsEncounter) {
         return idMappingsRepository.findByInternalId(openMrsEncounter.getUuid(), IdMappingType.ENCOUNTER);
     }
 
+    /**
+     * Encounters of a patient are pushed in feed order, since they are all posted against the patient's health id.
+     */
+    @Override
+    public String getPartitionKey(Event event) {
+        String uuid = getUuid(event.getContent());
+        org.openmrs.Encounter openMrsEncounter = uuid != null ? encounterService.getEncounterByUuid(uuid) : null;
+        return openMrsEncounter != null ? openMrsEncounter.getPatient().getUuid() : uuid;
+    }
+
     String getUuid(String content) {
         String encounterUuid = null;
         Pattern p = Pattern.compile("^\\/openmrs\\/ws\\/rest\\/v1\\/encounter\\/(.*)\\?v=.*");
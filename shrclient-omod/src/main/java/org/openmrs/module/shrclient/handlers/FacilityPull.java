@@ -21,6 +21,12 @@ import org.openmrs.module.shrclient.util.StringUtil;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import static org.openmrs.module.shrclient.util.URLParser.parseURL;
 
@@ -49,6 +55,11 @@ public class FacilityPull {
     private final LocationTag shrLocationTag;
     private final List<String> failedDuringSaveOrUpdateOperation;
     private int noOfEntriesSynchronizedSoFar = 0;
+    private final int pageSize;
+    private final int maxNumberOfEntriesToBeSynchronized;
+    private final boolean pipelined;
+    private final boolean cursorSync;
+    private ExecutorService pagePrefetcher;
 
 
     public FacilityPull(PropertiesReader propertiesReader, RestClient frWebClient, LocationService locationService,
@@ -63,12 +74,36 @@ public class FacilityPull {
         this.facilityCatchmentRepository = facilityCatchmentRepository;
         this.shrLocationTag =  locationService.getLocationTag(omrsLocationService.getHIEFacilityLocationTag());
         this.failedDuringSaveOrUpdateOperation = new ArrayList<>();
+        int configuredPageSize = propertiesReader.getFrPageSize();
+        int configuredMaxEntries = propertiesReader.getFrMaxEntriesPerRun();
+        this.pageSize = configuredPageSize > 0 ? configuredPageSize : DEFAULT_LIMIT;
+        this.maxNumberOfEntriesToBeSynchronized = configuredMaxEntries > 0 ? configuredMaxEntries : MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED;
+        this.pipelined = propertiesReader.isFrPipelined();
+        this.cursorSync = propertiesReader.isFrCursorSync();
     }
 
+    /**
+     * In pipelined mode (fr.pipelined) the next page is downloaded while the current page is saved,
+     * and the catchments of a whole page are written in one batch.
+     * With cursor paging (fr.cursorSync) the updatedAt of the facilities read drives where the next page and
+     * the next run start, see SyncCursor.
+     */
     public void synchronize() throws IOException {
         noOfEntriesSynchronizedSoFar = 0;
-        List<FRLocationEntry> frLocationEntries = synchronizeUpdates();
-        logger.info(frLocationEntries.size() + " entries updated");
+        if (pipelined) {
+            pagePrefetcher = Executors.newSingleThreadExecutor(new PagePrefetchThreadFactory());
+        }
+        scheduledTaskHistory.loadMarkers();
+        try {
+            List<FRLocationEntry> frLocationEntries = synchronizeUpdates();
+            logger.info(frLocationEntries.size() + " entries updated");
+        } finally {
+            scheduledTaskHistory.saveMarkers();
+            if (pagePrefetcher != null) {
+                pagePrefetcher.shutdownNow();
+                pagePrefetcher = null;
+            }
+        }
     }
 
     private List<FRLocationEntry> synchronizeUpdates() throws IOException {
@@ -76,7 +111,7 @@ public class FacilityPull {
         List<FRLocationEntry> synchronizedLocationEntries = new ArrayList<>();
         List<FRLocationEntry> lastRetrievedPartOfList;
 
-        if (noOfEntriesSynchronizedSoFar >= MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED) {
+        if (noOfEntriesSynchronizedSoFar >= maxNumberOfEntriesToBeSynchronized) {
             return synchronizedLocationEntries;
         }
 
@@ -98,28 +133,39 @@ public class FacilityPull {
         }
 
         String facilityResourceRefPath = StringUtil.ensureSuffix(propertiesReader.getFrBaseUrl(), "/");
+        SyncCursor cursor = new SyncCursor(updatedSince, offset);
         String completeContextPath;
-        do {
-            completeContextPath = buildCompleteContextPath(baseContextPath, offset, updatedSince);
-            lastRetrievedPartOfList = getNextChunkOfUpdatesFromFR(completeContextPath);
-            if (lastRetrievedPartOfList != null) {
-                saveOrUpdateFacilityEntries(lastRetrievedPartOfList);
-                synchronizedLocationEntries.addAll(lastRetrievedPartOfList);
-                offset += lastRetrievedPartOfList.size();
-                noOfEntriesSynchronizedSoFar += lastRetrievedPartOfList.size();
-            } else {
-                logger.info(synchronizedLocationEntries.size() + " entries synchronized");
-                throw new RuntimeException("Failed to Synchronize updates from FR");
+        Future<List<FRLocationEntry>> nextPartOfList = null;
+        try {
+            do {
+                completeContextPath = buildCompleteContextPath(baseContextPath, cursor);
+                lastRetrievedPartOfList = nextPartOfList != null ? getPrefetchedChunk(nextPartOfList) : getNextChunkOfUpdatesFromFR(completeContextPath);
+                nextPartOfList = null;
+                if (lastRetrievedPartOfList != null) {
+                    int retrievedCount = lastRetrievedPartOfList.size();
+                    advance(cursor, lastRetrievedPartOfList);
+                    if (pagePrefetcher != null && retrievedCount == pageSize && noOfEntriesSynchronizedSoFar + retrievedCount < maxNumberOfEntriesToBeSynchronized) {
+                        nextPartOfList = prefetchNextChunkOfUpdatesFromFR(buildCompleteContextPath(baseContextPath, cursor));
+                    }
+                    saveOrUpdateFacilityEntries(lastRetrievedPartOfList);
+                    synchronizedLocationEntries.addAll(lastRetrievedPartOfList);
+                    noOfEntriesSynchronizedSoFar += retrievedCount;
+                } else {
+                    logger.info(synchronizedLocationEntries.size() + " entries synchronized");
+                    throw new RuntimeException("Failed to Synchronize updates from FR");
+                }
+            }
+            while (lastRetrievedPartOfList.size() == pageSize && noOfEntriesSynchronizedSoFar < maxNumberOfEntriesToBeSynchronized);
+        } finally {
+            if (nextPartOfList != null) {
+                nextPartOfList.cancel(true);
             }
         }
-        while (lastRetrievedPartOfList != null && lastRetrievedPartOfList.size() == DEFAULT_LIMIT && noOfEntriesSynchronizedSoFar < MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED);
 
         String nextCompleteContextPath;
         if (lastRetrievedPartOfList != null) {
-            if (lastRetrievedPartOfList.size() == DEFAULT_LIMIT) {
-                //ideally should take the last ProviderEntry.updatedAt (currently updatedAt is not mapped) from the newEntriesFromPr
-                //and also should reset the offset accordingly
-                nextCompleteContextPath = buildCompleteContextPath(baseContextPath, offset, updatedSince);
+            if (cursorSync || lastRetrievedPartOfList.size() == pageSize) {
+                nextCompleteContextPath = buildCompleteContextPath(baseContextPath, cursor);
                 scheduledTaskHistory.setFeedUriForLastReadEntryByFeedUri(facilityResourceRefPath + StringUtil.removePrefix(nextCompleteContextPath, "/"), FR_FACILITY_LEVEL_FEED_URI);
             } else {
                 nextCompleteContextPath = buildCompleteContextPath(baseContextPath, INITIAL_OFFSET, getCurrentDateAndTime());
@@ -150,7 +196,27 @@ public class FacilityPull {
         return downloadedData;
     }
 
-    private Location createNewLocation(FRLocationEntry frLocationEntry) {
+    private Future<List<FRLocationEntry>> prefetchNextChunkOfUpdatesFromFR(final String completeContextPath) {
+        return pagePrefetcher.submit(new Callable<List<FRLocationEntry>>() {
+            @Override
+            public List<FRLocationEntry> call() {
+                return getNextChunkOfUpdatesFromFR(completeContextPath);
+            }
+        });
+    }
+
+    private List<FRLocationEntry> getPrefetchedChunk(Future<List<FRLocationEntry>> nextPartOfList) {
+        try {
+            return nextPartOfList.get();
+        } catch (ExecutionException e) {
+            logger.error("Error while downloading chunk of Updates from FR : " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private Location createNewLocation(FRLocationEntry frLocationEntry, Map<Integer, List<String>> catchmentsByLocationId) {
         logger.info("Creating new location: " + frLocationEntry.getName());
         Location location = null;
         try {
@@ -158,7 +224,7 @@ public class FacilityPull {
             location.addTag(shrLocationTag);
             location = locationService.saveLocation(location);
 
-            facilityCatchmentRepository.saveMappings(location.getLocationId(), frLocationEntry.getProperties().getCatchments());
+            saveCatchments(location, frLocationEntry, catchmentsByLocationId);
 
             String locationUrl = StringUtil.ensureSuffix(propertiesReader.getFrBaseUrl(), "/") + frLocationEntry.getId() + ".json";
             idMappingsRepository.saveOrUpdateIdMapping(new IdMapping(location.getUuid(), frLocationEntry.getId(),
@@ -172,13 +238,13 @@ public class FacilityPull {
         return location;
     }
 
-    private Location updateExistingLocation(FRLocationEntry frLocationEntry, IdMapping idMapping) {
+    private Location updateExistingLocation(FRLocationEntry frLocationEntry, IdMapping idMapping, Map<Integer, List<String>> catchmentsByLocationId) {
         logger.info("Updating existing location: " + frLocationEntry.getName());
         Location location = null;
         try {
             location = locationMapper.updateExisting(
                     locationService.getLocationByUuid(idMapping.getInternalId()), frLocationEntry);
-            facilityCatchmentRepository.saveMappings(location.getLocationId(), frLocationEntry.getProperties().getCatchments());
+            saveCatchments(location, frLocationEntry, catchmentsByLocationId);
 
         } catch (Exception e) {
             logger.error("Error while updating an old Location : " + e);
@@ -188,27 +254,93 @@ public class FacilityPull {
         return locationService.saveLocation(location);
     }
 
+    /**
+     * The facility mappings of the whole page are looked up in one query. In pipelined mode the catchments are
+     * collected while the locations are saved and written in one batch at the end of the page.
+     */
     private void saveOrUpdateFacilityEntries(List<FRLocationEntry> frLocationEntries) {
+        List<String> frLocationEntryIds = new ArrayList<>();
         for (FRLocationEntry frLocationEntry : frLocationEntries) {
-            IdMapping facilityIdMapping = idMappingsRepository.findByExternalId(frLocationEntry.getId(), IdMappingType.FACILITY);
+            frLocationEntryIds.add(frLocationEntry.getId());
+        }
+        Map<String, IdMapping> facilityIdMappings = idMappingsRepository.findByExternalIds(frLocationEntryIds, IdMappingType.FACILITY);
+
+        Map<Integer, List<String>> catchmentsByLocationId = pipelined ? new LinkedHashMap<Integer, List<String>>() : null;
+        for (FRLocationEntry frLocationEntry : frLocationEntries) {
+            IdMapping facilityIdMapping = facilityIdMappings.get(frLocationEntry.getId());
             if (facilityIdMapping != null)
-                updateExistingLocation(frLocationEntry, facilityIdMapping);
+                updateExistingLocation(frLocationEntry, facilityIdMapping, catchmentsByLocationId);
             else {
-                createNewLocation(frLocationEntry);
+                createNewLocation(frLocationEntry, catchmentsByLocationId);
+            }
+        }
+        if (catchmentsByLocationId != null) {
+            saveCatchmentsOfPage(catchmentsByLocationId);
+        }
+    }
+
+    private void saveCatchments(Location location, FRLocationEntry frLocationEntry, Map<Integer, List<String>> catchmentsByLocationId) {
+        List<String> catchments = frLocationEntry.getProperties().getCatchments();
+        if (catchmentsByLocationId != null) {
+            catchmentsByLocationId.put(location.getLocationId(), catchments);
+        } else {
+            facilityCatchmentRepository.saveMappings(location.getLocationId(), catchments);
+        }
+    }
+
+    /**
+     * If the batch fails, the catchments are saved location by location so that one bad facility
+     * does not hold back the rest of the page.
+     */
+    private void saveCatchmentsOfPage(Map<Integer, List<String>> catchmentsByLocationId) {
+        try {
+            facilityCatchmentRepository.saveMappings(catchmentsByLocationId);
+        } catch (Exception e) {
+            logger.warn("Error while saving catchments of a page, saving them location by location : " + e);
+            for (Map.Entry<Integer, List<String>> locationCatchments : catchmentsByLocationId.entrySet()) {
+                try {
+                    facilityCatchmentRepository.saveMappings(locationCatchments.getKey(), locationCatchments.getValue());
+                } catch (Exception ex) {
+                    logger.error("Error while saving catchments of location " + locationCatchments.getKey() + " : " + ex);
+                    failedDuringSaveOrUpdateOperation.add("location " + locationCatchments.getKey());
+                }
             }
         }
     }
 
+    private void advance(SyncCursor cursor, List<FRLocationEntry> frLocationEntries) {
+        if (!cursorSync) {
+            cursor.skip(frLocationEntries.size());
+            return;
+        }
+        for (FRLocationEntry frLocationEntry : frLocationEntries) {
+            cursor.advance(frLocationEntry.getUpdatedAt());
+        }
+    }
+
+    private String buildCompleteContextPath(String baseContextPath, SyncCursor cursor) {
+        return buildCompleteContextPath(baseContextPath, cursor.getOffset(), cursor.getUpdatedSince());
+    }
+
     private String buildCompleteContextPath(String baseContextPath, int offset, String updatedSince) {
         return baseContextPath + getExtraFilters(offset, updatedSince);
     }
 
     private String getExtraFilters(int offset, String updatedSince) {
-        return String.format(EXTRA_FILTER_PATTERN, offset, DEFAULT_LIMIT, updatedSince)
+        return String.format(EXTRA_FILTER_PATTERN, offset, pageSize, updatedSince)
                 .replace(SINGLE_SPACE, ENCODED_SINGLE_SPACE);
     }
 
     private String getCurrentDateAndTime() {
         return DateUtil.toDateString(new Date(), DateUtil.SIMPLE_DATE_WITH_SECS_FORMAT);
     }
+
+    private static class PagePrefetchThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fr-page-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.openmrs.module.shrclient.handlers;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.addresshierarchy.AddressHierarchyEntry;
 import org.openmrs.module.addresshierarchy.service.AddressHierarchyService;
 import org.openmrs.module.fhir.utils.DateUtil;
@@ -11,10 +12,17 @@ import org.openmrs.module.shrclient.util.PropertiesReader;
 import org.openmrs.module.shrclient.util.RestClient;
 import org.openmrs.module.shrclient.util.ScheduledTaskHistory;
 import org.openmrs.module.shrclient.util.StringUtil;
+import org.openmrs.module.shrclient.util.TransactionHelper;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import static org.openmrs.module.shrclient.util.URLParser.parseURL;
 
@@ -52,6 +60,11 @@ public class LocationPull {
     private PropertiesReader propertiesReader;
     private List<String> failedDuringSaveOrUpdateOperation;
     private int noOfEntriesSynchronizedSoFar;
+    private final int pageSize;
+    private final int maxNumberOfEntriesToBeSynchronized;
+    private final boolean pipelined;
+    private final boolean cursorSync;
+    private ExecutorService pagePrefetcher;
 
     public LocationPull(PropertiesReader propertiesReader, RestClient lrWebClient, AddressHierarchyService addressHierarchyService,
                         ScheduledTaskHistory scheduledTaskHistory, AddressHierarchyEntryMapper addressHierarchyEntryMapper) {
@@ -61,9 +74,38 @@ public class LocationPull {
         this.addressHierarchyEntryMapper = addressHierarchyEntryMapper;
         this.addressHierarchyService = addressHierarchyService;
         this.failedDuringSaveOrUpdateOperation = new ArrayList<>();
+        int configuredPageSize = propertiesReader.getLrPageSize();
+        int configuredMaxEntries = propertiesReader.getLrMaxEntriesPerRun();
+        this.pageSize = configuredPageSize > 0 ? configuredPageSize : DEFAULT_LIMIT;
+        this.maxNumberOfEntriesToBeSynchronized = configuredMaxEntries > 0 ? configuredMaxEntries : MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED;
+        this.pipelined = propertiesReader.isLrPipelined();
+        this.cursorSync = propertiesReader.isLrCursorSync();
     }
 
+    /**
+     * Levels are synchronized one after another, so parents are always saved before their children.
+     * In pipelined mode (lr.pipelined) the next page of a level is downloaded while the current page is saved,
+     * and each page is saved in a single transaction.
+     * With cursor paging (lr.cursorSync) the updatedAt of the entries read drives where the next page and
+     * the next run of a level start, see SyncCursor.
+     */
     public void synchronize() throws IOException {
+        if (pipelined) {
+            pagePrefetcher = Executors.newSingleThreadExecutor(new PagePrefetchThreadFactory());
+        }
+        scheduledTaskHistory.loadMarkers();
+        try {
+            synchronizeLevels();
+        } finally {
+            scheduledTaskHistory.saveMarkers();
+            if (pagePrefetcher != null) {
+                pagePrefetcher.shutdownNow();
+                pagePrefetcher = null;
+            }
+        }
+    }
+
+    private void synchronizeLevels() throws IOException {
         noOfEntriesSynchronizedSoFar = 0;
 
         List<LRAddressHierarchyEntry> synchronizedAddressHierarchyEntriesForDivisions = synchronizeUpdatesByLevel(LR_DIVISIONS_PATH_INFO, LR_DIVISIONS_LEVEL_FEED_URI);
@@ -90,7 +132,7 @@ public class LocationPull {
         List<LRAddressHierarchyEntry> synchronizedAddressHierarchyEntries = new ArrayList<>();
         List<LRAddressHierarchyEntry> lastRetrievedPartOfList;
 
-        if (noOfEntriesSynchronizedSoFar >= MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED) {
+        if (noOfEntriesSynchronizedSoFar >= maxNumberOfEntriesToBeSynchronized) {
             return synchronizedAddressHierarchyEntries;
         }
 
@@ -112,29 +154,44 @@ public class LocationPull {
         }
 
         String locationResourceRefPath = StringUtil.ensureSuffix(propertiesReader.getLrBaseUrl(), "/");
+        SyncCursor cursor = new SyncCursor(updatedSince, offset);
 
         String completeContextPath;
-        do {
-            completeContextPath = buildCompleteContextPath(baseContextPath, offset, updatedSince);
-            lastRetrievedPartOfList = getNextChunkOfUpdatesFromLR(completeContextPath);
-            if (lastRetrievedPartOfList != null) {
-                saveOrUpdateAddressHierarchyEntries(lastRetrievedPartOfList);
-                synchronizedAddressHierarchyEntries.addAll(lastRetrievedPartOfList);
-                offset += lastRetrievedPartOfList.size();
-                noOfEntriesSynchronizedSoFar += lastRetrievedPartOfList.size();
-            } else {
-                logger.info(synchronizedAddressHierarchyEntries.size() + " entries synchronized");
-                throw new RuntimeException("Failed to Synchronize updates from LR");
+        Future<List<LRAddressHierarchyEntry>> nextPartOfList = null;
+        try {
+            do {
+                completeContextPath = buildCompleteContextPath(baseContextPath, cursor);
+                lastRetrievedPartOfList = nextPartOfList != null ? getPrefetchedChunk(nextPartOfList) : getNextChunkOfUpdatesFromLR(completeContextPath);
+                nextPartOfList = null;
+                if (lastRetrievedPartOfList != null) {
+                    int retrievedCount = lastRetrievedPartOfList.size();
+                    advance(cursor, lastRetrievedPartOfList);
+                    if (pagePrefetcher != null && retrievedCount == pageSize && noOfEntriesSynchronizedSoFar + retrievedCount < maxNumberOfEntriesToBeSynchronized) {
+                        nextPartOfList = prefetchNextChunkOfUpdatesFromLR(buildCompleteContextPath(baseContextPath, cursor));
+                    }
+                    if (pipelined) {
+                        saveOrUpdateAddressHierarchyEntriesInOneTransaction(lastRetrievedPartOfList);
+                    } else {
+                        saveOrUpdateAddressHierarchyEntries(lastRetrievedPartOfList);
+                    }
+                    synchronizedAddressHierarchyEntries.addAll(lastRetrievedPartOfList);
+                    noOfEntriesSynchronizedSoFar += retrievedCount;
+                } else {
+                    logger.info(synchronizedAddressHierarchyEntries.size() + " entries synchronized");
+                    throw new RuntimeException("Failed to Synchronize updates from LR");
+                }
+            }
+            while (lastRetrievedPartOfList.size() == pageSize && noOfEntriesSynchronizedSoFar < maxNumberOfEntriesToBeSynchronized);
+        } finally {
+            if (nextPartOfList != null) {
+                nextPartOfList.cancel(true);
             }
         }
-        while (lastRetrievedPartOfList != null && lastRetrievedPartOfList.size() == DEFAULT_LIMIT && noOfEntriesSynchronizedSoFar < MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED);
 
         String nextCompleteContextPath;
         if (lastRetrievedPartOfList != null) {
-            if (lastRetrievedPartOfList.size() == DEFAULT_LIMIT) {
-                //ideally should take the last ProviderEntry.updatedAt (currently updatedAt is not mapped) from the newEntriesFromPr
-                //and also should reset the offset accordingly
-                nextCompleteContextPath = buildCompleteContextPath(baseContextPath, offset, updatedSince);
+            if (cursorSync || lastRetrievedPartOfList.size() == pageSize) {
+                nextCompleteContextPath = buildCompleteContextPath(baseContextPath, cursor);
                 scheduledTaskHistory.setFeedUriForLastReadEntryByFeedUri(locationResourceRefPath + StringUtil.removePrefix(nextCompleteContextPath, "/"), feedUri);
             } else {
                 nextCompleteContextPath = buildCompleteContextPath(baseContextPath, INTIAL_OFFSET, getCurrentDateAndTime());
@@ -165,25 +222,52 @@ public class LocationPull {
         return downloadedData;
     }
 
+    private Future<List<LRAddressHierarchyEntry>> prefetchNextChunkOfUpdatesFromLR(final String completeContextPath) {
+        return pagePrefetcher.submit(new Callable<List<LRAddressHierarchyEntry>>() {
+            @Override
+            public List<LRAddressHierarchyEntry> call() {
+                return getNextChunkOfUpdatesFromLR(completeContextPath);
+            }
+        });
+    }
+
+    private List<LRAddressHierarchyEntry> getPrefetchedChunk(Future<List<LRAddressHierarchyEntry>> nextPartOfList) {
+        try {
+            return nextPartOfList.get();
+        } catch (ExecutionException e) {
+            logger.error("Error while downloading chunk of Updates from LR : " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private void advance(SyncCursor cursor, List<LRAddressHierarchyEntry> lrAddressHierarchyEntries) {
+        if (!cursorSync) {
+            cursor.skip(lrAddressHierarchyEntries.size());
+            return;
+        }
+        for (LRAddressHierarchyEntry lrAddressHierarchyEntry : lrAddressHierarchyEntries) {
+            cursor.advance(lrAddressHierarchyEntry.getUpdatedAt());
+        }
+    }
+
+    private String buildCompleteContextPath(String baseContextPath, SyncCursor cursor) {
+        return buildCompleteContextPath(baseContextPath, cursor.getOffset(), cursor.getUpdatedSince());
+    }
+
     private String buildCompleteContextPath(String baseContextPath, int offset, String updatedSince) {
         return baseContextPath + getExtraFilters(offset, updatedSince);
     }
 
     private String getExtraFilters(int offset, String updatedSince) {
-        return String.format(EXTRA_FILTER_PATTERN, offset, DEFAULT_LIMIT, updatedSince).replace(SINGLE_SPACE, ENCODED_SINGLE_SPACE);
+        return String.format(EXTRA_FILTER_PATTERN, offset, pageSize, updatedSince).replace(SINGLE_SPACE, ENCODED_SINGLE_SPACE);
     }
 
     private void saveOrUpdateAddressHierarchyEntries(List<LRAddressHierarchyEntry> lrAddressHierarchyEntries) {
         for (LRAddressHierarchyEntry lrAddressHierarchyEntry : lrAddressHierarchyEntries) {
-            AddressHierarchyEntry addressHierarchyEntry = addressHierarchyService.getAddressHierarchyEntryByUserGenId(lrAddressHierarchyEntry.getFullLocationCode());
-            addressHierarchyEntry = addressHierarchyEntryMapper.map(addressHierarchyEntry, lrAddressHierarchyEntry, addressHierarchyService);
             try {
-                if (addressHierarchyEntry.getId() == null) {
-                    logger.info("Saving Address Hierarchy Entry to Local DB : \n" + addressHierarchyEntry.toString());
-                } else {
-                    logger.info("Updating Address Hierarchy Entry to Local Db : " + addressHierarchyEntry.toString());
-                }
-                addressHierarchyService.saveAddressHierarchyEntry(addressHierarchyEntry);
+                saveOrUpdateAddressHierarchyEntry(lrAddressHierarchyEntry);
             } catch (Exception e) {
                 logger.error("Error during Save Or Update to Local Db : " + e.toString());
                 failedDuringSaveOrUpdateOperation.add(lrAddressHierarchyEntry.toString());
@@ -191,7 +275,49 @@ public class LocationPull {
         }
     }
 
+    /**
+     * If the page can not be saved as a whole, its entries are saved one by one so that a single bad entry
+     * does not hold back the rest of the page.
+     */
+    private void saveOrUpdateAddressHierarchyEntriesInOneTransaction(final List<LRAddressHierarchyEntry> lrAddressHierarchyEntries) {
+        try {
+            TransactionHelper.executeInTransaction(new TransactionHelper.TxWork<Object>() {
+                @Override
+                public Object execute() {
+                    for (LRAddressHierarchyEntry lrAddressHierarchyEntry : lrAddressHierarchyEntries) {
+                        saveOrUpdateAddressHierarchyEntry(lrAddressHierarchyEntry);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Error during Save Or Update of a page to Local Db, saving entries one by one : " + e.toString());
+            Context.clearSession();
+            saveOrUpdateAddressHierarchyEntries(lrAddressHierarchyEntries);
+        }
+    }
+
+    private void saveOrUpdateAddressHierarchyEntry(LRAddressHierarchyEntry lrAddressHierarchyEntry) {
+        AddressHierarchyEntry addressHierarchyEntry = addressHierarchyService.getAddressHierarchyEntryByUserGenId(lrAddressHierarchyEntry.getFullLocationCode());
+        addressHierarchyEntry = addressHierarchyEntryMapper.map(addressHierarchyEntry, lrAddressHierarchyEntry, addressHierarchyService);
+        if (addressHierarchyEntry.getId() == null) {
+            logger.info("Saving Address Hierarchy Entry to Local DB : \n" + addressHierarchyEntry.toString());
+        } else {
+            logger.info("Updating Address Hierarchy Entry to Local Db : " + addressHierarchyEntry.toString());
+        }
+        addressHierarchyService.saveAddressHierarchyEntry(addressHierarchyEntry);
+    }
+
     private String getCurrentDateAndTime() {
         return DateUtil.toDateString(new Date(), DateUtil.SIMPLE_DATE_WITH_SECS_FORMAT);
     }
+
+    private static class PagePrefetchThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "lr-page-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -4,7 +4,6 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.ict4h.atomfeed.client.domain.Event;
-import org.ict4h.atomfeed.client.service.EventWorker;
 import org.openmrs.Person;
 import org.openmrs.PersonAttribute;
 import org.openmrs.PersonAttributeType;
@@ -15,6 +14,7 @@ import org.openmrs.api.ProviderService;
 import org.openmrs.module.fhir.mapper.model.EntityReference;
 import org.openmrs.module.fhir.utils.DateUtil;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
+import org.openmrs.module.shrclient.feeds.openmrs.PartitionedEventWorker;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.openmrs.module.shrclient.mapper.PatientMapper;
 import org.openmrs.module.shrclient.model.IdMapping;
@@ -23,14 +23,17 @@ import org.openmrs.module.shrclient.model.Patient;
 import org.openmrs.module.shrclient.model.PatientIdMapping;
 import org.openmrs.module.shrclient.model.mci.api.MciPatientUpdateResponse;
 import org.openmrs.module.shrclient.util.*;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.openmrs.module.fhir.Constants.HEALTH_ID_ATTRIBUTE;
 
-public class PatientPush implements EventWorker {
+public class PatientPush implements PartitionedEventWorker {
 
     private static final Logger log = Logger.getLogger(PatientPush.class);
     private final ClientRegistry clientRegistry;
@@ -40,10 +43,11 @@ public class PatientPush implements EventWorker {
     private PersonService personService;
     private PatientMapper patientMapper;
     private PropertiesReader propertiesReader;
-    private List<String> patientUuidsProcessed;
+    private Set<String> patientUuidsProcessed;
     private RestClient mciRestClient;
     private IdMappingRepository idMappingsRepository;
     private ProviderService providerService;
+    private PatientSyncTracker patientSyncTracker;
 
     public PatientPush(PatientService patientService, SystemUserService systemUserService, PersonService personService,
                        PatientMapper patientMapper, PropertiesReader propertiesReader, ClientRegistry clientRegistry,
@@ -57,14 +61,18 @@ public class PatientPush implements EventWorker {
         this.mciRestClient = clientRegistry.getMCIClient();
         this.idMappingsRepository = idMappingRepository;
         this.clientRegistry = clientRegistry;
-        this.patientUuidsProcessed = new ArrayList<>();
+        this.patientUuidsProcessed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    public void setPatientSyncTracker(PatientSyncTracker patientSyncTracker) {
+        this.patientSyncTracker = patientSyncTracker;
     }
 
     @Override
     public void process(Event event) {
         log.debug("Event: [" + event + "]");
+        String uuid = getPatientUuid(event);
         try {
-            String uuid = getPatientUuid(event);
             log.debug("Patient uuid: [" + uuid + "]");
 
             org.openmrs.Patient openMrsPatient = patientService.getPatientByUuid(uuid);
@@ -91,6 +99,26 @@ public class PatientPush implements EventWorker {
         } catch (Exception e) {
             log.error("Error while processing patient sync event.", e);
             throw new RuntimeException(e);
+        } finally {
+            if (patientSyncTracker != null && uuid != null) {
+                releasePatient(uuid);
+            }
+        }
+    }
+
+    /**
+     * The patient mapping is only visible to encounter pushes once the event's transaction completes.
+     */
+    private void releasePatient(final String patientUuid) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    patientSyncTracker.release(patientUuid);
+                }
+            });
+        } else {
+            patientSyncTracker.release(patientUuid);
         }
     }
 
@@ -150,7 +178,7 @@ public class PatientPush implements EventWorker {
             return mciRestClient.put(url, patient, MciPatientUpdateResponse.class);
         } catch (IdentityUnauthorizedException e) {
             log.error("Clearing unauthorized identity token.");
-            clientRegistry.clearIdentityToken();
+            clientRegistry.clearIdentityToken(e.getRejectedToken());
             throw e;
         }
     }
@@ -161,7 +189,7 @@ public class PatientPush implements EventWorker {
                     MciPatientUpdateResponse.class);
         } catch (IdentityUnauthorizedException e) {
             log.error("Clearing unauthorized identity token.");
-            clientRegistry.clearIdentityToken();
+            clientRegistry.clearIdentityToken(e.getRejectedToken());
             throw e;
         }
     }
@@ -212,6 +240,11 @@ public class PatientPush implements EventWorker {
                 propertiesReader.getMciProperties(), new Properties());
     }
 
+    @Override
+    public String getPartitionKey(Event event) {
+        return getPatientUuid(event);
+    }
+
     String getPatientUuid(Event event) {
         String patientUuid = null;
         Pattern p = Pattern.compile("^\\/openmrs\\/ws\\/rest\\/v1\\/patient\\/(.*)\\?v=full");
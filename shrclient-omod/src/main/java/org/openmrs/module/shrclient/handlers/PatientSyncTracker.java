@@ -0,0 +1,52 @@
+package org.openmrs.module.shrclient.handlers;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lets encounter pushes wait for their patient's push to MCI while the patient and encounter feeds are processed
+ * side by side. Only patients with an event pending in the patient feed when the run starts are waited for.
+ * A patient is released once an event for it has been processed, successfully or not, and every patient is
+ * released once the patient feed has been processed. A wait gives up after the timeout the tracker was made with, so
+ * that an encounter push is not held up indefinitely by a slow or stuck patient push.
+ */
+public class PatientSyncTracker {
+    private final Set<String> pendingPatientUuids = new HashSet<>();
+    private final long timeoutMillis;
+    private boolean patientFeedProcessed;
+
+    public PatientSyncTracker(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public synchronized void addPending(Collection<String> patientUuids) {
+        pendingPatientUuids.addAll(patientUuids);
+    }
+
+    public synchronized void release(String patientUuid) {
+        pendingPatientUuids.remove(patientUuid);
+        notifyAll();
+    }
+
+    public synchronized void releaseAll() {
+        patientFeedProcessed = true;
+        pendingPatientUuids.clear();
+        notifyAll();
+    }
+
+    /**
+     * @return false if the patient was still pending when the timeout ran out
+     */
+    public synchronized boolean awaitRelease(String patientUuid) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!patientFeedProcessed && pendingPatientUuids.contains(patientUuid)) {
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            wait(remainingMillis);
+        }
+        return true;
+    }
+}
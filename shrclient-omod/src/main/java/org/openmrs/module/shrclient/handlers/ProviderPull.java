@@ -32,6 +32,9 @@ public class ProviderPull {
     private final RestClient prClient;
     private ScheduledTaskHistory scheduledTaskHistory;
     private ProviderMapper providerMapper;
+    private final int pageSize;
+    private final int maxNumberOfEntriesToBeSynchronized;
+    private final boolean cursorSync;
 
     private final org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger(ProviderPull.class);
 
@@ -43,6 +46,11 @@ public class ProviderPull {
         this.prClient = prClient;
         this.scheduledTaskHistory = scheduledTaskHistory;
         this.providerMapper = providerMapper;
+        int configuredPageSize = propertiesReader.getPrPageSize();
+        int configuredMaxEntries = propertiesReader.getPrMaxEntriesPerRun();
+        this.pageSize = configuredPageSize > 0 ? configuredPageSize : DEFAULT_LIMIT;
+        this.maxNumberOfEntriesToBeSynchronized = configuredMaxEntries > 0 ? configuredMaxEntries : MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED;
+        this.cursorSync = propertiesReader.isPrCursorSync();
     }
 
     public void synchronize() throws IOException {
@@ -54,7 +62,12 @@ public class ProviderPull {
                 propertiesReader.getMciProperties(),
                 propertiesReader.getShrProperties());
 
-        synchronizeUpdates(systemProperties);
+        scheduledTaskHistory.loadMarkers();
+        try {
+            synchronizeUpdates(systemProperties);
+        } finally {
+            scheduledTaskHistory.saveMarkers();
+        }
     }
 
     private void synchronizeUpdates(SystemProperties systemProperties) throws IOException {
@@ -73,32 +86,35 @@ public class ProviderPull {
 
         String baseContextPath = propertiesReader.getPrProperties().getProperty(PR_PROVIDERS_PATH_INFO);
         int noOfEntriesSynchronizedSoFar = 0;
+        SyncCursor cursor = new SyncCursor(updatedSince, offset);
         List<ProviderEntry> newEntriesFromPr;
         String completeContextPath;
         do {
-            completeContextPath = buildCompleteContextPath(baseContextPath, offset, updatedSince);
+            completeContextPath = buildCompleteContextPath(baseContextPath, cursor.getOffset(), cursor.getUpdatedSince());
             newEntriesFromPr = getNextChunkOfUpdatesFromPr(completeContextPath);
             if (newEntriesFromPr != null) {
                 saveOrUpdateProviderEntries(newEntriesFromPr, systemProperties);
-                offset += newEntriesFromPr.size();
+                advance(cursor, newEntriesFromPr);
                 noOfEntriesSynchronizedSoFar += newEntriesFromPr.size();
             }
         }
-        while (newEntriesFromPr != null && newEntriesFromPr.size() == DEFAULT_LIMIT && noOfEntriesSynchronizedSoFar < MAX_NUMBER_OF_ENTRIES_TO_BE_SYNCHRONIZED);
+        while (newEntriesFromPr != null && newEntriesFromPr.size() == pageSize && noOfEntriesSynchronizedSoFar < maxNumberOfEntriesToBeSynchronized);
 
-        updateMarkers(noOfEntriesSynchronizedSoFar, offset, newEntriesFromPr, baseContextPath, updatedSince);
+        updateMarkers(noOfEntriesSynchronizedSoFar, cursor, newEntriesFromPr, baseContextPath);
 
         logger.info(noOfEntriesSynchronizedSoFar + " entries synchronized");
     }
 
-    private void updateMarkers(int noOfEntriesSynchronizedSoFar, int offset, List<ProviderEntry> newEntriesFromPr, String baseContextPath, String updatedSince) {
+    /**
+     * With cursor paging (pr.cursorSync) the next run always resumes from the cursor, otherwise only
+     * when the last page was full.
+     */
+    private void updateMarkers(int noOfEntriesSynchronizedSoFar, SyncCursor cursor, List<ProviderEntry> newEntriesFromPr, String baseContextPath) {
         String nextCompleteContextPath;
         String providerResourceRefPath = StringUtil.ensureSuffix(propertiesReader.getPrBaseUrl(), "/");
         if (newEntriesFromPr != null) {
-            if (newEntriesFromPr.size() == DEFAULT_LIMIT) {
-                //ideally should take the last ProviderEntry.updatedAt (currently updatedAt is not mapped) from the newEntriesFromPr
-                //and also should reset the offset accordingly
-                nextCompleteContextPath = buildCompleteContextPath(baseContextPath, offset, updatedSince);
+            if (cursorSync || newEntriesFromPr.size() == pageSize) {
+                nextCompleteContextPath = buildCompleteContextPath(baseContextPath, cursor.getOffset(), cursor.getUpdatedSince());
                 scheduledTaskHistory.setFeedUriForLastReadEntryByFeedUri(providerResourceRefPath + StringUtil.removePrefix(nextCompleteContextPath, "/"), PR_FEED_URI);
             } else {
                 nextCompleteContextPath = buildCompleteContextPath(baseContextPath, INITIAL_OFFSET,
@@ -106,7 +122,7 @@ public class ProviderPull {
                 scheduledTaskHistory.setFeedUriForLastReadEntryByFeedUri(providerResourceRefPath + StringUtil.removePrefix(nextCompleteContextPath, "/"), PR_FEED_URI);
             }
 
-            if (noOfEntriesSynchronizedSoFar != 0) {
+            if (noOfEntriesSynchronizedSoFar != 0 && !newEntriesFromPr.isEmpty()) {
                 ProviderEntry providerEntry = newEntriesFromPr.get(newEntriesFromPr.size() - 1);
                 scheduledTaskHistory.setLastReadEntryId(providerEntry.getId(), PR_FEED_URI);
             }
@@ -138,12 +154,22 @@ public class ProviderPull {
         return downloadedData;
     }
 
+    private void advance(SyncCursor cursor, List<ProviderEntry> providerEntries) {
+        if (!cursorSync) {
+            cursor.skip(providerEntries.size());
+            return;
+        }
+        for (ProviderEntry providerEntry : providerEntries) {
+            cursor.advance(providerEntry.getUpdatedAt());
+        }
+    }
+
     private String buildCompleteContextPath(String baseContextPath, int offset, String updatedSince) {
         return baseContextPath + getExtraFilters(offset, updatedSince);
     }
 
     private String getExtraFilters(int offset, String updatedSince) {
-        return String.format(EXTRA_FILTER_PATTERN, offset, DEFAULT_LIMIT, updatedSince)
+        return String.format(EXTRA_FILTER_PATTERN, offset, pageSize, updatedSince)
                 .replace(SINGLE_SPACE, ENCODED_SINGLE_SPACE);
     }
 }
@@ -0,0 +1,42 @@
+package org.openmrs.module.shrclient.handlers;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Where an incremental pull from a registry resumes: the entries updated since updatedSince, skipping the first
+ * offset of them.
+ * With offset paging the offset grows with every entry read. With cursor paging updatedSince follows the updatedAt
+ * of the entries read and the offset only counts the entries read with that same updatedAt, so it stays small
+ * however far the sync gets. This relies on the registry returning entries ordered by updatedAt, including the
+ * ones updated at updatedSince itself. Entries without a later updatedAt just grow the offset.
+ */
+class SyncCursor {
+    private String updatedSince;
+    private int offset;
+
+    SyncCursor(String updatedSince, int offset) {
+        this.updatedSince = updatedSince;
+        this.offset = offset;
+    }
+
+    void advance(String updatedAt) {
+        if (StringUtils.isNotBlank(updatedAt) && (updatedSince == null || updatedAt.compareTo(updatedSince) > 0)) {
+            updatedSince = updatedAt;
+            offset = 1;
+        } else {
+            offset++;
+        }
+    }
+
+    void skip(int numberOfEntries) {
+        offset += numberOfEntries;
+    }
+
+    String getUpdatedSince() {
+        return updatedSince;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+}
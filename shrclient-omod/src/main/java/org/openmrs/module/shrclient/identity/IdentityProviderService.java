@@ -1,18 +1,29 @@
 package org.openmrs.module.shrclient.identity;
 
+import org.apache.log4j.Logger;
 import org.openmrs.module.fhir.utils.PropertyKeyConstants;
 import org.openmrs.module.shrclient.util.Headers;
 import org.openmrs.module.shrclient.util.IdentityProviderClient;
+import org.openmrs.module.shrclient.util.ModuleStopHooks;
 import org.openmrs.module.shrclient.util.PropertiesReader;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 
+/**
+ * Signs in to the identity provider once for all threads. Concurrent callers without a usable token wait for a
+ * single sign in, and a token nearing its expiry is refreshed in the background while it is still handed out.
+ */
 public class IdentityProviderService {
+    private static final Logger log = Logger.getLogger(IdentityProviderService.class);
     private static final String EMAIL_KEY = "email";
     private static final String PASSWORD_KEY = "password";
+    private static ExecutorService tokenRefresher;
     PropertiesReader propertiesReader;
     private IdentityStore identityStore;
 
@@ -28,15 +39,79 @@ public class IdentityProviderService {
 
     public IdentityToken getOrCreateToken() throws IdentityUnauthorizedException {
         IdentityToken identityToken = identityStore.getToken();
-        if (identityToken == null) {
+        if (identityToken == null || identityToken.isExpired()) {
+            return signIn(identityToken);
+        }
+        if (identityToken.isDueForRefresh()) {
+            refreshInBackground(identityToken);
+        }
+        return identityToken;
+    }
+
+    /**
+     * Replaces a token the server rejected. If another thread already replaced it, its token is returned instead
+     * of signing in again.
+     */
+    public IdentityToken refreshToken(IdentityToken rejectedToken) throws IdentityUnauthorizedException {
+        return signIn(rejectedToken);
+    }
+
+    private IdentityToken signIn(IdentityToken staleToken) throws IdentityUnauthorizedException {
+        synchronized (identityStore) {
+            IdentityToken identityToken = identityStore.getToken();
+            if (identityToken != null && identityToken != staleToken && !identityToken.isExpired()) {
+                return identityToken;
+            }
             Properties facilityInstanceProperties = propertiesReader.getFacilityInstanceProperties();
             Map<String, String> clientCredentials = getClientCredentials(facilityInstanceProperties);
             String url = propertiesReader.getIdPSignInPath();
             identityToken = getIdentityServiceClient(facilityInstanceProperties)
                     .post(url, clientCredentials, IdentityToken.class);
             identityStore.setToken(identityToken);
+            return identityToken;
+        }
+    }
+
+    private void refreshInBackground(final IdentityToken expiringToken) {
+        if (!identityStore.startRefresh()) {
+            return;
+        }
+        getTokenRefresher().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    signIn(expiringToken);
+                    log.debug("Refreshed identity token ahead of its expiry.");
+                } catch (Exception e) {
+                    log.warn("Could not refresh identity token ahead of its expiry.", e);
+                } finally {
+                    identityStore.endRefresh();
+                }
+            }
+        });
+    }
+
+    /**
+     * The refresh thread is shut down when the module stops, and started again on the next refresh.
+     */
+    private static synchronized ExecutorService getTokenRefresher() {
+        if (tokenRefresher == null) {
+            tokenRefresher = Executors.newSingleThreadExecutor(new TokenRefreshThreadFactory());
+            ModuleStopHooks.add(new Runnable() {
+                @Override
+                public void run() {
+                    shutdownTokenRefresher();
+                }
+            });
+        }
+        return tokenRefresher;
+    }
+
+    private static synchronized void shutdownTokenRefresher() {
+        if (tokenRefresher != null) {
+            tokenRefresher.shutdownNow();
+            tokenRefresher = null;
         }
-        return identityToken;
     }
 
     private Map<String, String> getClientCredentials(Properties facilityInstanceProperties) {
@@ -45,4 +120,13 @@ public class IdentityProviderService {
         clientCredentials.put(PASSWORD_KEY, facilityInstanceProperties.getProperty(PropertyKeyConstants.FACILITY_PASSWORD_KEY));
         return clientCredentials;
     }
+
+    private static class TokenRefreshThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "idp-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
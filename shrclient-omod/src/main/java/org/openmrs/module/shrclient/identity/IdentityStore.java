@@ -2,19 +2,41 @@ package org.openmrs.module.shrclient.identity;
 
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the identity token shared by every client of the module. The token is swapped atomically, and is cleared only
+ * if it is still the token a server rejected, so a token refreshed meanwhile by another thread survives.
+ */
 @Component("bdshrIdentityStore")
 public class IdentityStore {
-    private IdentityToken token;
+    private final AtomicReference<IdentityToken> token = new AtomicReference<>();
+    private final AtomicBoolean refreshInProgress = new AtomicBoolean();
 
     public IdentityToken getToken() {
-        return token;
+        return token.get();
     }
 
     public void setToken(IdentityToken token) {
-        this.token = token;
+        this.token.set(token);
+    }
+
+    /**
+     * @return true if the token was cleared, false if it was already replaced
+     */
+    public boolean clearToken(IdentityToken rejectedToken) {
+        return this.token.compareAndSet(rejectedToken, null);
+    }
+
+    /**
+     * @return true if the caller gets to refresh the token, false if a refresh is already in progress
+     */
+    boolean startRefresh() {
+        return refreshInProgress.compareAndSet(false, true);
     }
 
-    public void clearToken() {
-        this.token = null;
+    void endRefresh() {
+        refreshInProgress.set(false);
     }
 }
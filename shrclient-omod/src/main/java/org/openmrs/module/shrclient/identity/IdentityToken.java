@@ -1,8 +1,13 @@
 package org.openmrs.module.shrclient.identity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class IdentityToken {
+    private static final long MAX_REFRESH_AHEAD_MILLIS = 60 * 1000L;
+
     public IdentityToken() {
     }
 
@@ -10,9 +15,44 @@ public class IdentityToken {
         this.token = token;
     }
 
+    public IdentityToken(String token, Long expiresIn) {
+        this.token = token;
+        this.expiresIn = expiresIn;
+    }
+
     @JsonProperty("access_token")
     private String token;
 
+    @JsonProperty("expires_in")
+    private Long expiresIn;
+
+    @JsonIgnore
+    private final long issuedAt = System.currentTimeMillis();
+
+    /**
+     * A token without an expires_in never expires as far as the client knows; it is replaced once it is rejected.
+     */
+    @JsonIgnore
+    public boolean isExpired() {
+        return expiresIn != null && System.currentTimeMillis() >= getExpiresAt();
+    }
+
+    /**
+     * Due for refresh within a minute of expiring, or within the last quarter of its life for short lived tokens.
+     */
+    @JsonIgnore
+    public boolean isDueForRefresh() {
+        if (expiresIn == null) {
+            return false;
+        }
+        long refreshAhead = Math.min(MAX_REFRESH_AHEAD_MILLIS, expiresIn * 1000 / 4);
+        return System.currentTimeMillis() >= getExpiresAt() - refreshAhead;
+    }
+
+    private long getExpiresAt() {
+        return issuedAt + expiresIn * 1000;
+    }
+
     @Override
     public String toString() {
         return token;
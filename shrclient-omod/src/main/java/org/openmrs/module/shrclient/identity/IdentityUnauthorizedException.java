@@ -3,8 +3,21 @@ package org.openmrs.module.shrclient.identity;
 import java.io.IOException;
 
 public class IdentityUnauthorizedException extends IOException {
+    private IdentityToken rejectedToken;
+
     public IdentityUnauthorizedException(String message) {
         super(message);
     }
 
+    public IdentityUnauthorizedException(String message, IdentityToken rejectedToken) {
+        super(message);
+        this.rejectedToken = rejectedToken;
+    }
+
+    /**
+     * @return the token the server turned down, or null if the request was not sent with one
+     */
+    public IdentityToken getRejectedToken() {
+        return rejectedToken;
+    }
 }
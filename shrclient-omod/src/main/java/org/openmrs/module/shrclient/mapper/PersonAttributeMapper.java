@@ -5,15 +5,22 @@ import org.openmrs.PersonAttribute;
 import org.openmrs.PersonAttributeType;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 
 public class PersonAttributeMapper {
 
     private PersonService personService;
+    private MetadataRegistry metadataRegistry;
 
     public PersonAttributeMapper(PersonService personService) {
         this.personService = personService;
     }
 
+    public PersonAttributeMapper(PersonService personService, MetadataRegistry metadataRegistry) {
+        this.personService = personService;
+        this.metadataRegistry = metadataRegistry;
+    }
+
     public PersonAttributeMapper(){
 
     }
@@ -25,7 +32,8 @@ public class PersonAttributeMapper {
 
     public PersonAttribute getAttribute(String attributeTypeName, String attributeValue){
         PersonAttribute attribute = new PersonAttribute();
-        PersonAttributeType attributeType = getPersonService().getPersonAttributeTypeByName(attributeTypeName);
+        PersonAttributeType attributeType = metadataRegistry != null ? metadataRegistry.getPersonAttributeTypeByName(attributeTypeName)
+                : getPersonService().getPersonAttributeTypeByName(attributeTypeName);
         if (attributeType != null) {
             attribute.setAttributeType(attributeType);
             attribute.setValue(attributeValue);
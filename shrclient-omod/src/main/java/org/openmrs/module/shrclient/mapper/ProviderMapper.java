@@ -6,6 +6,7 @@ import org.openmrs.ProviderAttribute;
 import org.openmrs.ProviderAttributeType;
 import org.openmrs.api.ProviderService;
 import org.openmrs.module.fhir.mapper.model.EntityReference;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
 import org.openmrs.module.shrclient.model.IdMapping;
 import org.openmrs.module.shrclient.model.IdMappingType;
@@ -27,11 +28,13 @@ public class ProviderMapper {
     private final static String ACTIVE = "1";
     private ProviderService providerService;
     private IdMappingRepository idMappingRepository;
+    private MetadataRegistry metadataRegistry;
 
     @Autowired
-    public ProviderMapper(ProviderService providerService, IdMappingRepository idMappingRepository) {
+    public ProviderMapper(ProviderService providerService, IdMappingRepository idMappingRepository, MetadataRegistry metadataRegistry) {
         this.providerService = providerService;
         this.idMappingRepository = idMappingRepository;
+        this.metadataRegistry = metadataRegistry;
     }
 
     public void createOrUpdate(ProviderEntry providerEntry, SystemProperties systemProperties) {
@@ -104,11 +107,6 @@ public class ProviderMapper {
     }
 
     private ProviderAttributeType findOrganizationProviderAttributeType() {
-        for (ProviderAttributeType providerAttributeType : providerService.getAllProviderAttributeTypes(false)) {
-            if (providerAttributeType.getName().equals(ORGANIZATION_ATTRIBUTE_TYPE_NAME)) {
-                return providerAttributeType;
-            }
-        }
-        return null;
+        return metadataRegistry.getProviderAttributeTypeByName(ORGANIZATION_ATTRIBUTE_TYPE_NAME);
     }
 }
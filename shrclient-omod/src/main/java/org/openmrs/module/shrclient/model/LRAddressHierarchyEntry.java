@@ -30,6 +30,10 @@ public class LRAddressHierarchyEntry {
     @JsonInclude(NON_EMPTY)
     private String active;
 
+    @JsonProperty("updatedAt")
+    @JsonInclude(NON_EMPTY)
+    private String updatedAt;
+
     public String getShortLocationCode() {
         return shortLocationCode;
     }
@@ -70,6 +74,14 @@ public class LRAddressHierarchyEntry {
         this.active = active;
     }
 
+    public String getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(String updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("LRAddressHierarchyEntry{");
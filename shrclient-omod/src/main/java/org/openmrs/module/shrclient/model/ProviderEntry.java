@@ -15,6 +15,8 @@ public class ProviderEntry {
     private Organization organization;
     @JsonProperty("active")
     private String active;
+    @JsonProperty("updatedAt")
+    private String updatedAt;
 
     public String getId() {
         return id;
@@ -56,6 +58,14 @@ public class ProviderEntry {
         this.name = name;
     }
 
+    public String getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(String updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     @JsonIgnoreProperties(ignoreUnknown = true)
     public class Organization {
         @JsonProperty("reference")
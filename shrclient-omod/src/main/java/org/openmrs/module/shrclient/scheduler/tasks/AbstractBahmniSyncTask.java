@@ -6,7 +6,9 @@ import org.ict4h.atomfeed.client.service.FeedClient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.fhir.mapper.bundler.CompositionBundleCreator;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
+import org.openmrs.module.shrclient.feeds.openmrs.ConcurrentFeedProcessor;
 import org.openmrs.module.shrclient.feeds.openmrs.OpenMRSFeedClientFactory;
+import org.openmrs.module.shrclient.feeds.openmrs.PartitionedEventWorker;
 import org.openmrs.module.shrclient.handlers.ClientRegistry;
 import org.openmrs.module.shrclient.handlers.EncounterPush;
 import org.openmrs.module.shrclient.handlers.PatientPush;
@@ -74,7 +76,7 @@ public abstract class AbstractBahmniSyncTask extends AbstractTask {
 
     private RuntimeException handleInvalidIdentity(ClientRegistry clientRegistry, IdentityUnauthorizedException e) {
         log.error("Invalid credentials or expired token. Clearing existing token if any.");
-        clientRegistry.clearIdentityToken();
+        clientRegistry.clearIdentityToken(e.getRejectedToken());
         e.printStackTrace();
         return new RuntimeException(e);
     }
@@ -82,4 +84,9 @@ public abstract class AbstractBahmniSyncTask extends AbstractTask {
     protected FeedClient getFeedClient(String uri, EventWorker worker, int maxFailedEvents) throws URISyntaxException {
         return new OpenMRSFeedClientFactory().getFeedClient(uri, worker, maxFailedEvents);
     }
+
+    protected ConcurrentFeedProcessor getConcurrentFeedProcessor(String uri, PartitionedEventWorker worker, int maxFailedEvents,
+                                                                 int parallelism) throws URISyntaxException {
+        return new OpenMRSFeedClientFactory().getConcurrentFeedProcessor(uri, worker, maxFailedEvents, parallelism);
+    }
 }
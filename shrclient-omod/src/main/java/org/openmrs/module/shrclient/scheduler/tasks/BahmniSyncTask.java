@@ -3,11 +3,25 @@ package org.openmrs.module.shrclient.scheduler.tasks;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.ict4h.atomfeed.client.domain.Event;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.shrclient.feeds.openmrs.ConcurrentFeedProcessor;
 import org.openmrs.module.shrclient.handlers.EncounterPush;
 import org.openmrs.module.shrclient.handlers.PatientPush;
+import org.openmrs.module.shrclient.handlers.PatientSyncTracker;
 import org.openmrs.module.shrclient.util.PropertiesReader;
+import org.openmrs.module.shrclient.util.WorkerThreadContext;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class BahmniSyncTask extends AbstractBahmniSyncTask {
     private static final Logger log = Logger.getLogger(BahmniSyncTask.class);
@@ -16,10 +30,110 @@ public class BahmniSyncTask extends AbstractBahmniSyncTask {
     protected void executeBahmniTask(PatientPush patientPush, EncounterPush encounterPush, PropertiesReader propertiesReader) {
         log.debug("SCHEDULED JOB : SHR Patient Sync Task");
         try {
+            if (propertiesReader.getMciPatientPushParallelism() > 1) {
+                processFeedsSideBySide(patientPush, encounterPush, propertiesReader);
+                return;
+            }
             getFeedClient(OPENMRS_PATIENT_FEED_URI, patientPush, propertiesReader.getMciMaxFailedEvent()).processEvents();
-            getFeedClient(OPENMRS_ENCOUNTER_FEED_URI, encounterPush, propertiesReader.getShrMaxFailedEvent()).processEvents();
+            processEncounterFeed(encounterPush, propertiesReader);
         } catch (URISyntaxException e) {
             log.error(e.getMessage());
         }
     }
+
+    /**
+     * Patients are pushed to MCI concurrently on a separate thread while encounters are pushed to SHR.
+     * An encounter whose patient is not yet synced, but has an event pending in the patient feed, waits until that
+     * patient's event has been processed, or until the whole patient feed has been processed, instead of failing
+     * right away. It waits for at most mci.patientSyncWaitSeconds, and then fails as if the patient was not synced.
+     * Encounters of other patients are pushed without waiting.
+     */
+    private void processFeedsSideBySide(final PatientPush patientPush, EncounterPush encounterPush,
+                                        final PropertiesReader propertiesReader) throws URISyntaxException {
+        final ConcurrentFeedProcessor patientFeedProcessor = getConcurrentFeedProcessor(OPENMRS_PATIENT_FEED_URI,
+                patientPush, propertiesReader.getMciMaxFailedEvent(), propertiesReader.getMciPatientPushParallelism());
+        final PatientSyncTracker patientSyncTracker = new PatientSyncTracker(
+                TimeUnit.SECONDS.toMillis(propertiesReader.getMciPatientSyncWaitSeconds()));
+        patientSyncTracker.addPending(getPatientUuids(patientPush, patientFeedProcessor.getUnprocessedEvents()));
+        patientPush.setPatientSyncTracker(patientSyncTracker);
+        encounterPush.setPatientSyncTracker(patientSyncTracker);
+
+        final UserContext userContext = Context.getUserContext();
+        ExecutorService executorService = Executors.newSingleThreadExecutor(new PatientSyncThreadFactory());
+        Future<?> patientFeed = executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                WorkerThreadContext.open(userContext);
+                try {
+                    processPatientFeed(patientFeedProcessor, patientPush, propertiesReader);
+                } catch (URISyntaxException e) {
+                    log.error(e.getMessage());
+                } finally {
+                    patientSyncTracker.releaseAll();
+                    WorkerThreadContext.close();
+                }
+            }
+        });
+        executorService.shutdown();
+        try {
+            processEncounterFeed(encounterPush, propertiesReader);
+        } finally {
+            waitForPatientFeed(patientFeed);
+        }
+    }
+
+    private List<String> getPatientUuids(PatientPush patientPush, List<Event> patientEvents) {
+        List<String> patientUuids = new ArrayList<>();
+        for (Event patientEvent : patientEvents) {
+            String patientUuid = patientPush.getPartitionKey(patientEvent);
+            if (patientUuid != null) {
+                patientUuids.add(patientUuid);
+            }
+        }
+        return patientUuids;
+    }
+
+    private void processPatientFeed(ConcurrentFeedProcessor patientFeedProcessor, PatientPush patientPush,
+                                    PropertiesReader propertiesReader) throws URISyntaxException {
+        boolean completed = patientFeedProcessor.processEvents();
+        if (!completed) {
+            getFeedClient(OPENMRS_PATIENT_FEED_URI, patientPush, propertiesReader.getMciMaxFailedEvent()).processEvents();
+        }
+    }
+
+    /**
+     * With shr.encounterPushParallelism above 1, encounters are first pushed concurrently, one patient per thread.
+     * The concurrent pass stops at the first failure; the regular feed client then takes over from the marker,
+     * recording failed events, and skips encounters already pushed in this run.
+     */
+    private void processEncounterFeed(EncounterPush encounterPush, PropertiesReader propertiesReader) throws URISyntaxException {
+        int parallelism = propertiesReader.getShrEncounterPushParallelism();
+        if (parallelism > 1) {
+            boolean completed = getConcurrentFeedProcessor(OPENMRS_ENCOUNTER_FEED_URI, encounterPush,
+                    propertiesReader.getShrMaxFailedEvent(), parallelism).processEvents();
+            if (completed) {
+                return;
+            }
+        }
+        getFeedClient(OPENMRS_ENCOUNTER_FEED_URI, encounterPush, propertiesReader.getShrMaxFailedEvent()).processEvents();
+    }
+
+    private void waitForPatientFeed(Future<?> patientFeed) {
+        try {
+            patientFeed.get();
+        } catch (ExecutionException e) {
+            log.error("Error while processing patient feed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class PatientSyncThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mci-patient-sync");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -15,13 +15,14 @@ public class CatchmentEncounterDownloadTask extends AbstractTask {
     public void execute() {
         PropertiesReader propertiesReader = PlatformUtil.getPropertiesReader();
         IdentityStore identityStore = PlatformUtil.getIdentityStore();
-        new EncounterPull(propertiesReader, identityStore).download();
-        new EncounterPull(propertiesReader, identityStore).retry();
+        EncounterPull encounterPull = new EncounterPull(propertiesReader, identityStore);
+        encounterPull.download();
+        encounterPull.retry();
     }
 
     private void clearIdentity(IdentityUnauthorizedException e) {
         log.error("Invalid credentials or expired token. Clearing existing token if any.");
-        PlatformUtil.getIdentityStore().clearToken();
+        PlatformUtil.getIdentityStore().clearToken(e.getRejectedToken());
         e.printStackTrace();
     }
 }
@@ -3,13 +3,13 @@ package org.openmrs.module.shrclient.service.impl;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.openmrs.*;
-import org.openmrs.api.AdministrationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.fhir.MRSProperties;
 import org.openmrs.module.fhir.mapper.model.EntityReference;
 import org.openmrs.module.fhir.utils.GlobalPropertyLookUpService;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.idgen.IdentifierSource;
 import org.openmrs.module.idgen.service.IdentifierSourceService;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
@@ -50,6 +50,8 @@ public class EMRPatientServiceImpl implements EMRPatientService {
     private PersonAttributeMapper personAttributeMapper;
     private EMRPatientDeathService patientDeathService;
     private GlobalPropertyLookUpService globalPropertyLookUpService;
+    private PatientIdentifierPool patientIdentifierPool;
+    private volatile ResolvedIdentifierSource resolvedIdentifierSource;
 
     @Autowired
     public EMRPatientServiceImpl(BbsCodeService bbsCodeService,
@@ -59,7 +61,9 @@ public class EMRPatientServiceImpl implements EMRPatientService {
                                  PropertiesReader propertiesReader,
                                  SystemUserService systemUserService,
                                  EMRPatientDeathService patientDeathService,
-                                 GlobalPropertyLookUpService globalPropertyLookUpService) {
+                                 GlobalPropertyLookUpService globalPropertyLookUpService,
+                                 MetadataRegistry metadataRegistry,
+                                 PatientIdentifierPool patientIdentifierPool) {
         this.bbsCodeService = bbsCodeService;
         this.patientService = patientService;
         this.idMappingsRepository = idMappingRepository;
@@ -67,7 +71,8 @@ public class EMRPatientServiceImpl implements EMRPatientService {
         this.systemUserService = systemUserService;
         this.patientDeathService = patientDeathService;
         this.globalPropertyLookUpService = globalPropertyLookUpService;
-        this.personAttributeMapper = new PersonAttributeMapper(personService);
+        this.personAttributeMapper = new PersonAttributeMapper(personService, metadataRegistry);
+        this.patientIdentifierPool = patientIdentifierPool;
     }
 
     @Override
@@ -188,14 +193,29 @@ public class EMRPatientServiceImpl implements EMRPatientService {
 
     private PatientIdentifier generateIdentifier() {
         IdentifierSourceService identifierSourceService = Context.getService(IdentifierSourceService.class);
-        PatientIdentifierType identifierType = getPatientIdentifierType();
-        IdentifierSource idSource = getIdenfierSource(identifierSourceService, identifierType);
-        String identifier = identifierSourceService.generateIdentifier(idSource, "MCI Patient");
+        String identifierTypeUuid = globalPropertyLookUpService.getGlobalPropertyValue(MRSProperties.GLOBAL_PROPERTY_EMR_PRIMARY_IDENTIFIER_TYPE);
+        String defaultPatientIdSourceId = globalPropertyLookUpService.getGlobalPropertyValue(MRSProperties.GLOBAL_PROPERTY_DEFAULT_IDENTIFIER_TYPE_ID);
+        PatientIdentifierType identifierType = null;
+        IdentifierSource idSource = null;
+        ResolvedIdentifierSource resolved = resolvedIdentifierSource;
+        if (resolved != null && resolved.isFor(identifierTypeUuid, defaultPatientIdSourceId)) {
+            identifierType = Context.getPatientService().getPatientIdentifierType(resolved.identifierTypeId);
+            idSource = identifierSourceService.getIdentifierSource(resolved.identifierSourceId);
+        }
+        if (identifierType == null || idSource == null || idSource.isRetired()) {
+            identifierType = Context.getPatientService().getPatientIdentifierTypeByUuid(identifierTypeUuid);
+            idSource = getIdenfierSource(identifierSourceService, identifierType, defaultPatientIdSourceId);
+            if (identifierType != null && identifierType.getId() != null && idSource != null && idSource.getId() != null) {
+                resolvedIdentifierSource = new ResolvedIdentifierSource(identifierTypeUuid, defaultPatientIdSourceId,
+                        identifierType.getId(), idSource.getId());
+            }
+        }
+        String identifier = patientIdentifierPool.next(identifierSourceService, idSource, "MCI Patient");
         return new PatientIdentifier(identifier, identifierType, null);
     }
 
-    private IdentifierSource getIdenfierSource(IdentifierSourceService identifierSourceService, PatientIdentifierType identifierType) {
-        String defaultPatientIdSourceId = globalPropertyLookUpService.getGlobalPropertyValue(MRSProperties.GLOBAL_PROPERTY_DEFAULT_IDENTIFIER_TYPE_ID);
+    private IdentifierSource getIdenfierSource(IdentifierSourceService identifierSourceService, PatientIdentifierType identifierType,
+                                               String defaultPatientIdSourceId) {
         if (defaultPatientIdSourceId != null)
             return identifierSourceService.getIdentifierSource(Integer.parseInt(defaultPatientIdSourceId));
         else {
@@ -279,13 +299,6 @@ public class EMRPatientServiceImpl implements EMRPatientService {
         }
     }
 
-    private PatientIdentifierType getPatientIdentifierType() {
-        AdministrationService administrationService = Context.getAdministrationService();
-        String globalProperty = administrationService.getGlobalProperty(MRSProperties.GLOBAL_PROPERTY_EMR_PRIMARY_IDENTIFIER_TYPE);
-        PatientIdentifierType patientIdentifierByUuid = Context.getPatientService().getPatientIdentifierTypeByUuid(globalProperty);
-        return patientIdentifierByUuid;
-    }
-
     private void addPatientToIdMapping(org.openmrs.Patient emrPatient, String healthId) {
         String patientUuid = emrPatient.getUuid();
         SystemProperties systemProperties = new SystemProperties(
@@ -297,5 +310,27 @@ public class EMRPatientServiceImpl implements EMRPatientService {
         String url = new EntityReference().build(org.openmrs.Patient.class, systemProperties, healthId);
         idMappingsRepository.saveOrUpdateIdMapping(new PatientIdMapping(patientUuid, healthId, url, new Date()));
     }
+
+    /**
+     * Ids of the identifier type and source resolved for the global property values they were resolved from.
+     */
+    private static class ResolvedIdentifierSource {
+        private final String identifierTypeUuid;
+        private final String defaultPatientIdSourceId;
+        private final Integer identifierTypeId;
+        private final Integer identifierSourceId;
+
+        private ResolvedIdentifierSource(String identifierTypeUuid, String defaultPatientIdSourceId, Integer identifierTypeId, Integer identifierSourceId) {
+            this.identifierTypeUuid = identifierTypeUuid;
+            this.defaultPatientIdSourceId = defaultPatientIdSourceId;
+            this.identifierTypeId = identifierTypeId;
+            this.identifierSourceId = identifierSourceId;
+        }
+
+        private boolean isFor(String identifierTypeUuid, String defaultPatientIdSourceId) {
+            return StringUtils.equals(this.identifierTypeUuid, identifierTypeUuid)
+                    && StringUtils.equals(this.defaultPatientIdSourceId, defaultPatientIdSourceId);
+        }
+    }
 }
 
@@ -238,7 +238,7 @@ public class MCIPatientLookupServiceImpl implements MCIPatientLookupService {
             encounterEvents = new ClientRegistry(propertiesReader, identityStore).getSHRClient().getEncounters(url);
         } catch (IdentityUnauthorizedException e) {
             log.info("Clearing unauthorized identity token.");
-            identityStore.clearToken();
+            identityStore.clearToken(e.getRejectedToken());
         }
         emrEncounterService.createOrUpdateEncounters(emrPatient, encounterEvents);
     }
@@ -250,7 +250,7 @@ public class MCIPatientLookupServiceImpl implements MCIPatientLookupService {
             mciPatientSearchResponse = getMciRestClient().get(url, MciPatientSearchResponse.class);
         } catch (IdentityUnauthorizedException e) {
             log.info("Clearing unauthorized identity token.");
-            identityStore.clearToken();
+            identityStore.clearToken(e.getRejectedToken());
             throw new RuntimeException(e);
         }
         return mciPatientSearchResponse.getResults();
@@ -264,7 +264,7 @@ public class MCIPatientLookupServiceImpl implements MCIPatientLookupService {
             return getMciRestClient().get(this.patientContext + "/" + hid, Patient.class);
         } catch (IdentityUnauthorizedException e) {
             log.info("Clearing unauthorized identity token.");
-            identityStore.clearToken();
+            identityStore.clearToken(e.getRejectedToken());
             throw new RuntimeException(e);
         }
     }
@@ -1,17 +0,0 @@
-package org.openmrs.module.shrclient.util;
-
-import ca.uhn.fhir.context.FhirContext;
-import org.springframework.stereotype.Component;
-
-@Component
-public class FhirBundleContextHolder {
-    private static FhirContext fhirContext;
-
-
-    public static FhirContext getFhirContext() {
-        if(fhirContext == null) {
-            fhirContext = FhirContext.forDstu2();
-        }
-        return fhirContext;
-    }
-}
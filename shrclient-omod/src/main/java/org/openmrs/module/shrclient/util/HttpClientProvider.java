@@ -0,0 +1,270 @@
+package org.openmrs.module.shrclient.util;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the single connection-pooled http client shared by all registry and SHR clients,
+ * so that connections (and TLS sessions) are reused across requests instead of being set up per call.
+ * The client asks for gzip or deflate encoded responses and decompresses them transparently; with debug
+ * logging on, the bytes received on the wire and after decompression are logged per response.
+ */
+@Component
+public class HttpClientProvider implements DisposableBean {
+    private static final Logger log = Logger.getLogger(HttpClientProvider.class);
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+    private static final int MAX_TOTAL_CONNECTIONS = 40;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 10;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    private static final long IDLE_CONNECTION_TIMEOUT_MILLIS = 60000;
+    private static final long IDLE_CONNECTION_CHECK_INTERVAL_MILLIS = 30000;
+    private static final String WIRE_BYTES_ATTRIBUTE = "bdshr.wireBytes";
+
+    private static CloseableHttpClient httpClient;
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static IdleConnectionEvictor idleConnectionEvictor;
+
+    public static synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy(new DefaultKeepAliveStrategy())
+                    .setRedirectStrategy(new DefaultRedirectStrategy())
+                    .setDefaultRequestConfig(getRequestConfig(DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT))
+                    .addInterceptorFirst(new WireBytesCounter())
+                    .addInterceptorLast(new ContentBytesCounter())
+                    .build();
+            idleConnectionEvictor = new IdleConnectionEvictor(connectionManager);
+            idleConnectionEvictor.start();
+        }
+        return httpClient;
+    }
+
+    public static RequestConfig getRequestConfig(int connectTimeout, int socketTimeout) {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setStaleConnectionCheckEnabled(true)
+                .build();
+    }
+
+    public static RequestConfig getDefaultRequestConfig() {
+        return getRequestConfig(DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    public static synchronized void shutdown() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdown();
+            idleConnectionEvictor = null;
+        }
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.warn("Could not close pooled http client", e);
+            }
+            httpClient = null;
+            connectionManager = null;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        shutdown();
+    }
+
+    /**
+     * Honours the server's Keep-Alive timeout if present, otherwise keeps connections alive for a bounded period.
+     */
+    private static class DefaultKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            HeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (iterator.hasNext()) {
+                HeaderElement element = iterator.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000;
+                    } catch (NumberFormatException e) {
+                        // fall back to default
+                    }
+                }
+            }
+            return DEFAULT_KEEP_ALIVE_MILLIS;
+        }
+    }
+
+    /**
+     * Runs before the response is decompressed, so it counts the bytes as received on the wire.
+     */
+    private static class WireBytesCounter implements HttpResponseInterceptor {
+        @Override
+        public void process(HttpResponse response, HttpContext context) {
+            if (response.getEntity() == null || !log.isDebugEnabled()) {
+                return;
+            }
+            AtomicLong wireBytes = new AtomicLong();
+            context.setAttribute(WIRE_BYTES_ATTRIBUTE, wireBytes);
+            response.setEntity(new CountingEntity(response.getEntity(), wireBytes, null));
+        }
+    }
+
+    /**
+     * Runs after the response is decompressed, and logs both counts once the response body is closed.
+     */
+    private static class ContentBytesCounter implements HttpResponseInterceptor {
+        @Override
+        public void process(HttpResponse response, HttpContext context) {
+            AtomicLong wireBytes = (AtomicLong) context.getAttribute(WIRE_BYTES_ATTRIBUTE);
+            if (response.getEntity() == null || wireBytes == null) {
+                return;
+            }
+            HttpRequest request = HttpCoreContext.adapt(context).getRequest();
+            String requestLine = request != null ? request.getRequestLine().toString() : "";
+            response.setEntity(new CountingEntity(response.getEntity(), new AtomicLong(), new TransferLog(requestLine, wireBytes)));
+        }
+    }
+
+    private static class TransferLog {
+        private final String requestLine;
+        private final AtomicLong wireBytes;
+
+        TransferLog(String requestLine, AtomicLong wireBytes) {
+            this.requestLine = requestLine;
+            this.wireBytes = wireBytes;
+        }
+
+        void report(long contentBytes) {
+            log.debug(String.format("%s: received %d bytes, %d bytes on the wire", requestLine, contentBytes, wireBytes.get()));
+        }
+    }
+
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final AtomicLong byteCount;
+        private final TransferLog transferLog;
+        private InputStream content;
+
+        CountingEntity(HttpEntity entity, AtomicLong byteCount, TransferLog transferLog) {
+            super(entity);
+            this.byteCount = byteCount;
+            this.transferLog = transferLog;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (content == null || !isStreaming()) {
+                content = new CountingInputStream(super.getContent(), byteCount, transferLog);
+            }
+            return content;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong byteCount;
+        private final TransferLog transferLog;
+        private boolean closed;
+
+        CountingInputStream(InputStream in, AtomicLong byteCount, TransferLog transferLog) {
+            super(in);
+            this.byteCount = byteCount;
+            this.transferLog = transferLog;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                byteCount.incrementAndGet();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                byteCount.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            byteCount.addAndGet(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!closed && transferLog != null) {
+                transferLog.report(byteCount.get());
+            }
+            closed = true;
+        }
+    }
+
+    private static class IdleConnectionEvictor extends Thread {
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private volatile boolean shutdown;
+
+        IdleConnectionEvictor(PoolingHttpClientConnectionManager connectionManager) {
+            super("bdshr-http-idle-connection-evictor");
+            this.connectionManager = connectionManager;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!shutdown) {
+                    synchronized (this) {
+                        wait(IDLE_CONNECTION_CHECK_INTERVAL_MILLIS);
+                    }
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                // terminate
+            }
+        }
+
+        void shutdown() {
+            shutdown = true;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Map;
 
 public class IdentityProviderClient {
     private static final Logger log = Logger.getLogger(IdentityProviderClient.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
     private final WebClient webClient;
 
     public IdentityProviderClient(String baseUrl, Map<String, String> headers) {
@@ -24,7 +25,7 @@ public class IdentityProviderClient {
             UrlEncodedFormEntity entity = new UrlEncodedFormEntity(getNameValuePairs(data));
             String response = webClient.post(url, entity);
             if (StringUtils.isNotBlank(response)) {
-                return new ObjectMapper().readValue(response, returnType);
+                return mapper.readValue(response, returnType);
             }
             return null;
         } catch (IdentityUnauthorizedException e) {
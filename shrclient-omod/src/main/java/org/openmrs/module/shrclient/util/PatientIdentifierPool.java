@@ -0,0 +1,61 @@
+package org.openmrs.module.shrclient.util;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.idgen.IdentifierSource;
+import org.openmrs.module.idgen.service.IdentifierSourceService;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Hands out patient identifiers from blocks generated BLOCK_SIZE at a time, instead of going to the identifier
+ * source once per patient. A block is generated and committed in a transaction of its own, so the source does not
+ * hand its identifiers out again when the transaction of the patient being saved rolls back. A block is dropped when
+ * the source changes.
+ * Identifiers left in a block when the module stops, or taken by a patient that is not saved, are never used.
+ */
+@Component
+public class PatientIdentifierPool {
+    static final int BLOCK_SIZE = 50;
+
+    private final Deque<String> identifiers = new ArrayDeque<>();
+    private Integer identifierSourceId;
+
+    public synchronized String next(IdentifierSourceService identifierSourceService, IdentifierSource identifierSource, String comment) {
+        if (identifierSource == null || identifierSource.getId() == null) {
+            return identifierSourceService.generateIdentifier(identifierSource, comment);
+        }
+        if (!identifierSource.getId().equals(identifierSourceId)) {
+            identifiers.clear();
+            identifierSourceId = identifierSource.getId();
+        }
+        if (identifiers.isEmpty()) {
+            identifiers.addAll(generateBlock(identifierSourceService, identifierSource, comment));
+        }
+        return identifiers.poll();
+    }
+
+    private List<String> generateBlock(final IdentifierSourceService identifierSourceService,
+                                       final IdentifierSource identifierSource, final String comment) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(getTransactionManager());
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate.execute(new TransactionCallback<List<String>>() {
+            @Override
+            public List<String> doInTransaction(TransactionStatus transactionStatus) {
+                return identifierSourceService.generateIdentifiers(identifierSource, BLOCK_SIZE, comment);
+            }
+        });
+    }
+
+    PlatformTransactionManager getTransactionManager() {
+        final List<PlatformTransactionManager> registeredComponents = Context.getRegisteredComponents(PlatformTransactionManager.class);
+        return registeredComponents.get(0);
+    }
+}
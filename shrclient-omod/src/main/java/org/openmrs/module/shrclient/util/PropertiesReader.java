@@ -159,6 +159,131 @@ public class PropertiesReader {
         return getShrProperties().getProperty(PropertyKeyConstants.SHR_PATIENT_ENC_PATH_PATTERN).trim();
     }
 
+    public int getShrConnectTimeout() {
+        return getIntValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_CONNECT_TIMEOUT), HttpClientProvider.DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    public int getShrSocketTimeout() {
+        return getIntValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_SOCKET_TIMEOUT), HttpClientProvider.DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    public int getShrCatchmentSyncParallelism() {
+        int parallelism = getIntValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_CATCHMENT_SYNC_PARALLELISM), 1);
+        return parallelism > 0 ? parallelism : 1;
+    }
+
+    public int getShrCatchmentSyncDeadlineSeconds() {
+        return getIntValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_CATCHMENT_SYNC_DEADLINE), 0);
+    }
+
+    public int getShrMciPatientCacheTtlSeconds() {
+        return getIntValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_MCI_PATIENT_CACHE_TTL), 300);
+    }
+
+    public int getLrPageSize() {
+        return getIntValue(getLrProperties().getProperty(PropertyKeyConstants.LR_PAGE_SIZE), 100);
+    }
+
+    public int getLrMaxEntriesPerRun() {
+        return getIntValue(getLrProperties().getProperty(PropertyKeyConstants.LR_MAX_ENTRIES_PER_RUN), 1000);
+    }
+
+    public boolean isLrPipelined() {
+        return getBooleanValue(getLrProperties().getProperty(PropertyKeyConstants.LR_PIPELINED));
+    }
+
+    public boolean isLrCursorSync() {
+        return getBooleanValue(getLrProperties().getProperty(PropertyKeyConstants.LR_CURSOR_SYNC));
+    }
+
+    public int getLrConnectTimeout() {
+        return getIntValue(getLrProperties().getProperty(PropertyKeyConstants.LR_CONNECT_TIMEOUT), HttpClientProvider.DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    public int getLrSocketTimeout() {
+        return getIntValue(getLrProperties().getProperty(PropertyKeyConstants.LR_SOCKET_TIMEOUT), HttpClientProvider.DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    public int getFrPageSize() {
+        return getIntValue(getFrProperties().getProperty(PropertyKeyConstants.FR_PAGE_SIZE), 100);
+    }
+
+    public int getFrMaxEntriesPerRun() {
+        return getIntValue(getFrProperties().getProperty(PropertyKeyConstants.FR_MAX_ENTRIES_PER_RUN), 1000);
+    }
+
+    public boolean isFrPipelined() {
+        return getBooleanValue(getFrProperties().getProperty(PropertyKeyConstants.FR_PIPELINED));
+    }
+
+    public boolean isFrCursorSync() {
+        return getBooleanValue(getFrProperties().getProperty(PropertyKeyConstants.FR_CURSOR_SYNC));
+    }
+
+    public int getFrConnectTimeout() {
+        return getIntValue(getFrProperties().getProperty(PropertyKeyConstants.FR_CONNECT_TIMEOUT), HttpClientProvider.DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    public int getFrSocketTimeout() {
+        return getIntValue(getFrProperties().getProperty(PropertyKeyConstants.FR_SOCKET_TIMEOUT), HttpClientProvider.DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    public int getPrPageSize() {
+        return getIntValue(getPrProperties().getProperty(PropertyKeyConstants.PR_PAGE_SIZE), 100);
+    }
+
+    public int getPrMaxEntriesPerRun() {
+        return getIntValue(getPrProperties().getProperty(PropertyKeyConstants.PR_MAX_ENTRIES_PER_RUN), 1000);
+    }
+
+    public boolean isPrCursorSync() {
+        return getBooleanValue(getPrProperties().getProperty(PropertyKeyConstants.PR_CURSOR_SYNC));
+    }
+
+    public int getPrConnectTimeout() {
+        return getIntValue(getPrProperties().getProperty(PropertyKeyConstants.PR_CONNECT_TIMEOUT), HttpClientProvider.DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    public int getPrSocketTimeout() {
+        return getIntValue(getPrProperties().getProperty(PropertyKeyConstants.PR_SOCKET_TIMEOUT), HttpClientProvider.DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    public boolean isShrJsonContent() {
+        String contentType = getShrProperties().getProperty(PropertyKeyConstants.SHR_CONTENT_TYPE);
+        return StringUtils.isNotBlank(contentType) && "json".equalsIgnoreCase(contentType.trim());
+    }
+
+    public boolean isShrRequestCompressionEnabled() {
+        return getBooleanValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_COMPRESS_REQUESTS));
+    }
+
+    public int getShrEncounterPushParallelism() {
+        int parallelism = getIntValue(getShrProperties().getProperty(PropertyKeyConstants.SHR_ENCOUNTER_PUSH_PARALLELISM), 1);
+        return parallelism > 0 ? parallelism : 1;
+    }
+
+    public int getMciConnectTimeout() {
+        return getIntValue(getMciProperties().getProperty(PropertyKeyConstants.MCI_CONNECT_TIMEOUT), HttpClientProvider.DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    public int getMciSocketTimeout() {
+        return getIntValue(getMciProperties().getProperty(PropertyKeyConstants.MCI_SOCKET_TIMEOUT), HttpClientProvider.DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    public boolean isMciRequestCompressionEnabled() {
+        return getBooleanValue(getMciProperties().getProperty(PropertyKeyConstants.MCI_COMPRESS_REQUESTS));
+    }
+
+    public int getMciPatientPushParallelism() {
+        int parallelism = getIntValue(getMciProperties().getProperty(PropertyKeyConstants.MCI_PATIENT_PUSH_PARALLELISM), 1);
+        return parallelism > 0 ? parallelism : 1;
+    }
+
+    public int getMciPatientSyncWaitSeconds() {
+        int waitSeconds = getIntValue(getMciProperties().getProperty(PropertyKeyConstants.MCI_PATIENT_SYNC_WAIT), 300);
+        return waitSeconds > 0 ? waitSeconds : 300;
+    }
+
     public String getIdPSignInPath() {
         return getIdentityProperties().getProperty(PropertyKeyConstants.IDP_SIGNIN_PATH).trim();
     }
@@ -173,4 +298,19 @@ public class PropertiesReader {
         }
         return 100;
     }
+
+    private boolean getBooleanValue(String value) {
+        return StringUtils.isNotBlank(value) && Boolean.parseBoolean(value.trim());
+    }
+
+    private int getIntValue(String value, int defaultValue) {
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (Exception e) {
+                // do nothing
+            }
+        }
+        return defaultValue;
+    }
 }
@@ -0,0 +1,40 @@
+package org.openmrs.module.shrclient.util;
+
+/**
+ * A row of the markers table, as held by ScheduledTaskHistory.
+ */
+class RegistryMarker {
+    private final String feedUri;
+    private String lastReadEntryId;
+    private String feedUriForLastReadEntry;
+
+    RegistryMarker(String feedUri, String lastReadEntryId, String feedUriForLastReadEntry) {
+        this.feedUri = feedUri;
+        this.lastReadEntryId = lastReadEntryId;
+        this.feedUriForLastReadEntry = feedUriForLastReadEntry;
+    }
+
+    String getFeedUri() {
+        return feedUri;
+    }
+
+    String getLastReadEntryId() {
+        return lastReadEntryId;
+    }
+
+    void setLastReadEntryId(String lastReadEntryId) {
+        this.lastReadEntryId = lastReadEntryId;
+    }
+
+    String getFeedUriForLastReadEntry() {
+        return feedUriForLastReadEntry;
+    }
+
+    void setFeedUriForLastReadEntry(String feedUriForLastReadEntry) {
+        this.feedUriForLastReadEntry = feedUriForLastReadEntry;
+    }
+
+    RegistryMarker copy() {
+        return new RegistryMarker(feedUri, lastReadEntryId, feedUriForLastReadEntry);
+    }
+}
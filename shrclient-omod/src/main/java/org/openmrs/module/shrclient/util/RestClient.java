@@ -1,39 +1,58 @@
 package org.openmrs.module.shrclient.util;
 
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.log4j.Logger;
+import org.openmrs.module.shrclient.identity.IdentityProviderService;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.openmrs.module.shrclient.model.Patient;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 public class RestClient {
 
     private static final Logger log = Logger.getLogger(RestClient.class);
-    private final ObjectMapper mapper;
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     private final WebClient webClient;
 
     public RestClient(String baseUrl, Map<String, String> headers) {
-        webClient = new WebClient(baseUrl, headers);
-        this.mapper = new ObjectMapper();
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this(baseUrl, headers, HttpClientProvider.getDefaultRequestConfig());
     }
 
-    public <T> T get(String url, Class<T> returnType) throws IdentityUnauthorizedException {
-        try {
-            String response = webClient.get(url);
+    public RestClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig) {
+        this(baseUrl, headers, requestConfig, false);
+    }
 
-            if (StringUtils.isNotBlank(response)) {
-                return mapper.readValue(response, returnType);
-            } else {
-                return null;
-            }
+    public RestClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean compressRequests) {
+        this(baseUrl, headers, requestConfig, compressRequests, null);
+    }
+
+    public RestClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean compressRequests,
+                      IdentityProviderService identityProviderService) {
+        webClient = new WebClient(baseUrl, headers, requestConfig, compressRequests, identityProviderService);
+    }
+
+    public RequestConfig getRequestConfig() {
+        return webClient.getRequestConfig();
+    }
+
+    public <T> T get(String url, final Class<T> returnType) throws IdentityUnauthorizedException {
+        try {
+            return webClient.get(url, new WebClient.ResponseReader<T>() {
+                @Override
+                public T read(InputStream content) throws IOException {
+                    return readValue(content, returnType);
+                }
+            });
         } catch (IdentityUnauthorizedException e) {
             log.error("Unauthorized identity. URL: " + url, e);
             throw e;
@@ -94,4 +113,16 @@ public class RestClient {
             throw new RuntimeException(e);
         }
     }
+
+    private <T> T readValue(InputStream content, Class<T> returnType) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(content);
+        try {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return mapper.readValue(parser, returnType);
+        } finally {
+            parser.close();
+        }
+    }
 }
@@ -1,19 +1,23 @@
 package org.openmrs.module.shrclient.util;
 
 import ca.uhn.fhir.model.dstu2.resource.Bundle;
-import ca.uhn.fhir.parser.IParser;
 import com.sun.syndication.feed.atom.Content;
 import com.sun.syndication.feed.atom.Entry;
 import com.sun.syndication.feed.atom.Feed;
 import com.sun.syndication.io.FeedException;
 import com.sun.syndication.io.WireFeedInput;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.log4j.Logger;
 import org.openmrs.module.fhir.utils.DateUtil;
+import org.openmrs.module.shrclient.identity.IdentityProviderService;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.openmrs.module.shrclient.web.controller.dto.EncounterEvent;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -23,23 +27,49 @@ public class SHRClient {
 
     private static final Logger log = Logger.getLogger(RestClient.class);
 
-    private String baseUrl;
-    private Map<String, String> headers;
+    private final WebClient webClient;
+    private final WebClient feedWebClient;
+    private volatile boolean jsonContent;
 
     public SHRClient(String baseUrl, Map<String, String> headers) {
-        this.baseUrl = baseUrl;
-        this.headers = headers;
+        this(baseUrl, headers, HttpClientProvider.getDefaultRequestConfig());
+    }
+
+    public SHRClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig) {
+        this(baseUrl, headers, requestConfig, false);
+    }
+
+    /**
+     * @param jsonContent whether bundles are sent as FHIR JSON rather than XML. If SHR rejects JSON with
+     *                    415 Unsupported Media Type, the client falls back to XML for the rest of its life.
+     */
+    public SHRClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean jsonContent) {
+        this(baseUrl, headers, requestConfig, jsonContent, false);
+    }
+
+    public SHRClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean jsonContent,
+                     boolean compressRequests) {
+        this(baseUrl, headers, requestConfig, jsonContent, compressRequests, null);
+    }
+
+    public SHRClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean jsonContent,
+                     boolean compressRequests, IdentityProviderService identityProviderService) {
+        Map<String, String> feedHeaders = new HashMap<>(headers);
+        feedHeaders.put("accept", "application/atom+xml");
+        this.webClient = new WebClient(baseUrl, headers, requestConfig, compressRequests, identityProviderService);
+        this.feedWebClient = new WebClient(baseUrl, feedHeaders, requestConfig, false, identityProviderService);
+        this.jsonContent = jsonContent;
     }
 
     @SuppressWarnings("unchecked")
     public List<EncounterEvent> getEncounters(final String url) throws IdentityUnauthorizedException {
         try {
-            Map<String, String> requestHeaders = new HashMap<>(headers);
-            requestHeaders.put("accept", "application/atom+xml");
-            WebClient webClient = new WebClient(baseUrl, requestHeaders);
-            String response = webClient.get(url);
-            WireFeedInput input = new WireFeedInput();
-            Feed feed = (Feed) input.build(new StringReader(response));
+            Feed feed = feedWebClient.get(url, new WebClient.ResponseReader<Feed>() {
+                @Override
+                public Feed read(InputStream content) throws IOException {
+                    return buildFeed(content);
+                }
+            });
             List<Entry> entries = feed.getEntries();
             List<EncounterEvent> encounterEvents = new ArrayList<>();
             for (Entry entry : entries) {
@@ -52,15 +82,23 @@ public class SHRClient {
             }
             return encounterEvents;
 
-        } catch (FeedException e) {
+        } catch (RuntimeException e) {
             log.error("Error fetching encounters for : " + url, e);
-            throw new RuntimeException(e);
+            throw e;
+        }
+    }
+
+    private Feed buildFeed(InputStream content) throws IOException {
+        try {
+            WireFeedInput input = new WireFeedInput();
+            return (Feed) input.build(new InputStreamReader(content, WebClient.UTF_8));
+        } catch (FeedException e) {
+            throw new IOException(e);
         }
     }
 
     private Bundle getBundle(String entryContent) {
-        IParser xmlParser = FhirBundleContextHolder.getFhirContext().newXmlParser();
-        return xmlParser.parseResource(Bundle.class, entryContent);
+        return FhirBundleContextHolder.getParserFor(entryContent).parseResource(Bundle.class, entryContent);
     }
 
     private String getEntryContent(Entry entry) {
@@ -71,41 +109,58 @@ public class SHRClient {
         return value.replaceFirst("^<!\\[CDATA\\[", "").replaceFirst("\\]\\]>$", "");
     }
 
-    public String post(final String url, Bundle bundle) throws IdentityUnauthorizedException {
-        try {
-            StringEntity entity = getPayload(bundle);
-            WebClient webClient = new WebClient(baseUrl, headers);
-            log.debug(String.format("Posting data %s to url %s", bundle, url));
-            return webClient.post(url, entity);
-        } catch (IdentityUnauthorizedException e) {
-            log.error("Unauthorized identity. URL: " + url, e);
-            throw e;
-        } catch (Exception e) {
-            log.error("Error during http post. URL: " + url, e);
-            throw new RuntimeException(e);
-        }
+    public String post(final String url, final Bundle bundle) throws IdentityUnauthorizedException {
+        return send(url, bundle, new Request() {
+            @Override
+            public String send(WebClient webClient, StringEntity entity) throws IdentityUnauthorizedException {
+                log.debug(String.format("Posting data %s to url %s", bundle, url));
+                return webClient.post(url, entity);
+            }
+        });
+    }
+
+    public String put(final String url, final Bundle bundle) throws IdentityUnauthorizedException {
+        return send(url, bundle, new Request() {
+            @Override
+            public String send(WebClient webClient, StringEntity entity) throws IdentityUnauthorizedException {
+                log.debug(String.format("Put request %s to url %s", bundle, url));
+                return webClient.put(url, entity);
+            }
+        });
     }
 
-    public String put(final String url, Bundle bundle) throws IdentityUnauthorizedException {
+    private interface Request {
+        String send(WebClient webClient, StringEntity entity) throws IdentityUnauthorizedException;
+    }
+
+    private String send(String url, Bundle bundle, Request request) throws IdentityUnauthorizedException {
         try {
-            StringEntity entity = getPayload(bundle);
-            WebClient webClient = new WebClient(baseUrl, headers);
-            log.debug(String.format("Put request %s to url %s", bundle, url));
-            return webClient.put(url, entity);
+            boolean json = jsonContent;
+            try {
+                return request.send(webClient, getPayload(bundle, json));
+            } catch (RuntimeException e) {
+                if (!json || !(e.getCause() instanceof UnsupportedMediaTypeException)) {
+                    throw e;
+                }
+                log.warn("SHR does not accept FHIR JSON. Falling back to XML. URL: " + url);
+                jsonContent = false;
+                return request.send(webClient, getPayload(bundle, false));
+            }
         } catch (IdentityUnauthorizedException e) {
             log.error("Unauthorized identity. URL: " + url, e);
             throw e;
         } catch (Exception e) {
-            log.error("Error during http post. URL: " + url, e);
+            log.error("Error during http request. URL: " + url, e);
             throw new RuntimeException(e);
         }
     }
 
-    private StringEntity getPayload(Bundle bundle) throws Exception {
-        IParser xmlParser = FhirBundleContextHolder.getFhirContext().newXmlParser();
-        String bundleXML = xmlParser.encodeResourceToString(bundle);
-        StringEntity entity = new StringEntity(bundleXML);
-        entity.setContentType("application/xml;charset=UTF-8");
-        return entity;
+    private StringEntity getPayload(Bundle bundle, boolean json) {
+        if (json) {
+            String bundleJSON = FhirBundleContextHolder.getJsonParser().encodeResourceToString(bundle);
+            return new StringEntity(bundleJSON, ContentType.create("application/json", WebClient.UTF_8));
+        }
+        String bundleXML = FhirBundleContextHolder.getXmlParser().encodeResourceToString(bundle);
+        return new StringEntity(bundleXML, ContentType.create("application/xml", WebClient.UTF_8));
     }
 }
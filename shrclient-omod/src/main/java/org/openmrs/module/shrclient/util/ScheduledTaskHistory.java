@@ -10,32 +10,153 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Reads and writes the markers of the registry syncs. A sync run loads all markers with loadMarkers, and the marker
+ * updates it makes are held back until saveMarkers writes them in one transaction. The loaded markers belong to the
+ * run of the calling thread. Outside of a run markers are read from the database and updates are written straight
+ * away, so a marker reset in the database is picked up by the next read.
+ * The pulls still keep their position as a feed URL and move a marker once per level or run. The markers are
+ * written at the end of the run, outside the transactions the entries are saved in, so entries that failed to save
+ * are not read again, as before.
+ */
 @Component
 public class ScheduledTaskHistory {
     private final Logger logger = Logger.getLogger(ScheduledTaskHistory.class);
 
-    public static final String QUERY_FORMAT_TO_GET_FEED_URI_FOR_LAST_READ_ENTRY = "select feed_uri_for_last_read_entry from markers where feed_uri = '%s'";
-    public static final String QUERY_FORMAT_TO_SET_FEED_URI_FOR_LAST_READ_ENTRY = "update markers set feed_uri_for_last_read_entry = '%s' where feed_uri = '%s'";
-    public static final String QUERY_FORMAT_TO_SET_LAST_READ_ENTRY_ID = "update markers set last_read_entry_id = %s where feed_uri = '%s'";
+    public static final String QUERY_TO_GET_MARKERS = "select feed_uri, last_read_entry_id, feed_uri_for_last_read_entry from markers";
+    public static final String QUERY_TO_GET_MARKER = QUERY_TO_GET_MARKERS + " where feed_uri = ?";
+    public static final String QUERY_TO_SET_MARKER = "update markers set last_read_entry_id = ?, feed_uri_for_last_read_entry = ? where feed_uri = ?";
     private Database database;
+    private final ThreadLocal<Map<String, RegistryMarker>> loadedMarkers = new ThreadLocal<>();
+    private final ThreadLocal<Map<String, RegistryMarker>> pendingMarkers = new ThreadLocal<>();
 
     @Autowired
     public ScheduledTaskHistory(Database database) {
         this.database = database;
     }
 
+    /**
+     * Loads all markers with one query and holds back the marker updates of the calling thread until saveMarkers.
+     */
+    public void loadMarkers() {
+        Map<String, RegistryMarker> markers = new LinkedHashMap<>();
+        for (RegistryMarker marker : queryMarkers(QUERY_TO_GET_MARKERS, null)) {
+            markers.put(marker.getFeedUri(), marker);
+        }
+        loadedMarkers.set(markers);
+        pendingMarkers.set(new LinkedHashMap<String, RegistryMarker>());
+    }
+
+    /**
+     * Writes the marker updates held back since loadMarkers in one transaction, joining the transaction in progress
+     * if there is one.
+     */
+    public void saveMarkers() {
+        Map<String, RegistryMarker> updatedMarkers = pendingMarkers.get();
+        pendingMarkers.remove();
+        loadedMarkers.remove();
+        if (updatedMarkers != null && !updatedMarkers.isEmpty()) {
+            writeMarkers(updatedMarkers.values());
+        }
+    }
+
+    RegistryMarker getMarker(String feedUri) {
+        Map<String, RegistryMarker> updatedMarkers = pendingMarkers.get();
+        if (updatedMarkers != null && updatedMarkers.containsKey(feedUri)) {
+            return updatedMarkers.get(feedUri);
+        }
+        Map<String, RegistryMarker> markers = loadedMarkers.get();
+        if (markers != null) {
+            return markers.get(feedUri);
+        }
+        List<RegistryMarker> markersOfFeed = queryMarkers(QUERY_TO_GET_MARKER, feedUri);
+        return markersOfFeed.isEmpty() ? null : markersOfFeed.get(0);
+    }
+
     public String getFeedUriForLastReadEntryByFeedUri(String feedUri) {
-        final String query = String.format(QUERY_FORMAT_TO_GET_FEED_URI_FOR_LAST_READ_ENTRY, feedUri);
-        return database.executeInTransaction(new Database.TxWork<String>() {
+        RegistryMarker marker = getMarker(feedUri);
+        return marker != null ? marker.getFeedUriForLastReadEntry() : StringUtils.EMPTY;
+    }
+
+    public void setLastReadEntryId(String id, String feedUri) {
+        RegistryMarker marker = getUpdatableMarker(feedUri);
+        marker.setLastReadEntryId(id);
+        updateMarker(marker);
+    }
+
+    public void setFeedUriForLastReadEntryByFeedUri(String feedUriForLastReadEntry, String feedUri) {
+        RegistryMarker marker = getUpdatableMarker(feedUri);
+        marker.setFeedUriForLastReadEntry(feedUriForLastReadEntry);
+        updateMarker(marker);
+    }
+
+    private RegistryMarker getUpdatableMarker(String feedUri) {
+        RegistryMarker marker = getMarker(feedUri);
+        return marker != null ? marker.copy() : new RegistryMarker(feedUri, null, null);
+    }
+
+    private void updateMarker(RegistryMarker marker) {
+        Map<String, RegistryMarker> updatedMarkers = pendingMarkers.get();
+        if (updatedMarkers != null) {
+            updatedMarkers.put(marker.getFeedUri(), marker);
+        } else {
+            List<RegistryMarker> singleMarker = new ArrayList<>();
+            singleMarker.add(marker);
+            writeMarkers(singleMarker);
+        }
+    }
+
+    private void writeMarkers(final Collection<RegistryMarker> updatedMarkers) {
+        database.executeInTransaction(new Database.TxWork<Object>() {
             @Override
-            public String execute(Connection connection) {
+            public Object execute(Connection connection) {
+                PreparedStatement statement = null;
+                try {
+                    statement = connection.prepareStatement(QUERY_TO_SET_MARKER);
+                    for (RegistryMarker marker : updatedMarkers) {
+                        statement.setString(1, marker.getLastReadEntryId());
+                        statement.setString(2, marker.getFeedUriForLastReadEntry());
+                        statement.setString(3, marker.getFeedUri());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                } catch (Exception e) {
+                    throw new RuntimeException("Error occurred while executing " + QUERY_TO_SET_MARKER + " : ", e);
+                } finally {
+                    try {
+                        if (statement != null) statement.close();
+                    } catch (SQLException e) {
+                        logger.warn("Could not close db statement", e);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private List<RegistryMarker> queryMarkers(final String query, final String feedUri) {
+        return database.executeInTransaction(new Database.TxWork<List<RegistryMarker>>() {
+            @Override
+            public List<RegistryMarker> execute(Connection connection) {
+                List<RegistryMarker> loadedMarkers = new ArrayList<>();
                 ResultSet resultSet = null;
                 PreparedStatement statement = null;
                 try {
                     statement = connection.prepareStatement(query);
+                    if (feedUri != null) {
+                        statement.setString(1, feedUri);
+                    }
                     resultSet = statement.executeQuery();
-                    return resultSet.next() ? resultSet.getString(1) : StringUtils.EMPTY;
+                    while (resultSet.next()) {
+                        loadedMarkers.add(new RegistryMarker(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3)));
+                    }
+                    return loadedMarkers;
                 } catch (Exception e) {
                     throw new RuntimeException("Error occurred while executing " + query + " : ", e);
                 } finally {
@@ -49,14 +170,4 @@ public class ScheduledTaskHistory {
             }
         });
     }
-
-    public void setLastReadEntryId(String id, String feedUri) {
-        String query = String.format(QUERY_FORMAT_TO_SET_LAST_READ_ENTRY_ID, id, feedUri);
-        database.save(query);
-    }
-
-    public void setFeedUriForLastReadEntryByFeedUri(String feedUriForLastReadEntry, String feedUri) {
-        String query = String.format(QUERY_FORMAT_TO_SET_FEED_URI_FOR_LAST_READ_ENTRY, feedUriForLastReadEntry, feedUri);
-        database.save(query);
-    }
 }
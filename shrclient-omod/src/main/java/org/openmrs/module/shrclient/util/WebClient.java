@@ -2,49 +2,108 @@ package org.openmrs.module.shrclient.util;
 
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultRedirectStrategy;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.log4j.Logger;
+import org.openmrs.module.shrclient.identity.IdentityProviderService;
+import org.openmrs.module.shrclient.identity.IdentityToken;
 import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.springframework.http.HttpStatus;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public class WebClient {
 
     private static final Logger log = Logger.getLogger(WebClient.class);
     public static final String ZERO_WIDTH_NO_BREAK_SPACE = "\uFEFF";
     public static final String BLANK_CHARACTER = "";
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GZIP_ENCODING = "gzip";
+    private static final byte[] UTF_8_BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
     private String baseUrl;
     private Map<String, String> headers;
+    private RequestConfig requestConfig;
+    private boolean compressRequests;
+    private IdentityProviderService identityProviderService;
 
 
     public WebClient(String baseUrl, Map<String, String> headers) {
+        this(baseUrl, headers, HttpClientProvider.getDefaultRequestConfig());
+    }
+
+    public WebClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig) {
+        this(baseUrl, headers, requestConfig, false);
+    }
+
+    /**
+     * @param compressRequests whether post and put bodies are sent gzip encoded
+     */
+    public WebClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean compressRequests) {
+        this(baseUrl, headers, requestConfig, compressRequests, null);
+    }
+
+    /**
+     * @param identityProviderService when given, every request carries the current identity token, and a request
+     *                                rejected as unauthorized is retried once with a refreshed token
+     */
+    public WebClient(String baseUrl, Map<String, String> headers, RequestConfig requestConfig, boolean compressRequests,
+                     IdentityProviderService identityProviderService) {
         this.baseUrl = baseUrl;
         this.headers = headers;
+        this.requestConfig = requestConfig;
+        this.compressRequests = compressRequests;
+        this.identityProviderService = identityProviderService;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+
+    /**
+     * Reader for the body of a successful response. The stream is UTF-8 and has its byte order mark removed;
+     * it is closed by the WebClient once the reader returns.
+     */
+    public interface ResponseReader<T> {
+        T read(InputStream content) throws IOException;
     }
 
+    private static final ResponseReader<String> STRING_READER = new ResponseReader<String>() {
+        @Override
+        public String read(InputStream content) throws IOException {
+            return readContentAsString(content);
+        }
+    };
 
     public String get(String path) throws IdentityUnauthorizedException {
+        return get(path, STRING_READER);
+    }
+
+    public <T> T get(String path, ResponseReader<T> responseReader) throws IdentityUnauthorizedException {
         String url = getUrl(path);
         log.debug("HTTP getEncounters url: " + url);
         try {
             HttpGet request = new HttpGet(URI.create(url));
 
-            return execute(request, true);
+            return execute(request, true, responseReader);
         } catch (IdentityUnauthorizedException e) {
             log.error("Unauthorized identity. URL: " + url, e);
             throw e;
@@ -59,8 +118,8 @@ public class WebClient {
         log.debug("HTTP post url: " + url);
         try {
             HttpPost request = new HttpPost(URI.create(url));
-            request.setEntity(entity);
-            return execute(request, false);
+            request.setEntity(getRequestEntity(entity));
+            return execute(request, false, STRING_READER);
         } catch (IdentityUnauthorizedException e) {
             log.error("Unauthorized identity. URL: " + url, e);
             throw e;
@@ -75,8 +134,8 @@ public class WebClient {
         log.debug("HTTP put url: " + url);
         try {
             HttpPut request = new HttpPut(URI.create(url));
-            request.setEntity(entity);
-            return execute(request, false);
+            request.setEntity(getRequestEntity(entity));
+            return execute(request, false, STRING_READER);
         } catch (IdentityUnauthorizedException e) {
             log.error("Unauthorized identity. URL: " + url, e);
             throw e;
@@ -86,42 +145,89 @@ public class WebClient {
         }
     }
 
-    private String execute(final HttpRequestBase request, boolean allowRedirection) throws IOException {
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        if (allowRedirection)
-            httpClientBuilder.setRedirectStrategy(new DefaultRedirectStrategy());
-        else
-            httpClientBuilder.disableRedirectHandling();
-        try (CloseableHttpClient httpClient = httpClientBuilder.build()) {
-            addHeaders(request);
-
-            ResponseHandler<String> responseHandler = new ResponseHandler<String>() {
-                public String handleResponse(final HttpResponse response) throws IOException {
-                    int status = response.getStatusLine().getStatusCode();
-                    HttpEntity entity = response.getEntity();
-                    String content = parseContentInputAsString(entity);
-                    if (status >= 200 && status < 300) {
-                        return entity != null ? content : null;
-                    } else if (status == HttpStatus.NOT_FOUND.value()) {
-                        return null;
-                    } else if (status == HttpStatus.UNAUTHORIZED.value()) {
-                        throw new IdentityUnauthorizedException("Identity not authorized");
-                    } else if (status == HttpStatus.FORBIDDEN.value()) {
-                        throw new ClientProtocolException("Access is denied: " + status);
-                    } else if (status >= 400 && status < 500) {
-                        String errorMessage = String.format("Unexpected response status: %s. \nResponse returned is %s.\n", status, content);
-                        throw new ClientProtocolException(errorMessage);
-                    } else {
-                        throw new ClientProtocolException("Unexpected response status: " + status);
-                    }
+    private <T> T execute(HttpRequestBase request, boolean allowRedirection, ResponseReader<T> responseReader) throws IOException {
+        request.setConfig(RequestConfig.copy(requestConfig).setRedirectsEnabled(allowRedirection).build());
+        addHeaders(request);
+        if (identityProviderService == null) {
+            return executeOnce(request, responseReader, null);
+        }
+
+        IdentityToken identityToken = identityProviderService.getOrCreateToken();
+        request.setHeader(Headers.AUTH_TOKEN_KEY, identityToken.toString());
+        try {
+            return executeOnce(request, responseReader, identityToken);
+        } catch (IdentityUnauthorizedException e) {
+            if (!isRepeatable(request)) {
+                throw e;
+            }
+            log.info("Identity token rejected. Retrying with a refreshed token. URL: " + request.getURI());
+            request.reset();
+            IdentityToken refreshedToken = identityProviderService.refreshToken(identityToken);
+            request.setHeader(Headers.AUTH_TOKEN_KEY, refreshedToken.toString());
+            return executeOnce(request, responseReader, refreshedToken);
+        }
+    }
+
+    private boolean isRepeatable(HttpRequestBase request) {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return true;
+        }
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        return entity == null || entity.isRepeatable();
+    }
+
+    private <T> T executeOnce(final HttpRequestBase request, final ResponseReader<T> responseReader,
+                              final IdentityToken identityToken) throws IOException {
+        ResponseHandler<T> responseHandler = new ResponseHandler<T>() {
+            public T handleResponse(final HttpResponse response) throws IOException {
+                int status = response.getStatusLine().getStatusCode();
+                HttpEntity entity = response.getEntity();
+                if (status >= 200 && status < 300) {
+                    return entity != null ? readContent(entity, responseReader) : null;
+                }
+                String content = entity != null ? readContent(entity, STRING_READER) : null;
+                if (status == HttpStatus.NOT_FOUND.value()) {
+                    return null;
+                } else if (status == HttpStatus.UNAUTHORIZED.value()) {
+                    throw new IdentityUnauthorizedException("Identity not authorized", identityToken);
+                } else if (status == HttpStatus.FORBIDDEN.value()) {
+                    throw new ClientProtocolException("Access is denied: " + status);
+                } else if (status == HttpStatus.UNSUPPORTED_MEDIA_TYPE.value()) {
+                    throw new UnsupportedMediaTypeException("Unsupported media type: " + request.getFirstHeader("Content-Type"));
+                } else if (status >= 400 && status < 500) {
+                    String errorMessage = String.format("Unexpected response status: %s. \nResponse returned is %s.\n", status, content);
+                    throw new ClientProtocolException(errorMessage);
+                } else {
+                    throw new ClientProtocolException("Unexpected response status: " + status);
                 }
-            };
-            return httpClient.execute(request, responseHandler);
+            }
+        };
+        return HttpClientProvider.getHttpClient().execute(request, responseHandler);
+    }
+
+    private HttpEntity getRequestEntity(HttpEntity entity) throws IOException {
+        if (!compressRequests || entity == null) {
+            return entity;
+        }
+        ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressedContent)) {
+            entity.writeTo(gzipStream);
+        }
+        ByteArrayEntity compressedEntity = new ByteArrayEntity(compressedContent.toByteArray());
+        compressedEntity.setContentType(entity.getContentType());
+        compressedEntity.setContentEncoding(GZIP_ENCODING);
+        log.debug(String.format("Sending %d bytes, %d bytes on the wire", entity.getContentLength(), compressedEntity.getContentLength()));
+        return compressedEntity;
+    }
+
+    private static <T> T readContent(HttpEntity entity, ResponseReader<T> responseReader) throws IOException {
+        try (InputStream content = withoutByteOrderMark(entity.getContent())) {
+            return responseReader.read(content);
         }
     }
 
-    private String parseContentInputAsString(HttpEntity entity) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent()));
+    private static String readContentAsString(InputStream content) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(content, UTF_8));
         String inputLine;
         StringBuilder responseString = new StringBuilder();
         while ((inputLine = reader.readLine()) != null) {
@@ -131,6 +237,25 @@ public class WebClient {
         return responseString.toString().replace(ZERO_WIDTH_NO_BREAK_SPACE, BLANK_CHARACTER);
     }
 
+    public static InputStream withoutByteOrderMark(InputStream content) throws IOException {
+        PushbackInputStream pushbackStream = new PushbackInputStream(content, UTF_8_BYTE_ORDER_MARK.length);
+        byte[] leadingBytes = new byte[UTF_8_BYTE_ORDER_MARK.length];
+        int read = 0;
+        while (read < leadingBytes.length) {
+            int count = pushbackStream.read(leadingBytes, read, leadingBytes.length - read);
+            if (count == -1) break;
+            read += count;
+        }
+        boolean hasByteOrderMark = read == UTF_8_BYTE_ORDER_MARK.length
+                && leadingBytes[0] == UTF_8_BYTE_ORDER_MARK[0]
+                && leadingBytes[1] == UTF_8_BYTE_ORDER_MARK[1]
+                && leadingBytes[2] == UTF_8_BYTE_ORDER_MARK[2];
+        if (!hasByteOrderMark && read > 0) {
+            pushbackStream.unread(leadingBytes, 0, read);
+        }
+        return pushbackStream;
+    }
+
     private void addHeaders(HttpRequestBase request) {
         Map<String, String> requestHeaders = getCommonHeaders();
         if (headers != null) {
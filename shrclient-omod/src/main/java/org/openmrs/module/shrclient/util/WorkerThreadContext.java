@@ -0,0 +1,37 @@
+package org.openmrs.module.shrclient.util;
+
+import org.apache.log4j.Logger;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+
+/**
+ * Opens and closes the OpenMRS session of a worker thread started by a sync task. Each worker gets a user context of
+ * its own, authenticated as the task's user, so workers do not share locale, location or proxy privileges.
+ */
+public class WorkerThreadContext {
+    private static final Logger logger = Logger.getLogger(WorkerThreadContext.class);
+
+    public static void open(UserContext taskUserContext) {
+        Context.openSession();
+        User taskUser = taskUserContext.getAuthenticatedUser();
+        if (taskUser == null) {
+            return;
+        }
+        Context.setUserContext(taskUserContext);
+        UserContext workerUserContext = new UserContext();
+        try {
+            workerUserContext.becomeUser(taskUser.getSystemId());
+        } catch (APIException e) {
+            logger.warn(String.format("Could not authenticate worker thread as user %s, using the task's user context.",
+                    taskUser.getSystemId()), e);
+            return;
+        }
+        Context.setUserContext(workerUserContext);
+    }
+
+    public static void close() {
+        Context.closeSession();
+    }
+}
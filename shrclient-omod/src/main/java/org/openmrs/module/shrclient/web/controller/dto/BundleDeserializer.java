@@ -1,6 +1,5 @@
 package org.openmrs.module.shrclient.web.controller.dto;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationContext;
@@ -13,9 +12,8 @@ public class BundleDeserializer extends JsonDeserializer<Bundle> {
     @Override
     public Bundle deserialize(JsonParser jp, DeserializationContext ctx) {
         try {
-            final String xml = ((TextNode) jp.readValueAsTree()).textValue();
-            FhirContext fhirContext = FhirBundleContextHolder.getFhirContext();
-            return fhirContext.newXmlParser().parseResource(Bundle.class, xml);
+            final String content = ((TextNode) jp.readValueAsTree()).textValue();
+            return FhirBundleContextHolder.getParserFor(content).parseResource(Bundle.class, content);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
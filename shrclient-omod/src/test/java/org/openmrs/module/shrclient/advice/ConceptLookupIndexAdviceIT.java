@@ -0,0 +1,88 @@
+package org.openmrs.module.shrclient.advice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.fhir.utils.ConceptLookupIndex;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConceptLookupIndexAdviceIT extends BaseModuleWebContextSensitiveTest {
+    @Autowired
+    private ConceptLookupIndex conceptLookupIndex;
+
+    private ConceptLookupIndexAdvice conceptLookupIndexAdvice;
+    private List<Class<?>> advicePoints;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("testDataSets/diagnosisTestDS.xml");
+        conceptLookupIndexAdvice = new ConceptLookupIndexAdvice(conceptLookupIndex);
+        advicePoints = getAdvicePointsInModuleConfig(ConceptLookupIndexAdvice.class);
+        for (Class<?> advicePoint : advicePoints) {
+            Context.addAdvice(advicePoint, conceptLookupIndexAdvice);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Class<?> advicePoint : advicePoints) {
+            Context.removeAdvice(advicePoint, conceptLookupIndexAdvice);
+        }
+        conceptLookupIndex.invalidate();
+    }
+
+    @Test
+    public void shouldBeWiredToTheConceptService() throws Exception {
+        assertTrue(advicePoints.contains(ConceptService.class));
+    }
+
+    @Test
+    public void shouldPickUpAnAnswerSavedThroughTheConceptService() throws Exception {
+        ConceptService conceptService = Context.getConceptService();
+        Concept diagnosisCertainty = conceptService.getConcept(404);
+        Concept primary = conceptService.getConcept(406);
+        assertEquals(Integer.valueOf(407), conceptLookupIndex.findAnswerId(diagnosisCertainty, "Confirmed"));
+        assertNull(conceptLookupIndex.findAnswerId(diagnosisCertainty, "Primary"));
+
+        diagnosisCertainty.addAnswer(new ConceptAnswer(primary));
+        conceptService.saveConcept(diagnosisCertainty);
+
+        assertEquals(Integer.valueOf(406), conceptLookupIndex.findAnswerId(diagnosisCertainty, "Primary"));
+    }
+
+    private List<Class<?>> getAdvicePointsInModuleConfig(Class<?> adviceClass) throws Exception {
+        List<Class<?>> advicePoints = new ArrayList<>();
+        try (InputStream config = getClass().getClassLoader().getResourceAsStream("config.xml")) {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(config);
+            NodeList advices = document.getElementsByTagName("advice");
+            for (int index = 0; index < advices.getLength(); index++) {
+                Element advice = (Element) advices.item(index);
+                if (adviceClass.getName().equals(getText(advice, "class"))) {
+                    advicePoints.add(Class.forName(getText(advice, "point")));
+                }
+            }
+        }
+        return advicePoints;
+    }
+
+    private String getText(Element element, String tagName) {
+        return element.getElementsByTagName(tagName).item(0).getTextContent().trim();
+    }
+}
@@ -0,0 +1,65 @@
+package org.openmrs.module.shrclient.advice;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptSource;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterRole;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.ProviderAttributeType;
+import org.openmrs.VisitType;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.VisitService;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
+
+import java.lang.reflect.Method;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MetadataRegistryAdviceTest {
+    @Mock
+    private MetadataRegistry metadataRegistry;
+
+    private MetadataRegistryAdvice metadataRegistryAdvice;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        metadataRegistryAdvice = new MetadataRegistryAdvice(metadataRegistry);
+    }
+
+    @Test
+    public void shouldInvalidateTheRegistryWhenMetadataItHoldsChanges() throws Throwable {
+        afterReturning(ConceptService.class.getMethod("saveConcept", Concept.class));
+        afterReturning(ConceptService.class.getMethod("purgeConceptClass", ConceptClass.class));
+        afterReturning(EncounterService.class.getMethod("retireEncounterRole", EncounterRole.class, String.class));
+        afterReturning(VisitService.class.getMethod("retireVisitType", VisitType.class, String.class));
+        afterReturning(PersonService.class.getMethod("savePersonAttributeType", PersonAttributeType.class));
+        afterReturning(ProviderService.class.getMethod("unretireProviderAttributeType", ProviderAttributeType.class));
+
+        verify(metadataRegistry, times(6)).invalidate();
+    }
+
+    @Test
+    public void shouldNotInvalidateTheRegistryForOtherCalls() throws Throwable {
+        afterReturning(ConceptService.class.getMethod("getConcept", Integer.class));
+        afterReturning(ConceptService.class.getMethod("saveConceptSource", ConceptSource.class));
+        afterReturning(EncounterService.class.getMethod("saveEncounter", Encounter.class));
+        afterReturning(EncounterService.class.getMethod("getEncounterRole", Integer.class));
+
+        verify(metadataRegistry, never()).invalidate();
+    }
+
+    private void afterReturning(Method method) throws Throwable {
+        metadataRegistryAdvice.afterReturning(null, method, new Object[0], null);
+    }
+}
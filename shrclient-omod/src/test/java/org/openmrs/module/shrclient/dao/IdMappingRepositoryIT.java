@@ -7,9 +7,15 @@ import org.openmrs.module.shrclient.model.IdMappingType;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 
 public class IdMappingRepositoryIT extends BaseModuleWebContextSensitiveTest {
@@ -38,10 +44,26 @@ public class IdMappingRepositoryIT extends BaseModuleWebContextSensitiveTest {
 
     }
 
+    @Test
+    public void shouldNotGetIdMappingsOfOtherHealthIdsContainingTheHealthId() throws Exception {
+        executeDataSet("testDataSets/idMappingDS.xml");
+
+        List<IdMapping> orderIdMappings = idMappingRepository.findByHealthId("Health_id", IdMappingType.MEDICATION_ORDER);
+
+        assertEquals(1, orderIdMappings.size());
+        assertEquals("76e04d42-3ca8-11e3-bf2b-0800271c1b75", orderIdMappings.get(0).getInternalId());
+    }
+
     @Test
     public void shouldUpdateAllIdMappingsByHealthId() throws Exception {
         executeDataSet("testDataSets/idMappingDS.xml");
-        idMappingRepository.replaceHealthId("Health_id", "new_HID");
+        Map<String, Integer> replacedMappingCounts = idMappingRepository.replaceHealthId("Health_id", "new_HID");
+
+        assertEquals(Integer.valueOf(1), replacedMappingCounts.get("encounter_id_mapping"));
+        assertEquals(Integer.valueOf(1), replacedMappingCounts.get("order_id_mapping"));
+        assertEquals(Integer.valueOf(1), replacedMappingCounts.get("diagnosis_id_mapping"));
+        assertEquals("/patients/Health_id2/encounters/597d18f5-bc92-4c43-b0fa-526fe6181d0e#MedicationOrder/e30e5355-cca5-4eb5-947f-0",
+                idMappingRepository.findByHealthId("Health_id2", IdMappingType.MEDICATION_ORDER).get(0).getUri());
 
         assertIdMapping(idMappingRepository.findByHealthId("new_HID", IdMappingType.ENCOUNTER).get(0),
                 new IdMapping("75e04d42-3ca8-11e3-bf2b-0800271c1b75", "75e04d42-3ca8-11e3-bf2b-0800271c1b76", IdMappingType.ENCOUNTER,
@@ -56,6 +78,106 @@ public class IdMappingRepositoryIT extends BaseModuleWebContextSensitiveTest {
 
     }
 
+    @Test
+    public void shouldNotInsertAnUnchangedExistingMappingAgain() throws Exception {
+        Date syncedAt = new Date();
+        IdMapping conceptMapping = new IdMapping("5a8b2c0e-8c4f-4b7e-9b1e-2f0a3c5d7e90", "1001", IdMappingType.CONCEPT, "/concepts/1001",
+                syncedAt, syncedAt, syncedAt);
+        idMappingRepository.saveOrUpdateIdMapping(conceptMapping);
+
+        idMappingRepository.saveOrUpdateIdMapping(conceptMapping);
+
+        assertEquals(1, countRows("shr_id_mapping", "1001"));
+    }
+
+    @Test
+    public void shouldUpdateExistingAndInsertNewMappingsSavedTogether() throws Exception {
+        executeDataSet("testDataSets/idMappingDS.xml");
+        Date syncedAt = new Date();
+        IdMapping existingConceptMapping = new IdMapping("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5", "805", IdMappingType.CONCEPT, "/concepts/805",
+                syncedAt, syncedAt, syncedAt);
+        IdMapping newConceptMapping = new IdMapping("5a8b2c0e-8c4f-4b7e-9b1e-2f0a3c5d7e90", "1001", IdMappingType.CONCEPT, "/concepts/1001",
+                syncedAt, syncedAt, syncedAt);
+
+        idMappingRepository.saveOrUpdateAll(asList(existingConceptMapping, newConceptMapping, newConceptMapping));
+
+        assertEquals(1, countRows("shr_id_mapping", "805"));
+        assertEquals(1, countRows("shr_id_mapping", "1001"));
+        assertEquals("5a8b2c0e-8c4f-4b7e-9b1e-2f0a3c5d7e90", idMappingRepository.findByExternalId("1001", IdMappingType.CONCEPT).getInternalId());
+    }
+
+    @Test
+    public void shouldFindTheMappingsOfManyInternalIdsAtOnce() throws Exception {
+        executeDataSet("testDataSets/idMappingDS.xml");
+
+        Map<String, IdMapping> idMappings = idMappingRepository.findByInternalIds(
+                asList("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5", "juydg80f-1yz9-4xv3-bz88-8z22a1dx1zt", "unmapped-concept-uuid"),
+                IdMappingType.CONCEPT);
+
+        assertEquals(2, idMappings.size());
+        assertEquals("805", idMappings.get("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5").getExternalId());
+        assertEquals("150", idMappings.get("juydg80f-1yz9-4xv3-bz88-8z22a1dx1zt").getExternalId());
+    }
+
+    @Test
+    public void shouldFindTheMappingsOfManyExternalIdsAtOnce() throws Exception {
+        executeDataSet("testDataSets/idMappingDS.xml");
+
+        Map<String, IdMapping> idMappings = idMappingRepository.findByExternalIds(asList("805", "150", "unmapped-concept-id"),
+                IdMappingType.CONCEPT);
+
+        assertEquals(2, idMappings.size());
+        assertEquals("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5", idMappings.get("805").getInternalId());
+        assertEquals("juydg80f-1yz9-4xv3-bz88-8z22a1dx1zt", idMappings.get("150").getInternalId());
+    }
+
+    @Test
+    public void shouldServePrefetchedMappingsUntilThePrefetchEndsWithTheCacheDisabled() throws Exception {
+        executeDataSet("testDataSets/idMappingDS.xml");
+        idMappingRepository.getIdMappingCache().setEnabled(false);
+        try {
+            idMappingRepository.beginPrefetch();
+            try {
+                idMappingRepository.prefetchByInternalIds(asList("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5", "unmapped-concept-uuid"),
+                        IdMappingType.CONCEPT);
+                deleteRows("shr_id_mapping", "805");
+
+                assertEquals("805", idMappingRepository.findByInternalId("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5", IdMappingType.CONCEPT).getExternalId());
+                assertNull(idMappingRepository.findByInternalId("unmapped-concept-uuid", IdMappingType.CONCEPT));
+            } finally {
+                idMappingRepository.endPrefetch();
+            }
+
+            assertNull(idMappingRepository.findByInternalId("7h7379ba-eee8-a1a3-bh2b-a8a02a1vava5", IdMappingType.CONCEPT));
+        } finally {
+            idMappingRepository.getIdMappingCache().setEnabled(true);
+        }
+    }
+
+    private void deleteRows(String mappingTable, String externalId) throws Exception {
+        PreparedStatement statement = getConnection().prepareStatement(
+                String.format("delete from %s where external_id = ?", mappingTable));
+        try {
+            statement.setString(1, externalId);
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private int countRows(String mappingTable, String externalId) throws Exception {
+        PreparedStatement statement = getConnection().prepareStatement(
+                String.format("select count(*) from %s where external_id = ?", mappingTable));
+        try {
+            statement.setString(1, externalId);
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getInt(1);
+        } finally {
+            statement.close();
+        }
+    }
+
     private void assertIdMapping(IdMapping idMapping, IdMapping expectedIdMapping) {
         assertEquals(expectedIdMapping.getInternalId(), idMapping.getInternalId());
         assertEquals(expectedIdMapping.getExternalId(), idMapping.getExternalId());
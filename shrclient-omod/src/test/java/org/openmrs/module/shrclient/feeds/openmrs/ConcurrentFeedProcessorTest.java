@@ -0,0 +1,206 @@
+package org.openmrs.module.shrclient.feeds.openmrs;
+
+import org.ict4h.atomfeed.client.domain.Event;
+import org.ict4h.atomfeed.client.domain.Marker;
+import org.ict4h.atomfeed.client.exceptions.AtomFeedClientException;
+import org.ict4h.atomfeed.client.repository.AllFailedEvents;
+import org.ict4h.atomfeed.server.domain.EventFeed;
+import org.ict4h.atomfeed.server.domain.EventRecord;
+import org.ict4h.atomfeed.server.service.EventFeedServiceImpl;
+import org.ict4h.atomfeed.server.service.feedgenerator.FeedGenerator;
+import org.ict4h.atomfeed.transaction.AFTransactionManager;
+import org.ict4h.atomfeed.transaction.AFTransactionWork;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.api.context.UserContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ConcurrentFeedProcessorTest {
+    private static final String recentEncounterUrl = "openmrs://feed/encounter/recent";
+    private static final String EVENT_ID_PREFIX = "tag:atomfeed.ict4h.org:uuid";
+
+    @Mock
+    private FeedGenerator feedGenerator;
+    @Mock
+    private AllFailedEvents mockFailedEvents;
+
+    private URI recentEncounterURI;
+    private EventFeedServiceImpl eventFeedService;
+    private AllMarkersInMemoryImpl allMarkers;
+    private AllFailedEventsInMemoryImpl allFailedEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        recentEncounterURI = new URI(recentEncounterUrl);
+        allMarkers = new AllMarkersInMemoryImpl();
+        allFailedEvents = new AllFailedEventsInMemoryImpl();
+        eventFeedService = new EventFeedServiceImpl(feedGenerator);
+        EventFeed eventFeed1 = getEventFeed(1, 5, 0);
+        EventFeed eventFeed2 = getEventFeed(2, 2, 5);
+        when(feedGenerator.getRecentFeed("encounter")).thenReturn(eventFeed2);
+        when(feedGenerator.getFeedForId(1, "encounter")).thenReturn(eventFeed1);
+        when(feedGenerator.getFeedForId(2, "encounter")).thenReturn(eventFeed2);
+    }
+
+    @Test
+    public void shouldProcessEventsFromTheFirstPageToTheRecentPage() throws Exception {
+        TestPartitionedEventWorker worker = new TestPartitionedEventWorker(null);
+
+        assertTrue(getProcessor(worker, 3).processEvents());
+
+        assertEquals(asList("content1", "content2", "content3", "content4", "content5", "content6", "content7"),
+                worker.getProcessedEvents());
+        Marker marker = allMarkers.get(recentEncounterURI);
+        assertEquals(EVENT_ID_PREFIX + "7", marker.getLastReadEntryId());
+        assertEquals("openmrs://feed/encounter/2", marker.getFeedURIForLastReadEntry().toString());
+    }
+
+    @Test
+    public void shouldProcessOnlyTheEventsAfterTheMarker() throws Exception {
+        allMarkers.put(recentEncounterURI, EVENT_ID_PREFIX + "4", new URI("openmrs://feed/encounter/1"));
+        TestPartitionedEventWorker worker = new TestPartitionedEventWorker(null);
+
+        assertTrue(getProcessor(worker, 3).processEvents());
+
+        assertEquals(asList("content5", "content6", "content7"), worker.getProcessedEvents());
+        assertEquals(EVENT_ID_PREFIX + "7", allMarkers.get(recentEncounterURI).getLastReadEntryId());
+    }
+
+    @Test
+    public void shouldListTheEventsAfterTheMarkerWithoutProcessingThem() throws Exception {
+        allMarkers.put(recentEncounterURI, EVENT_ID_PREFIX + "4", new URI("openmrs://feed/encounter/1"));
+        TestPartitionedEventWorker worker = new TestPartitionedEventWorker(null);
+
+        List<Event> events = getProcessor(worker, 3).getUnprocessedEvents();
+
+        assertEquals(3, events.size());
+        assertEquals(EVENT_ID_PREFIX + "5", events.get(0).getId());
+        assertEquals(EVENT_ID_PREFIX + "7", events.get(2).getId());
+        assertTrue(worker.getProcessedEvents().isEmpty());
+        assertEquals(EVENT_ID_PREFIX + "4", allMarkers.get(recentEncounterURI).getLastReadEntryId());
+    }
+
+    @Test
+    public void shouldAdvanceTheMarkerOnlyPastEventsProcessedBeforeTheFirstFailure() throws Exception {
+        TestPartitionedEventWorker worker = new TestPartitionedEventWorker(EVENT_ID_PREFIX + "3");
+
+        assertFalse(getProcessor(worker, 1).processEvents());
+
+        Marker marker = allMarkers.get(recentEncounterURI);
+        assertEquals(EVENT_ID_PREFIX + "2", marker.getLastReadEntryId());
+        assertEquals("openmrs://feed/encounter/1", marker.getFeedURIForLastReadEntry().toString());
+        assertEquals(asList("content1", "content2"), worker.getProcessedEvents());
+    }
+
+    @Test
+    public void shouldSkipTheLaterEventsOfAPartitionOnceOneOfItsEventsFails() throws Exception {
+        TestPartitionedEventWorker worker = new TestPartitionedEventWorker(EVENT_ID_PREFIX + "1");
+
+        assertFalse(getProcessor(worker, 3).processEvents());
+
+        assertFalse(worker.getProcessedEvents().contains("content6"));
+        assertFalse(worker.getProcessedEvents().contains("content7"));
+        assertNull(allMarkers.get(recentEncounterURI));
+    }
+
+    @Test
+    public void shouldLeaveTheFeedToTheFeedClientWhenThereAreTooManyFailedEvents() throws Exception {
+        when(mockFailedEvents.getNumberOfFailedEvents(recentEncounterUrl)).thenReturn(10);
+        TestPartitionedEventWorker worker = new TestPartitionedEventWorker(null);
+
+        assertFalse(getProcessor(worker, 3, mockFailedEvents).processEvents());
+
+        assertTrue(worker.getProcessedEvents().isEmpty());
+    }
+
+    private ConcurrentFeedProcessor getProcessor(PartitionedEventWorker worker, int parallelism) {
+        return getProcessor(worker, parallelism, allFailedEvents);
+    }
+
+    private ConcurrentFeedProcessor getProcessor(PartitionedEventWorker worker, int parallelism, AllFailedEvents failedEvents) {
+        return new ConcurrentFeedProcessor(new OpenMRSFeeds(eventFeedService, recentEncounterURI), allMarkers,
+                failedEvents, getAtomFeedTransactionManager(), recentEncounterURI, worker, 10, parallelism) {
+            @Override
+            protected UserContext getTaskUserContext() {
+                return null;
+            }
+
+            @Override
+            protected void openWorkerSession(UserContext taskUserContext) {
+            }
+
+            @Override
+            protected void closeWorkerSession() {
+            }
+        };
+    }
+
+    private AFTransactionManager getAtomFeedTransactionManager() {
+        return new AFTransactionManager() {
+            @Override
+            public <T> T executeWithTransaction(AFTransactionWork<T> txWork) throws RuntimeException {
+                return txWork.execute();
+            }
+        };
+    }
+
+    private EventFeed getEventFeed(int feedId, int eventCount, int startFrom) {
+        ArrayList<EventRecord> events = new ArrayList<>();
+        for (int idx = 1; idx <= eventCount; idx++) {
+            events.add(new EventRecord("uuid" + (startFrom + idx), "event" + (startFrom + idx), null,
+                    "content" + (startFrom + idx), new Date(), "encounter"));
+        }
+        return new EventFeed(feedId, events);
+    }
+
+    /**
+     * Puts the first and the last two events on one partition, and every other event on a partition of its own.
+     */
+    private class TestPartitionedEventWorker implements PartitionedEventWorker {
+        private final String failFor;
+        private final List<String> processedEvents = Collections.synchronizedList(new ArrayList<String>());
+
+        TestPartitionedEventWorker(String failFor) {
+            this.failFor = failFor;
+        }
+
+        @Override
+        public String getPartitionKey(Event event) {
+            String id = event.getId();
+            return id.endsWith("uuid1") || id.endsWith("uuid6") || id.endsWith("uuid7") ? "patient1" : id;
+        }
+
+        @Override
+        public void process(Event event) {
+            if (event.getId().equals(failFor)) {
+                throw new AtomFeedClientException("Intentional Fail");
+            }
+            processedEvents.add(event.getContent());
+        }
+
+        @Override
+        public void cleanUp(Event event) {
+        }
+
+        List<String> getProcessedEvents() {
+            List<String> events = new ArrayList<>(processedEvents);
+            Collections.sort(events);
+            return events;
+        }
+    }
+}
@@ -9,6 +9,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openmrs.module.fhir.utils.DateUtil;
 import org.openmrs.module.shrclient.handlers.ClientRegistry;
 import org.openmrs.module.shrclient.model.Patient;
@@ -18,6 +20,13 @@ import org.openmrs.module.shrclient.util.PropertiesReader;
 import org.openmrs.module.shrclient.util.RestClient;
 import org.openmrs.module.shrclient.web.controller.dto.EncounterEvent;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
@@ -127,6 +136,96 @@ public class DefaultEncounterFeedWorkerTest {
 
     }
 
+    @Test
+    public void shouldDownloadAndSavePatientOnceForEncountersOfSamePatient() throws Exception {
+        String healthId = "health_id";
+        String mciUrl = "http://mci.com/api/patients/";
+        when(propertiesReader.getMciPatientContext()).thenReturn(mciUrl);
+        RestClient mciClient = mock(RestClient.class);
+        when(clientRegistry.getMCIClient()).thenReturn(mciClient);
+        Patient patient = new Patient();
+        patient.setHealthId(healthId);
+        when(mciClient.get(mciUrl + healthId, Patient.class)).thenReturn(patient);
+        org.openmrs.Patient openmrsPatient = new org.openmrs.Patient();
+        when(emrPatientService.createOrUpdateEmrPatient(patient)).thenReturn(openmrsPatient);
+        when(emrPatientService.getEMRPatientByHealthId(healthId)).thenReturn(openmrsPatient);
+
+        EncounterEvent firstEncounterEvent = getEncounterEvent(mciUrl + healthId);
+        EncounterEvent secondEncounterEvent = getEncounterEvent(mciUrl + healthId);
+        encounterFeedWorker.process(firstEncounterEvent);
+        encounterFeedWorker.process(secondEncounterEvent);
+
+        verify(mciClient, times(1)).get(mciUrl + healthId, Patient.class);
+        verify(emrPatientService, times(1)).createOrUpdateEmrPatient(patient);
+        verify(emrEncounterService, times(1)).createOrUpdateEncounter(openmrsPatient, firstEncounterEvent);
+        verify(emrEncounterService, times(1)).createOrUpdateEncounter(openmrsPatient, secondEncounterEvent);
+    }
+
+    @Test
+    public void shouldProcessEncountersOfAHealthIdFromTwoCatchmentsOneAtATime() throws Exception {
+        String healthId = "health_id";
+        String mciUrl = "http://mci.com/api/patients/";
+        when(propertiesReader.getMciPatientContext()).thenReturn(mciUrl);
+        RestClient mciClient = mock(RestClient.class);
+        when(clientRegistry.getMCIClient()).thenReturn(mciClient);
+        Patient patient = new Patient();
+        patient.setHealthId(healthId);
+        when(mciClient.get(mciUrl + healthId, Patient.class)).thenReturn(patient);
+        final org.openmrs.Patient openmrsPatient = new org.openmrs.Patient();
+        final AtomicInteger patientsBeingProcessed = new AtomicInteger();
+        final AtomicInteger maxPatientsBeingProcessed = new AtomicInteger();
+        when(emrPatientService.createOrUpdateEmrPatient(patient)).thenAnswer(new Answer<org.openmrs.Patient>() {
+            @Override
+            public org.openmrs.Patient answer(InvocationOnMock invocation) throws Throwable {
+                maxPatientsBeingProcessed.set(Math.max(maxPatientsBeingProcessed.get(), patientsBeingProcessed.incrementAndGet()));
+                Thread.sleep(200);
+                patientsBeingProcessed.decrementAndGet();
+                return openmrsPatient;
+            }
+        });
+        when(emrPatientService.getEMRPatientByHealthId(healthId)).thenReturn(openmrsPatient);
+
+        final EncounterEvent encounterEventOfUnionCatchment = getEncounterEvent(mciUrl + healthId);
+        final EncounterEvent encounterEventOfUpazilaCatchment = getEncounterEvent(mciUrl + healthId);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService catchmentThreads = Executors.newFixedThreadPool(2);
+        Future<Object> unionCatchment = catchmentThreads.submit(processOnStart(start, encounterEventOfUnionCatchment));
+        Future<Object> upazilaCatchment = catchmentThreads.submit(processOnStart(start, encounterEventOfUpazilaCatchment));
+        start.countDown();
+        unionCatchment.get();
+        upazilaCatchment.get();
+        catchmentThreads.shutdown();
+
+        assertEquals(1, maxPatientsBeingProcessed.get());
+        verify(emrPatientService, times(1)).createOrUpdateEmrPatient(patient);
+        verify(emrEncounterService, times(1)).createOrUpdateEncounter(openmrsPatient, encounterEventOfUnionCatchment);
+        verify(emrEncounterService, times(1)).createOrUpdateEncounter(openmrsPatient, encounterEventOfUpazilaCatchment);
+    }
+
+    private Callable<Object> processOnStart(final CountDownLatch start, final EncounterEvent encounterEvent) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                start.await();
+                encounterFeedWorker.process(encounterEvent);
+                return null;
+            }
+        };
+    }
+
+    private EncounterEvent getEncounterEvent(String patientUrl) {
+        EncounterEvent encounterEvent = new EncounterEvent();
+        encounterEvent.setTitle("Encounter:shr-enc-id");
+        Composition composition = new Composition();
+        composition.setSubject(new ResourceReferenceDt(patientUrl));
+        Bundle.Entry atomEntry = new Bundle.Entry();
+        atomEntry.setResource(composition);
+        Bundle bundle = new Bundle();
+        bundle.addEntry(atomEntry);
+        encounterEvent.addContent(bundle);
+        return encounterEvent;
+    }
+
     private Patient getRetiredPatient(String healthId, String mergedWith) {
         Patient retiredPatient = new Patient();
         retiredPatient.setHealthId(healthId);
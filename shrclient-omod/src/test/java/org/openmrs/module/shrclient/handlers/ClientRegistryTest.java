@@ -1,6 +1,8 @@
 package org.openmrs.module.shrclient.handlers;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.http.client.config.RequestConfig;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -8,6 +10,7 @@ import org.mockito.Mock;
 import org.openmrs.module.fhir.utils.PropertyKeyConstants;
 import org.openmrs.module.shrclient.identity.IdentityStore;
 import org.openmrs.module.shrclient.identity.IdentityToken;
+import org.openmrs.module.shrclient.util.ModuleStopHooks;
 import org.openmrs.module.shrclient.util.PropertiesReader;
 import org.openmrs.module.shrclient.util.RestClient;
 import org.openmrs.module.shrclient.util.SHRClient;
@@ -17,7 +20,10 @@ import java.util.Properties;
 import java.util.UUID;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.openmrs.module.shrclient.util.Headers.*;
@@ -40,6 +46,11 @@ public class ClientRegistryTest {
         when(propertiesReader.getIdPSignInPath()).thenReturn("signin");
     }
 
+    @After
+    public void tearDown() throws Exception {
+        ClientRegistry.clearClients();
+    }
+
     @Test
     public void testCreateMCIClient() throws Exception {
         String xAuthToken = "foobarbazboom";
@@ -297,6 +308,77 @@ public class ClientRegistryTest {
                 .withHeader(clientId, matching(clientIdValue)));
     }
 
+    @Test
+    public void shouldBuildRegistryClientsWithTheirConfiguredTimeouts() throws Exception {
+        when(propertiesReader.getFacilityInstanceProperties()).thenReturn(getFacilityInstanceProperties("foobarbazboom", "18549", "email@gmail.com", "password"));
+        when(propertiesReader.getLrBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getLrConnectTimeout()).thenReturn(1000);
+        when(propertiesReader.getLrSocketTimeout()).thenReturn(2000);
+        when(propertiesReader.getFrBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getFrConnectTimeout()).thenReturn(3000);
+        when(propertiesReader.getFrSocketTimeout()).thenReturn(4000);
+        when(propertiesReader.getPrBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getPrConnectTimeout()).thenReturn(5000);
+        when(propertiesReader.getPrSocketTimeout()).thenReturn(6000);
+        ClientRegistry clientRegistry = new ClientRegistry(propertiesReader, null);
+
+        assertTimeouts(1000, 2000, clientRegistry.getLRClient().getRequestConfig());
+        assertTimeouts(3000, 4000, clientRegistry.getFRClient().getRequestConfig());
+        assertTimeouts(5000, 6000, clientRegistry.getPRClient().getRequestConfig());
+
+        when(propertiesReader.getLrSocketTimeout()).thenReturn(7000);
+        assertTimeouts(1000, 7000, clientRegistry.getLRClient().getRequestConfig());
+    }
+
+    @Test
+    public void shouldReuseMCIClientWhenIdentityTokenChanges() throws Exception {
+        when(propertiesReader.getMciBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getFacilityInstanceProperties()).thenReturn(getFacilityInstanceProperties("foobarbazboom", "18549", "email@gmail.com", "password"));
+        when(identityStore.getToken()).thenReturn(new IdentityToken(UUID.randomUUID().toString()));
+
+        RestClient mciClient = new ClientRegistry(propertiesReader, identityStore).getMCIClient();
+        assertSame(mciClient, new ClientRegistry(propertiesReader, identityStore).getMCIClient());
+
+        when(identityStore.getToken()).thenReturn(new IdentityToken(UUID.randomUUID().toString()));
+        assertSame(mciClient, new ClientRegistry(propertiesReader, identityStore).getMCIClient());
+    }
+
+    @Test
+    public void shouldRebuildSHRClientWhenIdentityProviderSettingsChange() throws Exception {
+        when(propertiesReader.getShrBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getIdPBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getFacilityInstanceProperties()).thenReturn(getFacilityInstanceProperties("foobarbazboom", "18549", "email@gmail.com", "password"));
+        when(identityStore.getToken()).thenReturn(new IdentityToken(UUID.randomUUID().toString()));
+
+        SHRClient shrClient = new ClientRegistry(propertiesReader, identityStore).getSHRClient();
+        assertSame(shrClient, new ClientRegistry(propertiesReader, identityStore).getSHRClient());
+
+        when(propertiesReader.getIdPBaseUrl()).thenReturn("http://localhost:8090");
+        SHRClient rebuiltShrClient = new ClientRegistry(propertiesReader, identityStore).getSHRClient();
+        assertNotSame(shrClient, rebuiltShrClient);
+
+        when(propertiesReader.getFacilityInstanceProperties()).thenReturn(getFacilityInstanceProperties("foobarbazboom", "18549", "email@gmail.com", "changed"));
+        assertNotSame(rebuiltShrClient, new ClientRegistry(propertiesReader, identityStore).getSHRClient());
+    }
+
+    @Test
+    public void shouldDropCachedClientsWhenTheModuleStops() throws Exception {
+        when(propertiesReader.getFrBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getFacilityInstanceProperties()).thenReturn(getFacilityInstanceProperties("foobarbazboom", "18549", "email@gmail.com", "password"));
+
+        RestClient frClient = new ClientRegistry(propertiesReader, null).getFRClient();
+        assertSame(frClient, new ClientRegistry(propertiesReader, null).getFRClient());
+
+        ModuleStopHooks.runAll();
+        assertNotSame(frClient, new ClientRegistry(propertiesReader, null).getFRClient());
+    }
+
+    private void assertTimeouts(int connectTimeout, int socketTimeout, RequestConfig requestConfig) {
+        assertEquals(connectTimeout, requestConfig.getConnectTimeout());
+        assertEquals(connectTimeout, requestConfig.getConnectionRequestTimeout());
+        assertEquals(socketTimeout, requestConfig.getSocketTimeout());
+    }
+
     private Properties getFacilityInstanceProperties(String xAuthToken, String clientIdValue, String email, String password) {
         Properties facilityInstanceProperties = new Properties();
         facilityInstanceProperties.setProperty("facility.apiToken", xAuthToken);
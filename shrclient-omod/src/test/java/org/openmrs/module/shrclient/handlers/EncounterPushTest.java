@@ -6,6 +6,7 @@ import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.openmrs.*;
 import org.openmrs.api.EncounterService;
@@ -27,9 +28,11 @@ import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -61,6 +64,9 @@ public class EncounterPushTest {
     @Mock
     private ClientRegistry clientRegistry;
 
+    @Captor
+    private ArgumentCaptor<List<IdMapping>> idMappingsArgumentCaptor;
+
     private EncounterPush encounterPush;
 
     @Before
@@ -98,10 +104,9 @@ public class EncounterPushTest {
 
         verify(encounterService).getEncounterByUuid(uuid);
         verify(shrClient).post(encountersUrl, bundle);
-        ArgumentCaptor<EncounterIdMapping> encounterDdMappingArgumentCaptor = ArgumentCaptor.forClass(EncounterIdMapping.class);
-        verify(idMappingRepository).saveOrUpdateIdMapping(encounterDdMappingArgumentCaptor.capture());
+        verify(idMappingRepository).saveOrUpdateAll(idMappingsArgumentCaptor.capture());
 
-        EncounterIdMapping encounterIdMapping = encounterDdMappingArgumentCaptor.getValue();
+        EncounterIdMapping encounterIdMapping = (EncounterIdMapping) idMappingsArgumentCaptor.getValue().get(0);
         assertEquals("shr-uuid", encounterIdMapping.getExternalId());
         assertEquals("shr-uuid", encounterIdMapping.getExternalId());
         assertEquals("encounter", encounterIdMapping.getType());
@@ -137,10 +142,10 @@ public class EncounterPushTest {
 
         verify(encounterService).getEncounterByUuid(uuid);
         verify(shrClient).post(encountersUrl, bundle);
-        ArgumentCaptor<IdMapping> idMappingArgumentCaptor = ArgumentCaptor.forClass(IdMapping.class);
-        verify(idMappingRepository, times(2)).saveOrUpdateIdMapping(idMappingArgumentCaptor.capture());
+        verify(idMappingRepository).saveOrUpdateAll(idMappingsArgumentCaptor.capture());
 
-        List<IdMapping> idMappings = idMappingArgumentCaptor.getAllValues();
+        List<IdMapping> idMappings = idMappingsArgumentCaptor.getValue();
+        assertEquals(2, idMappings.size());
         String orderUrl = "http://localhost:9997/patients/" + HEALTH_ID + "/encounters/shr-uuid" + "#MedicationOrder/" + drugOrder.getUuid();
         String externalId = String.format(MRSProperties.RESOURCE_MAPPING_EXTERNAL_ID_FORMAT, "shr-uuid", drugOrder.getUuid());
         assertTrue(containsIdMapping(idMappings, drugOrder.getUuid(), externalId, IdMappingType.MEDICATION_ORDER, orderUrl));
@@ -172,10 +177,10 @@ public class EncounterPushTest {
         encounterPush.process(event);
         
         verify(shrClient).post(encountersUrl, bundle);
-        ArgumentCaptor<IdMapping> idMappingArgumentCaptor = ArgumentCaptor.forClass(IdMapping.class);
-        verify(idMappingRepository, times(2)).saveOrUpdateIdMapping(idMappingArgumentCaptor.capture());
+        verify(idMappingRepository).saveOrUpdateAll(idMappingsArgumentCaptor.capture());
 
-        List<IdMapping> idMappings = idMappingArgumentCaptor.getAllValues();
+        List<IdMapping> idMappings = idMappingsArgumentCaptor.getValue();
+        assertEquals(2, idMappings.size());
         String orderUrl = "http://localhost:9997/patients/" + HEALTH_ID + "/encounters/shr-uuid" + "#ProcedureRequest/" + procedureOrder.getUuid();
         String externalId = String.format(MRSProperties.RESOURCE_MAPPING_EXTERNAL_ID_FORMAT, "shr-uuid", procedureOrder.getUuid());
         assertTrue(containsIdMapping(idMappings, procedureOrder.getUuid(), externalId, IdMappingType.PROCEDURE_ORDER, orderUrl));
@@ -204,7 +209,9 @@ public class EncounterPushTest {
         encounterPush.process(event);
 
         verify(shrClient).put("patients/" + HEALTH_ID + "/encounters/shr-uuid", bundle);
-        verify(idMappingRepository, times(1)).saveOrUpdateIdMapping(any(EncounterIdMapping.class));
+        verify(idMappingRepository, times(1)).saveOrUpdateAll(idMappingsArgumentCaptor.capture());
+        assertEquals(1, idMappingsArgumentCaptor.getValue().size());
+        assertTrue(idMappingsArgumentCaptor.getValue().get(0) instanceof EncounterIdMapping);
     }
 
     @Test
@@ -229,6 +236,7 @@ public class EncounterPushTest {
         verify(shrClient, never()).put("patients/" + HEALTH_ID + "/encounters/shr-uuid", bundle);
         verify(shrClient, never()).post("patients/" + HEALTH_ID + "/encounters/shr-uuid", bundle);
         verify(idMappingRepository, never()).saveOrUpdateIdMapping(any(IdMapping.class));
+        verify(idMappingRepository, never()).saveOrUpdateAll(anyCollection());
     }
 
     @Test
@@ -253,6 +261,84 @@ public class EncounterPushTest {
         encounterPush.process(event);
     }
 
+    @Test(timeout = 5000)
+    public void shouldPushEncounterOncePendingPatientIsSynced() throws Exception {
+        final String uuid = "123abc456";
+        final Event event = new Event("id100", "/openmrs/ws/rest/v1/encounter/" + uuid
+                + "?v=custom:(uuid,encounterType,patient,visit,orders:(uuid,orderType,concept,voided))");
+        org.openmrs.Encounter openMrsEncounter = getOpenMrsEncounter(uuid);
+        String patientUuid = openMrsEncounter.getPatient().getUuid();
+        final Bundle bundle = new Bundle();
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(10000);
+        patientSyncTracker.addPending(asList(patientUuid));
+        encounterPush.setPatientSyncTracker(patientSyncTracker);
+
+        when(propertiesReader.getShrProperties()).thenReturn(getShrProperties());
+        when(propertiesReader.getShrPatientEncPathPattern()).thenReturn("/patients/%s/encounters");
+        when(encounterService.getEncounterByUuid(uuid)).thenReturn(openMrsEncounter);
+        when(shrClient.post(anyString(), eq(bundle))).thenReturn("{\"encounterId\":\"shr-uuid\"}");
+        when(compositionBundleCreator.create(any(Encounter.class), eq(HEALTH_ID), any(SystemProperties.class))).thenReturn(bundle);
+        PatientIdMapping patientIdMapping = new PatientIdMapping(patientUuid, HEALTH_ID, encountersUrl);
+        when(idMappingRepository.findByInternalId(patientUuid, IdMappingType.PATIENT)).thenReturn(null, patientIdMapping);
+
+        Thread encounterSync = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encounterPush.process(event);
+            }
+        });
+        encounterSync.start();
+        encounterSync.join(200);
+        verify(shrClient, never()).post(anyString(), any(Bundle.class));
+
+        patientSyncTracker.release(patientUuid);
+        encounterSync.join();
+        verify(shrClient).post(encountersUrl, bundle);
+    }
+
+    @Test(expected = RuntimeException.class, timeout = 5000)
+    public void shouldNotWaitForPatientWithoutPendingEventInPatientFeed() throws Exception {
+        final String uuid = "123abc456";
+        final Event event = new Event("id100", "/openmrs/ws/rest/v1/encounter/" + uuid
+                + "?v=custom:(uuid,encounterType,patient,visit,orders:(uuid,orderType,concept,voided))");
+        org.openmrs.Encounter openMrsEncounter = getOpenMrsEncounter(uuid);
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(10000);
+        patientSyncTracker.addPending(asList("another-patient"));
+        encounterPush.setPatientSyncTracker(patientSyncTracker);
+
+        when(encounterService.getEncounterByUuid(uuid)).thenReturn(openMrsEncounter);
+        when(idMappingRepository.findByInternalId(openMrsEncounter.getPatient().getUuid(), IdMappingType.PATIENT)).thenReturn(null);
+
+        encounterPush.process(event);
+    }
+
+    @Test(expected = RuntimeException.class, timeout = 5000)
+    public void shouldFailAsNotSyncedOnceTheWaitForAPendingPatientTimesOut() throws Exception {
+        final String uuid = "123abc456";
+        final Event event = new Event("id100", "/openmrs/ws/rest/v1/encounter/" + uuid
+                + "?v=custom:(uuid,encounterType,patient,visit,orders:(uuid,orderType,concept,voided))");
+        org.openmrs.Encounter openMrsEncounter = getOpenMrsEncounter(uuid);
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(100);
+        patientSyncTracker.addPending(asList(openMrsEncounter.getPatient().getUuid()));
+        encounterPush.setPatientSyncTracker(patientSyncTracker);
+
+        when(encounterService.getEncounterByUuid(uuid)).thenReturn(openMrsEncounter);
+        when(idMappingRepository.findByInternalId(openMrsEncounter.getPatient().getUuid(), IdMappingType.PATIENT)).thenReturn(null);
+
+        encounterPush.process(event);
+    }
+
+    @Test
+    public void shouldPartitionEncounterEventsByPatient() throws Exception {
+        final String uuid = "123abc456";
+        final Event event = new Event("id100", "/openmrs/ws/rest/v1/encounter/" + uuid
+                + "?v=custom:(uuid,encounterType,patient,visit,orders:(uuid,orderType,concept,voided))");
+        org.openmrs.Encounter openMrsEncounter = getOpenMrsEncounter(uuid);
+        when(encounterService.getEncounterByUuid(uuid)).thenReturn(openMrsEncounter);
+
+        assertEquals(openMrsEncounter.getPatient().getUuid(), encounterPush.getPartitionKey(event));
+    }
+
     private boolean containsIdMapping(List<IdMapping> idMappings, String internalId, String externalId, String type, String url) {
         for (IdMapping idMapping : idMappings) {
             if(idMapping.getInternalId().equals(internalId)
@@ -31,6 +31,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -86,11 +87,14 @@ public class FacilityPullTest {
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=0000-00-00%2000:00:00", FRLocationEntry[].class)).thenReturn
                 (locationEntries);
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(any(String.class), eq(IdMappingType.FACILITY))).then(new Answer<Object>() {
+        when(idMappingsRepository.findByExternalIds(anyCollectionOf(String.class), eq(IdMappingType.FACILITY))).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
-                Object[] arguments = invocation.getArguments();
-                return getIdMapping(arguments[0].toString(), existingLocationUuid);
+                Map<String, IdMapping> idMappings = new HashMap<>();
+                for (Object externalId : (Collection<?>) invocation.getArguments()[0]) {
+                    idMappings.put(externalId.toString(), getIdMapping(externalId.toString(), existingLocationUuid));
+                }
+                return idMappings;
             }
         });
 
@@ -118,11 +122,14 @@ public class FacilityPullTest {
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn
                 (locationEntries);
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(any(String.class),eq(IdMappingType.FACILITY))).then(new Answer<Object>() {
+        when(idMappingsRepository.findByExternalIds(anyCollectionOf(String.class), eq(IdMappingType.FACILITY))).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
-                Object[] arguments = invocation.getArguments();
-                return getIdMapping(arguments[0].toString(), existingLocationUuid);
+                Map<String, IdMapping> idMappings = new HashMap<>();
+                for (Object externalId : (Collection<?>) invocation.getArguments()[0]) {
+                    idMappings.put(externalId.toString(), getIdMapping(externalId.toString(), existingLocationUuid));
+                }
+                return idMappings;
             }
         });
         when(locationService.getLocationByUuid(existingLocationUuid)).thenReturn(getFacilityLocation(existingLocationUuid, 100001));
@@ -153,8 +160,8 @@ public class FacilityPullTest {
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn
                 (oneLocationEntry(String.valueOf(frLocationEntryId)));
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(String.valueOf(frLocationEntryId),IdMappingType.FACILITY)).thenReturn(getIdMapping(String.valueOf
-                (frLocationEntryId), existingLocationUuid));
+        when(idMappingsRepository.findByExternalIds(asList(String.valueOf(frLocationEntryId)), IdMappingType.FACILITY)).thenReturn(
+                idMappings(getIdMapping(String.valueOf(frLocationEntryId), existingLocationUuid)));
         when(locationService.getLocationByUuid(existingLocationUuid)).thenReturn(getFacilityLocation(existingLocationUuid,
                 frLocationEntryId));
         when(locationService.saveLocation(any(Location.class))).thenReturn(null);
@@ -166,7 +173,7 @@ public class FacilityPullTest {
 
         verify(frWebClient).get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
         verify(scheduledTaskHistory).getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI);
-        verify(idMappingsRepository).findByExternalId(String.valueOf(frLocationEntryId),IdMappingType.FACILITY);
+        verify(idMappingsRepository).findByExternalIds(asList(String.valueOf(frLocationEntryId)), IdMappingType.FACILITY);
         verify(locationService).getLocationByUuid(existingLocationUuid);
         verify(locationService).saveLocation(any(Location.class));
     }
@@ -183,7 +190,6 @@ public class FacilityPullTest {
         FRLocationEntry[] entries = oneLocationEntry(String.valueOf(frLocationEntryId));
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn(entries);
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(String.valueOf(frLocationEntryId),IdMappingType.FACILITY)).thenReturn(null);
         when(locationService.saveLocation(any(Location.class))).thenReturn(getFacilityLocation(newLocationUuid, frLocationEntryId));
         when(omrsLocationService.getHIEFacilityLocationTag()).thenReturn(locationTagId);
         when(locationService.getLocationTag(locationTagId)).thenReturn(new LocationTag(locationTagId));
@@ -196,7 +202,7 @@ public class FacilityPullTest {
         //TODO: verify(propertiesReader, times(3)).getFrProperties();
         verify(frWebClient).get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
         verify(scheduledTaskHistory).getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI);
-        verify(idMappingsRepository).findByExternalId(String.valueOf(frLocationEntryId), IdMappingType.FACILITY);
+        verify(idMappingsRepository).findByExternalIds(asList(String.valueOf(frLocationEntryId)), IdMappingType.FACILITY);
 
         ArgumentCaptor<Location> locationArgumentCaptor = ArgumentCaptor.forClass(Location.class);
         verify(locationService).saveLocation(locationArgumentCaptor.capture());
@@ -220,7 +226,6 @@ public class FacilityPullTest {
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn
                 (locationEntries);
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(any(String.class), eq(IdMappingType.FACILITY))).thenReturn(null);
         when(locationService.saveLocation(any(Location.class))).thenReturn(getFacilityLocation(UUID.randomUUID().toString(), 100001));
         when(omrsLocationService.getHIEFacilityLocationTag()).thenReturn(locationTagId);
         when(locationService.getLocationTag(locationTagId)).thenReturn(new LocationTag(locationTagId));
@@ -233,7 +238,8 @@ public class FacilityPullTest {
         verify(frWebClient).get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
         verify(scheduledTaskHistory).getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI);
         verify(locationService).getLocationTag(locationTagId);
-        verify(idMappingsRepository, times(10)).findByExternalId(any(String.class), eq(IdMappingType.FACILITY));
+        verify(idMappingsRepository).findByExternalIds(anyCollectionOf(String.class), eq(IdMappingType.FACILITY));
+        verify(idMappingsRepository, never()).findByExternalId(anyString(), anyString());
         verify(locationService, times(10)).saveLocation(any(Location.class));
         verify(idMappingsRepository, times(10)).saveOrUpdateIdMapping(any(IdMapping.class));
 
@@ -260,7 +266,7 @@ public class FacilityPullTest {
 
         verify(frWebClient).get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
         verify(scheduledTaskHistory).getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI);
-        verify(idMappingsRepository, times(0)).findByExternalId(anyString(), anyString());
+        verify(idMappingsRepository, times(0)).findByExternalIds(anyCollectionOf(String.class), anyString());
         verify(locationService, times(1)).getLocationTag(locationTagId);
         verify(locationService, times(0)).saveLocation(any(Location.class));
         verify(idMappingsRepository, times(0)).saveOrUpdateIdMapping(any(IdMapping.class));
@@ -302,7 +308,6 @@ public class FacilityPullTest {
         FRLocationEntry[] entries = oneLocationEntryWithCatchments(String.valueOf(frLocationEntryId));
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn(entries);
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(String.valueOf(frLocationEntryId), IdMappingType.FACILITY)).thenReturn(null);
         when(locationService.saveLocation(any(Location.class))).thenReturn(getFacilityLocation(UUID.randomUUID().toString(),
                 frLocationEntryId));
         when(omrsLocationService.getHIEFacilityLocationTag()).thenReturn(locationTagId);
@@ -315,7 +320,7 @@ public class FacilityPullTest {
         //TODO: verify(propertiesReader, times(3)).getFrProperties();
         verify(frWebClient).get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
         verify(scheduledTaskHistory).getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI);
-        verify(idMappingsRepository).findByExternalId(String.valueOf(frLocationEntryId), IdMappingType.FACILITY);
+        verify(idMappingsRepository).findByExternalIds(asList(String.valueOf(frLocationEntryId)), IdMappingType.FACILITY);
         verify(facilityCatchmentRepository).saveMappings(frLocationEntryId, getCatchments());
 
         ArgumentCaptor<Integer> idArgumentCaptor = ArgumentCaptor.forClass(Integer.class);
@@ -336,8 +341,8 @@ public class FacilityPullTest {
         when(frWebClient.get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn
                 (oneLocationEntryWithCatchments(String.valueOf(frLocationEntryId)));
         when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
-        when(idMappingsRepository.findByExternalId(String.valueOf(frLocationEntryId), IdMappingType.FACILITY)).thenReturn(getIdMapping(String.valueOf
-                (frLocationEntryId), existingLocationUuid));
+        when(idMappingsRepository.findByExternalIds(asList(String.valueOf(frLocationEntryId)), IdMappingType.FACILITY)).thenReturn(
+                idMappings(getIdMapping(String.valueOf(frLocationEntryId), existingLocationUuid)));
         when(locationService.getLocationByUuid(existingLocationUuid)).thenReturn(getFacilityLocation(UUID.randomUUID().toString(),
                 frLocationEntryId));
         when(locationService.saveLocation(any(Location.class))).thenReturn(null);
@@ -349,7 +354,7 @@ public class FacilityPullTest {
 
         verify(frWebClient).get("list?offset=0&limit=100&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
         verify(scheduledTaskHistory).getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI);
-        verify(idMappingsRepository).findByExternalId(String.valueOf(frLocationEntryId),IdMappingType.FACILITY);
+        verify(idMappingsRepository).findByExternalIds(asList(String.valueOf(frLocationEntryId)), IdMappingType.FACILITY);
         verify(locationService).getLocationByUuid(existingLocationUuid);
         verify(locationService).saveLocation(any(Location.class));
         verify(facilityCatchmentRepository).saveMappings(frLocationEntryId, getCatchments());
@@ -361,6 +366,80 @@ public class FacilityPullTest {
         assertEquals(3, catchments.size());
     }
 
+    @Test
+    public void shouldLookUpMappingsAndSaveCatchmentsOfAPageInBulkWhenPipelined() throws IOException {
+        Integer locationTagId = 10;
+        String feedUri = "http://hrmtest.dghs.gov.bd/api/1.0/facilities/list?offset=0&limit=2&updatedSince=2000-12-31 23:55:55";
+
+        when(propertiesReader.getFrProperties()).thenReturn(frProperties);
+        when(propertiesReader.getFrBaseUrl()).thenReturn(frProperties.getProperty(FACILITY_REFERENCE_PATH));
+        when(propertiesReader.getFrPageSize()).thenReturn(2);
+        when(propertiesReader.isFrPipelined()).thenReturn(true);
+        FRLocationEntry[] entries = {oneLocationEntryWithCatchments("10000001")[0], oneLocationEntryWithCatchments("10000002")[0]};
+        when(frWebClient.get("list?offset=0&limit=2&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn(entries);
+        when(frWebClient.get("list?offset=2&limit=2&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class)).thenReturn(new FRLocationEntry[]{});
+        when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
+        when(locationService.saveLocation(any(Location.class))).thenReturn(getFacilityLocation(UUID.randomUUID().toString(), 10000001),
+                getFacilityLocation(UUID.randomUUID().toString(), 10000002));
+        when(omrsLocationService.getHIEFacilityLocationTag()).thenReturn(locationTagId);
+        when(locationService.getLocationTag(locationTagId)).thenReturn(new LocationTag(locationTagId));
+
+        FacilityPull facilityPull = new FacilityPull(propertiesReader, frWebClient,
+                locationService, scheduledTaskHistory, idMappingsRepository, locationMapper, facilityCatchmentRepository, omrsLocationService);
+
+        facilityPull.synchronize();
+
+        verify(frWebClient).get("list?offset=2&limit=2&updatedSince=2000-12-31%2023:55:55", FRLocationEntry[].class);
+        verify(idMappingsRepository).findByExternalIds(asList("10000001", "10000002"), IdMappingType.FACILITY);
+        Map<Integer, List<String>> catchmentsByLocationId = new HashMap<>();
+        catchmentsByLocationId.put(10000001, getCatchments());
+        catchmentsByLocationId.put(10000002, getCatchments());
+        verify(facilityCatchmentRepository).saveMappings(catchmentsByLocationId);
+        verify(facilityCatchmentRepository, never()).saveMappings(anyInt(), anyListOf(String.class));
+    }
+
+    @Test
+    public void shouldResumeFromUpdatedAtOfLastFacilityReadWithCursorSync() throws IOException {
+        Integer locationTagId = 10;
+        String feedUri = "http://hrmtest.dghs.gov.bd/api/1.0/facilities/list?offset=1&limit=2&updatedSince=2015-01-01 10:00:00";
+
+        when(propertiesReader.getFrProperties()).thenReturn(frProperties);
+        when(propertiesReader.getFrBaseUrl()).thenReturn(frProperties.getProperty(FACILITY_REFERENCE_PATH));
+        when(propertiesReader.getFrPageSize()).thenReturn(2);
+        when(propertiesReader.isFrCursorSync()).thenReturn(true);
+        when(frWebClient.get("list?offset=1&limit=2&updatedSince=2015-01-01%2010:00:00", FRLocationEntry[].class)).thenReturn(new FRLocationEntry[]{
+                locationEntryUpdatedAt("10000001", "2015-01-01 10:00:00"), locationEntryUpdatedAt("10000002", "2015-01-02 10:00:00")});
+        when(frWebClient.get("list?offset=1&limit=2&updatedSince=2015-01-02%2010:00:00", FRLocationEntry[].class)).thenReturn(new FRLocationEntry[]{
+                locationEntryUpdatedAt("10000003", "2015-01-02 10:00:00")});
+        when(scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FR_FACILITY_LEVEL_FEED_URI)).thenReturn(feedUri);
+        when(locationService.saveLocation(any(Location.class))).thenReturn(getFacilityLocation(UUID.randomUUID().toString(), 100001));
+        when(omrsLocationService.getHIEFacilityLocationTag()).thenReturn(locationTagId);
+        when(locationService.getLocationTag(locationTagId)).thenReturn(new LocationTag(locationTagId));
+
+        FacilityPull facilityPull = new FacilityPull(propertiesReader, frWebClient,
+                locationService, scheduledTaskHistory, idMappingsRepository, locationMapper, facilityCatchmentRepository, omrsLocationService);
+
+        facilityPull.synchronize();
+
+        verify(frWebClient).get("list?offset=1&limit=2&updatedSince=2015-01-02%2010:00:00", FRLocationEntry[].class);
+        verify(locationService, times(3)).saveLocation(any(Location.class));
+        verify(scheduledTaskHistory).setFeedUriForLastReadEntryByFeedUri(
+                "http://hrmtest.dghs.gov.bd/api/1.0/facilities/list?offset=2&limit=2&updatedSince=2015-01-02%2010:00:00", FR_FACILITY_LEVEL_FEED_URI);
+        verify(scheduledTaskHistory).setLastReadEntryId("10000003", FR_FACILITY_LEVEL_FEED_URI);
+    }
+
+    private FRLocationEntry locationEntryUpdatedAt(String id, String updatedAt) throws IOException {
+        FRLocationEntry frLocationEntry = oneLocationEntry(id)[0];
+        frLocationEntry.setUpdatedAt(updatedAt);
+        return frLocationEntry;
+    }
+
+    private Map<String, IdMapping> idMappings(IdMapping idMapping) {
+        Map<String, IdMapping> idMappings = new HashMap<>();
+        idMappings.put(idMapping.getExternalId(), idMapping);
+        return idMappings;
+    }
+
     private IdMapping getIdMapping(String externalId, String existingLocationUuid) {
         return new IdMapping(existingLocationUuid, externalId, "fr_location", StringUtils.EMPTY, new Date());
     }
@@ -19,6 +19,8 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Properties;
 
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -200,6 +202,44 @@ public class LocationPullTest {
         verify(lrWebClient).get(wardContextPath.replace(SINGLE_SPACE, ENCODED_SINGLE_SPACE), LRAddressHierarchyEntry[].class);
     }
 
+    @Test
+    public void shouldRequestPagesOfConfiguredSize() throws Exception {
+        when(propertiesReader.getLrProperties()).thenReturn(properties);
+        when(propertiesReader.getLrBaseUrl()).thenReturn("http://hrmtest.dghs.gov.bd/api/1.0/locations");
+        when(propertiesReader.getLrPageSize()).thenReturn(50);
+        when(lrWebClient.get(anyString(), eq(LRAddressHierarchyEntry[].class))).thenReturn(new LRAddressHierarchyEntry[]{});
+
+        LocationPull locationPull = new LocationPull(propertiesReader, lrWebClient, addressHierarchyService, scheduledTaskHistory, addressHierarchyEntryMapper);
+        locationPull.synchronize();
+
+        verify(lrWebClient).get("list/division?offset=0&limit=50&updatedSince=0000-00-00%2000:00:00", LRAddressHierarchyEntry[].class);
+        verify(lrWebClient).get("list/ward?offset=0&limit=50&updatedSince=0000-00-00%2000:00:00", LRAddressHierarchyEntry[].class);
+    }
+
+    @Test
+    public void shouldResumeEachLevelFromUpdatedAtOfLastEntryReadWithCursorSync() throws Exception {
+        when(propertiesReader.getLrProperties()).thenReturn(properties);
+        when(propertiesReader.getLrBaseUrl()).thenReturn("http://hrmtest.dghs.gov.bd/api/1.0/locations");
+        when(propertiesReader.getLrPageSize()).thenReturn(2);
+        when(propertiesReader.isLrCursorSync()).thenReturn(true);
+        LRAddressHierarchyEntry firstDivision = lrAddressHierarchyEntriesForDivisions[0];
+        LRAddressHierarchyEntry secondDivision = lrAddressHierarchyEntriesForDivisions[1];
+        firstDivision.setUpdatedAt("2015-01-01 10:00:00");
+        secondDivision.setUpdatedAt("2015-01-01 10:00:00");
+        when(lrWebClient.get(anyString(), eq(LRAddressHierarchyEntry[].class))).thenReturn(new LRAddressHierarchyEntry[]{});
+        when(lrWebClient.get("list/division?offset=0&limit=2&updatedSince=0000-00-00%2000:00:00", LRAddressHierarchyEntry[].class))
+                .thenReturn(new LRAddressHierarchyEntry[]{firstDivision, secondDivision});
+
+        LocationPull locationPull = new LocationPull(propertiesReader, lrWebClient, addressHierarchyService, scheduledTaskHistory, addressHierarchyEntryMapper);
+        locationPull.synchronize();
+
+        verify(lrWebClient).get("list/division?offset=2&limit=2&updatedSince=2015-01-01%2010:00:00", LRAddressHierarchyEntry[].class);
+        verify(scheduledTaskHistory).setFeedUriForLastReadEntryByFeedUri(
+                "http://hrmtest.dghs.gov.bd/api/1.0/locations/list/division?offset=2&limit=2&updatedSince=2015-01-01%2010:00:00", LR_DIVISIONS_LEVEL_FEED_URI);
+        verify(scheduledTaskHistory).setFeedUriForLastReadEntryByFeedUri(
+                "http://hrmtest.dghs.gov.bd/api/1.0/locations/list/district?offset=0&limit=2&updatedSince=0000-00-00%2000:00:00", LR_DISTRICTS_LEVEL_FEED_URI);
+    }
+
     public LRAddressHierarchyEntry[] getAddressHierarchyEntries(String responseFileName) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         URL resource = URLClassLoader.getSystemResource("LRResponse/" + responseFileName + ".json");
@@ -0,0 +1,74 @@
+package org.openmrs.module.shrclient.handlers;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PatientSyncTrackerTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test(timeout = 5000)
+    public void shouldNotWaitForReleasedPatient() throws Exception {
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(TIMEOUT_MILLIS);
+        patientSyncTracker.addPending(asList("patient-1"));
+        patientSyncTracker.release("patient-1");
+
+        patientSyncTracker.awaitRelease("patient-1");
+    }
+
+    @Test(timeout = 5000)
+    public void shouldNotWaitForPatientWithoutPendingEvent() throws Exception {
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(TIMEOUT_MILLIS);
+        patientSyncTracker.addPending(asList("patient-2"));
+
+        patientSyncTracker.awaitRelease("patient-1");
+    }
+
+    @Test(timeout = 5000)
+    public void shouldWaitUntilPatientIsReleased() throws Exception {
+        final PatientSyncTracker patientSyncTracker = new PatientSyncTracker(TIMEOUT_MILLIS);
+        patientSyncTracker.addPending(asList("patient-1", "patient-2"));
+        final CountDownLatch released = new CountDownLatch(1);
+        Thread encounterPush = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    patientSyncTracker.awaitRelease("patient-1");
+                    released.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        encounterPush.start();
+
+        patientSyncTracker.release("patient-2");
+        assertFalse(released.await(100, TimeUnit.MILLISECONDS));
+
+        patientSyncTracker.release("patient-1");
+        assertTrue(released.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldReleaseEveryPatientOncePatientFeedIsProcessed() throws Exception {
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(TIMEOUT_MILLIS);
+        patientSyncTracker.addPending(asList("patient-1"));
+        patientSyncTracker.releaseAll();
+
+        patientSyncTracker.awaitRelease("patient-1");
+    }
+
+    @Test(timeout = 5000)
+    public void shouldStopWaitingForPatientOnceTimeoutRunsOut() throws Exception {
+        PatientSyncTracker patientSyncTracker = new PatientSyncTracker(100);
+        patientSyncTracker.addPending(asList("patient-1"));
+
+        assertFalse(patientSyncTracker.awaitRelease("patient-1"));
+        assertTrue(patientSyncTracker.awaitRelease("patient-2"));
+    }
+}
\ No newline at end of file
@@ -10,6 +10,7 @@ import org.openmrs.Provider;
 import org.openmrs.ProviderAttributeType;
 import org.openmrs.api.ProviderService;
 import org.openmrs.module.fhir.utils.DateUtil;
+import org.openmrs.module.fhir.utils.MetadataRegistry;
 import org.openmrs.module.shrclient.dao.IdMappingRepository;
 import org.openmrs.module.shrclient.mapper.ProviderMapper;
 import org.openmrs.module.shrclient.model.IdMappingType;
@@ -55,7 +56,7 @@ public class ProviderPullTest {
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        ProviderMapper providerMapper = new ProviderMapper(providerService, idMappingRepository);
+        ProviderMapper providerMapper = new ProviderMapper(providerService, idMappingRepository, new MetadataRegistry(null, null, null, null, providerService));
         providerPull = new ProviderPull(propertiesReader, prClient, scheduledTaskHistory, providerMapper);
         providerEntries = getProviderEntries();
         Properties properties = new Properties();
@@ -149,6 +150,26 @@ public class ProviderPullTest {
         verify(scheduledTaskHistory, times(1)).setLastReadEntryId("23", PR_FEED_URI);
     }
 
+    @Test
+    public void shouldResumeFromUpdatedAtOfLastProviderReadWithCursorSync() throws Exception {
+        when(propertiesReader.isPrCursorSync()).thenReturn(true);
+        when(propertiesReader.getPrPageSize()).thenReturn(5);
+        for (int i = 0; i < providerEntries.length; i++) {
+            providerEntries[i].setUpdatedAt(i < 3 ? "2015-01-01 10:00:00" : "2015-01-02 10:00:00");
+        }
+        when(prClient.get("list?offset=0&limit=5&updatedSince=0000-00-00%2000:00:00", ProviderEntry[].class))
+                .thenReturn(providerEntries);
+        when(prClient.get("list?offset=2&limit=5&updatedSince=2015-01-02%2010:00:00", ProviderEntry[].class))
+                .thenReturn(new ProviderEntry[0]);
+        providerPull = new ProviderPull(propertiesReader, prClient, scheduledTaskHistory, new ProviderMapper(providerService, idMappingRepository, new MetadataRegistry(null, null, null, null, providerService)));
+
+        providerPull.synchronize();
+
+        verify(prClient, times(1)).get("list?offset=2&limit=5&updatedSince=2015-01-02%2010:00:00", ProviderEntry[].class);
+        verify(providerService, times(5)).saveProvider(any(Provider.class));
+        verify(scheduledTaskHistory, times(1)).setFeedUriForLastReadEntryByFeedUri(contains("/providers/list?offset=2&limit=5&updatedSince=2015-01-02%2010:00:00"), eq(PR_FEED_URI));
+    }
+
     private ProviderEntry[] getProviderEntries() throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         URL resource = URLClassLoader.getSystemResource("Pr/prResponse.json");
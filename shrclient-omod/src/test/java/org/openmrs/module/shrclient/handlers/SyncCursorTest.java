@@ -0,0 +1,89 @@
+package org.openmrs.module.shrclient.handlers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyncCursorTest {
+    private static final String INITIAL_DATETIME = "0000-00-00 00:00:00";
+
+    @Test
+    public void shouldMoveToTheUpdatedAtOfALaterEntryAndCountItAsRead() throws Exception {
+        SyncCursor cursor = new SyncCursor(INITIAL_DATETIME, 0);
+
+        cursor.advance("2015-01-01 10:00:00");
+
+        assertEquals("2015-01-01 10:00:00", cursor.getUpdatedSince());
+        assertEquals(1, cursor.getOffset());
+    }
+
+    @Test
+    public void shouldCountTheEntriesReadWithTheSameUpdatedAt() throws Exception {
+        SyncCursor cursor = new SyncCursor(INITIAL_DATETIME, 0);
+
+        cursor.advance("2015-01-01 10:00:00");
+        cursor.advance("2015-01-01 10:00:00");
+        cursor.advance("2015-01-01 10:00:00");
+
+        assertEquals("2015-01-01 10:00:00", cursor.getUpdatedSince());
+        assertEquals(3, cursor.getOffset());
+    }
+
+    @Test
+    public void shouldRestartTheCountWhenTheUpdatedAtMovesOn() throws Exception {
+        SyncCursor cursor = new SyncCursor("2015-01-01 10:00:00", 2);
+
+        cursor.advance("2015-01-01 10:00:00");
+        cursor.advance("2015-01-02 10:00:00");
+        cursor.advance("2015-01-02 10:00:00");
+
+        assertEquals("2015-01-02 10:00:00", cursor.getUpdatedSince());
+        assertEquals(2, cursor.getOffset());
+    }
+
+    @Test
+    public void shouldGrowTheOffsetForEntriesWithoutAnUpdatedAt() throws Exception {
+        SyncCursor cursor = new SyncCursor("2015-01-01 10:00:00", 1);
+
+        cursor.advance(null);
+        cursor.advance("");
+        cursor.advance(" ");
+
+        assertEquals("2015-01-01 10:00:00", cursor.getUpdatedSince());
+        assertEquals(4, cursor.getOffset());
+    }
+
+    @Test
+    public void shouldNotMoveBackForAnEarlierOrSentinelUpdatedAt() throws Exception {
+        SyncCursor cursor = new SyncCursor("2015-01-02 10:00:00", 1);
+
+        cursor.advance("2015-01-01 10:00:00");
+        cursor.advance(INITIAL_DATETIME);
+
+        assertEquals("2015-01-02 10:00:00", cursor.getUpdatedSince());
+        assertEquals(3, cursor.getOffset());
+    }
+
+    @Test
+    public void shouldTakeTheFirstUpdatedAtWhenResumedWithoutAnUpdatedSince() throws Exception {
+        SyncCursor cursor = new SyncCursor(null, 5);
+
+        cursor.advance(null);
+        assertEquals(null, cursor.getUpdatedSince());
+        assertEquals(6, cursor.getOffset());
+
+        cursor.advance("2015-01-01 10:00:00");
+        assertEquals("2015-01-01 10:00:00", cursor.getUpdatedSince());
+        assertEquals(1, cursor.getOffset());
+    }
+
+    @Test
+    public void shouldSkipWholePagesWithOffsetPaging() throws Exception {
+        SyncCursor cursor = new SyncCursor(INITIAL_DATETIME, 100);
+
+        cursor.skip(100);
+
+        assertEquals(INITIAL_DATETIME, cursor.getUpdatedSince());
+        assertEquals(200, cursor.getOffset());
+    }
+}
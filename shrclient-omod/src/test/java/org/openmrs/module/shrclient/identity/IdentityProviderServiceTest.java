@@ -63,6 +63,56 @@ public class IdentityProviderServiceTest {
         assertEquals(token.toString(), identityToken.toString());
     }
 
+    @Test
+    public void shouldSignInAgainForRejectedToken() throws Exception {
+        IdentityToken rejectedToken = new IdentityToken("rejected-token");
+        IdentityStore identityStore = new IdentityStore();
+        identityStore.setToken(rejectedToken);
+        stubSignIn("{\"access_token\" : \"refreshed-token\", \"expires_in\" : 3600}");
+
+        IdentityToken identityToken = new IdentityProviderService(propertiesReader, identityStore).refreshToken(rejectedToken);
+
+        assertEquals("refreshed-token", identityToken.toString());
+        assertEquals(identityToken, identityStore.getToken());
+        verify(1, postRequestedFor(urlMatching("/signin")));
+    }
+
+    @Test
+    public void shouldNotSignInAgainWhenRejectedTokenIsAlreadyReplaced() throws Exception {
+        IdentityToken refreshedToken = new IdentityToken("refreshed-token", 3600L);
+        IdentityStore identityStore = new IdentityStore();
+        identityStore.setToken(refreshedToken);
+        stubSignIn("{\"access_token\" : \"another-token\"}");
+
+        IdentityToken identityToken = new IdentityProviderService(propertiesReader, identityStore)
+                .refreshToken(new IdentityToken("rejected-token"));
+
+        assertEquals(refreshedToken, identityToken);
+        verify(0, postRequestedFor(urlMatching("/signin")));
+    }
+
+    @Test
+    public void shouldSignInAgainWhenTokenHasExpired() throws Exception {
+        IdentityStore identityStore = new IdentityStore();
+        identityStore.setToken(new IdentityToken("expired-token", 0L));
+        stubSignIn("{\"access_token\" : \"refreshed-token\"}");
+
+        IdentityToken identityToken = new IdentityProviderService(propertiesReader, identityStore).getOrCreateToken();
+
+        assertEquals("refreshed-token", identityToken.toString());
+    }
+
+    private void stubSignIn(String response) {
+        setUpIdentityProperties();
+        when(propertiesReader.getIdPBaseUrl()).thenReturn("http://localhost:8089");
+        when(propertiesReader.getIdPSignInPath()).thenReturn("signin");
+        stubFor(post(urlMatching("/signin"))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withBody(response)
+                ));
+    }
+
     private void setUpIdentityProperties() {
         Properties idpProperties = getIdpProperties(xAuthTokenKey, clientId);
         Properties facilityInstanceProperties = getFacilityInstanceProperties(xAuthToken, clientIdValue, email, password);
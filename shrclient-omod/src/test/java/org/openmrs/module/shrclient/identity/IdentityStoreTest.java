@@ -0,0 +1,31 @@
+package org.openmrs.module.shrclient.identity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityStoreTest {
+
+    @Test
+    public void shouldClearTheRejectedToken() throws Exception {
+        IdentityStore identityStore = new IdentityStore();
+        IdentityToken rejectedToken = new IdentityToken("rejected-token");
+        identityStore.setToken(rejectedToken);
+
+        assertTrue(identityStore.clearToken(rejectedToken));
+        assertNull(identityStore.getToken());
+    }
+
+    @Test
+    public void shouldKeepATokenRefreshedAfterTheRejection() throws Exception {
+        IdentityStore identityStore = new IdentityStore();
+        IdentityToken refreshedToken = new IdentityToken("refreshed-token");
+        identityStore.setToken(refreshedToken);
+
+        assertFalse(identityStore.clearToken(new IdentityToken("rejected-token")));
+        assertSame(refreshedToken, identityStore.getToken());
+    }
+}
@@ -0,0 +1,24 @@
+package org.openmrs.module.shrclient.util;
+
+import ca.uhn.fhir.parser.JsonParser;
+import ca.uhn.fhir.parser.XmlParser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class FhirBundleContextHolderTest {
+
+    @Test
+    public void shouldPickTheJsonParserForAJsonDocument() throws Exception {
+        assertTrue(FhirBundleContextHolder.getParserFor("{\"resourceType\":\"Bundle\"}") instanceof JsonParser);
+        assertTrue(FhirBundleContextHolder.getParserFor("\n  {\"resourceType\":\"Bundle\"}") instanceof JsonParser);
+    }
+
+    @Test
+    public void shouldPickTheXmlParserForAnythingElse() throws Exception {
+        assertTrue(FhirBundleContextHolder.getParserFor("<Bundle xmlns=\"http://hl7.org/fhir\"/>") instanceof XmlParser);
+        assertTrue(FhirBundleContextHolder.getParserFor("  <?xml version=\"1.0\"?><Bundle/>") instanceof XmlParser);
+        assertTrue(FhirBundleContextHolder.getParserFor("") instanceof XmlParser);
+        assertTrue(FhirBundleContextHolder.getParserFor(null) instanceof XmlParser);
+    }
+}
@@ -0,0 +1,55 @@
+package org.openmrs.module.shrclient.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.module.fhir.utils.GlobalPropertyLookUpService;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@org.springframework.test.context.ContextConfiguration(locations = {"classpath:TestingApplicationContext.xml"}, inheritLocations = true)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class GlobalPropertyLookUpServiceIT extends BaseModuleWebContextSensitiveTest {
+
+    @Autowired
+    GlobalPropertyLookUpService globalPropertyLookUpService;
+
+    @Autowired
+    AdministrationService administrationService;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("testDataSets/omrsGlobalPropertyTestDS.xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteAllData();
+    }
+
+    @Test
+    public void shouldReadAGlobalPropertyValueAgainOnceItIsSaved() throws Exception {
+        assertEquals("555", globalPropertyLookUpService.getGlobalPropertyValue("concept.causeOfDeath"));
+        GlobalProperty causeOfDeath = administrationService.getGlobalPropertyObject("concept.causeOfDeath");
+        causeOfDeath.setPropertyValue("556");
+
+        administrationService.saveGlobalProperty(causeOfDeath);
+
+        assertEquals("556", globalPropertyLookUpService.getGlobalPropertyValue("concept.causeOfDeath"));
+    }
+
+    @Test
+    public void shouldForgetAGlobalPropertyValueOnceItIsDeleted() throws Exception {
+        assertEquals("555", globalPropertyLookUpService.getGlobalPropertyValue("concept.causeOfDeath"));
+
+        administrationService.purgeGlobalProperty(administrationService.getGlobalPropertyObject("concept.causeOfDeath"));
+
+        assertNull(globalPropertyLookUpService.getGlobalPropertyValue("concept.causeOfDeath"));
+    }
+}
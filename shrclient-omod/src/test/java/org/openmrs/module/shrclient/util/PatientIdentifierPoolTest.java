@@ -0,0 +1,107 @@
+package org.openmrs.module.shrclient.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.openmrs.api.APIException;
+import org.openmrs.module.idgen.SequentialIdentifierGenerator;
+import org.openmrs.module.idgen.service.IdentifierSourceService;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PatientIdentifierPoolTest {
+    @Mock
+    private IdentifierSourceService identifierSourceService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private PatientIdentifierPool patientIdentifierPool;
+    private SequentialIdentifierGenerator identifierSource;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus);
+        patientIdentifierPool = new PatientIdentifierPool() {
+            @Override
+            PlatformTransactionManager getTransactionManager() {
+                return transactionManager;
+            }
+        };
+        identifierSource = identifierSource(1);
+    }
+
+    @Test
+    public void shouldHandOutIdentifiersFromOneGeneratedBlock() throws Exception {
+        when(identifierSourceService.generateIdentifiers(identifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient"))
+                .thenReturn(asList("BDH200001", "BDH200002"), asList("BDH200003"));
+
+        assertEquals("BDH200001", patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient"));
+        assertEquals("BDH200002", patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient"));
+        assertEquals("BDH200003", patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient"));
+
+        verify(identifierSourceService, times(2)).generateIdentifiers(identifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient");
+    }
+
+    @Test
+    public void shouldDropTheBlockWhenTheIdentifierSourceChanges() throws Exception {
+        SequentialIdentifierGenerator anotherIdentifierSource = identifierSource(2);
+        when(identifierSourceService.generateIdentifiers(identifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient"))
+                .thenReturn(asList("BDH200001", "BDH200002"));
+        when(identifierSourceService.generateIdentifiers(anotherIdentifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient"))
+                .thenReturn(asList("GAN200001"));
+
+        assertEquals("BDH200001", patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient"));
+        assertEquals("GAN200001", patientIdentifierPool.next(identifierSourceService, anotherIdentifierSource, "MCI Patient"));
+    }
+
+    @Test
+    public void shouldGenerateTheBlockInATransactionOfItsOwn() throws Exception {
+        when(identifierSourceService.generateIdentifiers(identifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient"))
+                .thenReturn(asList("BDH200001"));
+
+        patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient");
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getValue().getPropagationBehavior());
+        verify(transactionManager).commit(transactionStatus);
+    }
+
+    @Test
+    public void shouldRollBackAndPoolNothingWhenGeneratingTheBlockFails() throws Exception {
+        when(identifierSourceService.generateIdentifiers(identifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient"))
+                .thenThrow(new APIException("Could not generate identifiers")).thenReturn(asList("BDH200001"));
+
+        try {
+            patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient");
+            fail("Expected the identifier generation to fail");
+        } catch (APIException e) {
+            verify(transactionManager).rollback(transactionStatus);
+            verify(transactionManager, never()).commit(transactionStatus);
+        }
+
+        assertEquals("BDH200001", patientIdentifierPool.next(identifierSourceService, identifierSource, "MCI Patient"));
+        verify(identifierSourceService, times(2)).generateIdentifiers(identifierSource, PatientIdentifierPool.BLOCK_SIZE, "MCI Patient");
+    }
+
+    private SequentialIdentifierGenerator identifierSource(int id) {
+        SequentialIdentifierGenerator identifierSource = new SequentialIdentifierGenerator();
+        identifierSource.setId(id);
+        return identifierSource;
+    }
+}
@@ -5,6 +5,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.openmrs.module.shrclient.identity.IdentityProviderService;
+import org.openmrs.module.shrclient.identity.IdentityToken;
+import org.openmrs.module.shrclient.identity.IdentityUnauthorizedException;
 import org.openmrs.module.shrclient.model.Status;
 import org.openmrs.module.shrclient.model.mci.api.MciPatientUpdateResponse;
 import org.openmrs.module.shrclient.model.Address;
@@ -27,6 +30,10 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class RestClientTest {
 
@@ -151,6 +158,34 @@ public class RestClientTest {
                 .withHeader(authHeaderKey, matching(authHeader.get(authHeaderKey))));
     }
 
+    @Test
+    public void shouldGzipRequestBodyWhenCompressionIsEnabled() throws Exception {
+        final Map<String, String> authHeader = Headers.getBasicAuthHeader("user", "password");
+        RestClient restClient = new RestClient("http://localhost:8089", authHeader,
+                HttpClientProvider.getDefaultRequestConfig(), true);
+
+        final String contentTypeHeader = "Content-Type";
+        final String contentTypeJson = "application/json";
+        String url = "/patient";
+
+        stubFor(post(urlEqualTo(url))
+                .withHeader("Content-Encoding", equalTo("gzip"))
+                .willReturn(aResponse()
+                        .withStatus(201)
+                        .withHeader(contentTypeHeader, contentTypeJson)
+                        .withBody("{\"http_status\": 201,\"id\":\"5916473242339508225\"}")));
+
+        final Patient patient = new Patient();
+        patient.setGivenName("John");
+
+        MciPatientUpdateResponse result = restClient.post(url, patient, MciPatientUpdateResponse.class);
+        assertEquals("5916473242339508225", result.getHealthId());
+
+        verify(1, postRequestedFor(urlMatching(url))
+                .withHeader("Content-Encoding", matching("gzip"))
+                .withHeader(contentTypeHeader, matching(contentTypeJson)));
+    }
+
 
     @Test
     public void shouldPutPatientAndIdentifyHealthId() throws Exception {
@@ -203,6 +238,54 @@ public class RestClientTest {
 
     }
 
+    @Test
+    public void shouldRetryOnceWithRefreshedTokenWhenUnauthorized() throws Exception {
+        final String authTokenKey = "X-Auth-Token";
+        final String url = "/patient/100";
+        IdentityToken expiredToken = new IdentityToken("expired-token");
+        IdentityProviderService identityProviderService = mock(IdentityProviderService.class);
+        when(identityProviderService.getOrCreateToken()).thenReturn(expiredToken);
+        when(identityProviderService.refreshToken(expiredToken)).thenReturn(new IdentityToken("refreshed-token"));
+        RestClient restClient = new RestClient("http://localhost:8089", Headers.getIdentityHeader(expiredToken),
+                HttpClientProvider.getDefaultRequestConfig(), false, identityProviderService);
+
+        final Patient patient = new Patient();
+        patient.setGivenName("John");
+        stubFor(get(urlEqualTo(url))
+                .withHeader(authTokenKey, equalTo("expired-token"))
+                .willReturn(aResponse().withStatus(401)));
+        stubFor(get(urlEqualTo(url))
+                .withHeader(authTokenKey, equalTo("refreshed-token"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(toJson(patient))));
+
+        assertEquals(patient, restClient.get(url, Patient.class));
+        verify(1, getRequestedFor(urlEqualTo(url)).withHeader(authTokenKey, equalTo("expired-token")));
+        verify(1, getRequestedFor(urlEqualTo(url)).withHeader(authTokenKey, equalTo("refreshed-token")));
+    }
+
+    @Test
+    public void shouldReportTheTokenRejectedOnRetry() throws Exception {
+        final String url = "/patient/100";
+        IdentityToken expiredToken = new IdentityToken("expired-token");
+        IdentityToken refreshedToken = new IdentityToken("refreshed-token");
+        IdentityProviderService identityProviderService = mock(IdentityProviderService.class);
+        when(identityProviderService.getOrCreateToken()).thenReturn(expiredToken);
+        when(identityProviderService.refreshToken(expiredToken)).thenReturn(refreshedToken);
+        RestClient restClient = new RestClient("http://localhost:8089", Headers.getIdentityHeader(expiredToken),
+                HttpClientProvider.getDefaultRequestConfig(), false, identityProviderService);
+        stubFor(get(urlEqualTo(url)).willReturn(aResponse().withStatus(401)));
+
+        try {
+            restClient.get(url, Patient.class);
+            fail("Expected the request to be unauthorized");
+        } catch (IdentityUnauthorizedException e) {
+            assertSame(refreshedToken, e.getRejectedToken());
+        }
+    }
+
     private String toJson(Patient patient) throws JsonProcessingException {
         return new ObjectMapper().writeValueAsString(patient);
     }
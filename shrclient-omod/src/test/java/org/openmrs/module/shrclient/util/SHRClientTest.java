@@ -0,0 +1,56 @@
+package org.openmrs.module.shrclient.util;
+
+import ca.uhn.fhir.model.dstu2.resource.Bundle;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+
+public class SHRClientTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    @Test
+    public void shouldPostBundleAsJson() throws Exception {
+        String url = "/patients/1234567890123/encounters";
+        stubFor(post(urlEqualTo(url))
+                .withHeader("Content-Type", containing("application/json"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"encounterId\":\"shr-uuid\"}")));
+
+        SHRClient shrClient = new SHRClient("http://localhost:8089", new HashMap<String, String>(),
+                HttpClientProvider.getDefaultRequestConfig(), true);
+
+        assertEquals("{\"encounterId\":\"shr-uuid\"}", shrClient.post(url, new Bundle()));
+        verify(postRequestedFor(urlEqualTo(url)).withRequestBody(containing("\"resourceType\":\"Bundle\"")));
+    }
+
+    @Test
+    public void shouldFallBackToXmlWhenJsonIsNotSupported() throws Exception {
+        String url = "/patients/1234567890123/encounters";
+        stubFor(post(urlEqualTo(url))
+                .withHeader("Content-Type", containing("application/json"))
+                .willReturn(aResponse().withStatus(415)));
+        stubFor(post(urlEqualTo(url))
+                .withHeader("Content-Type", containing("application/xml"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"encounterId\":\"shr-uuid\"}")));
+
+        SHRClient shrClient = new SHRClient("http://localhost:8089", new HashMap<String, String>(),
+                HttpClientProvider.getDefaultRequestConfig(), true);
+
+        assertEquals("{\"encounterId\":\"shr-uuid\"}", shrClient.post(url, new Bundle()));
+        assertEquals("{\"encounterId\":\"shr-uuid\"}", shrClient.post(url, new Bundle()));
+        verify(1, postRequestedFor(urlEqualTo(url)).withHeader("Content-Type", containing("application/json")));
+        verify(2, postRequestedFor(urlEqualTo(url)).withHeader("Content-Type", containing("application/xml")));
+    }
+}
@@ -0,0 +1,103 @@
+package org.openmrs.module.shrclient.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ScheduledTaskHistoryTest {
+    private static final String FEED_URI = "urn://pr/providers";
+    private static final String FEED_URI_FOR_LAST_READ_ENTRY = "http://pr.com/api/1.0/providers/list?offset=0&limit=100&updatedSince=2015-01-01%2010:00:00";
+
+    @Mock
+    private Database database;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement selectStatement;
+    @Mock
+    private PreparedStatement updateStatement;
+    @Mock
+    private ResultSet resultSet;
+
+    private ScheduledTaskHistory scheduledTaskHistory;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(database.executeInTransaction(any(Database.TxWork.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return ((Database.TxWork) invocation.getArguments()[0]).execute(connection);
+            }
+        });
+        when(connection.prepareStatement(ScheduledTaskHistory.QUERY_TO_GET_MARKERS)).thenReturn(selectStatement);
+        when(connection.prepareStatement(ScheduledTaskHistory.QUERY_TO_SET_MARKER)).thenReturn(updateStatement);
+        when(selectStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn(FEED_URI);
+        when(resultSet.getString(2)).thenReturn("23");
+        when(resultSet.getString(3)).thenReturn(FEED_URI_FOR_LAST_READ_ENTRY);
+        scheduledTaskHistory = new ScheduledTaskHistory(database);
+    }
+
+    @Test
+    public void shouldReadLoadedMarkersAndHoldBackUpdatesUntilSaved() throws Exception {
+        scheduledTaskHistory.loadMarkers();
+
+        assertEquals(FEED_URI_FOR_LAST_READ_ENTRY, scheduledTaskHistory.getFeedUriForLastReadEntryByFeedUri(FEED_URI));
+        scheduledTaskHistory.setFeedUriForLastReadEntryByFeedUri("http://pr.com/api/1.0/providers/list?offset=1", FEED_URI);
+        scheduledTaskHistory.setLastReadEntryId("24", FEED_URI);
+        verify(connection, never()).prepareStatement(ScheduledTaskHistory.QUERY_TO_SET_MARKER);
+
+        scheduledTaskHistory.saveMarkers();
+
+        verify(selectStatement, times(1)).executeQuery();
+        verify(updateStatement).setString(1, "24");
+        verify(updateStatement).setString(2, "http://pr.com/api/1.0/providers/list?offset=1");
+        verify(updateStatement).setString(3, FEED_URI);
+        verify(updateStatement, times(1)).addBatch();
+        verify(updateStatement, times(1)).executeBatch();
+        verify(connection, never()).prepareStatement(ScheduledTaskHistory.QUERY_TO_GET_MARKER);
+    }
+
+    @Test
+    public void shouldReadMarkersFromTheDatabaseOutsideOfASyncRun() throws Exception {
+        when(connection.prepareStatement(ScheduledTaskHistory.QUERY_TO_GET_MARKER)).thenReturn(selectStatement);
+        when(resultSet.next()).thenReturn(true, false, true, false, true, false);
+        when(resultSet.getString(2)).thenReturn("23", "23", null);
+
+        scheduledTaskHistory.loadMarkers();
+        scheduledTaskHistory.saveMarkers();
+        assertEquals("23", scheduledTaskHistory.getMarker(FEED_URI).getLastReadEntryId());
+        assertEquals(null, scheduledTaskHistory.getMarker(FEED_URI).getLastReadEntryId());
+
+        verify(selectStatement, times(3)).executeQuery();
+    }
+
+    @Test
+    public void shouldWriteMarkerUpdatesStraightAwayOutsideOfASyncRun() throws Exception {
+        when(connection.prepareStatement(ScheduledTaskHistory.QUERY_TO_GET_MARKER)).thenReturn(selectStatement);
+
+        scheduledTaskHistory.setLastReadEntryId("24", FEED_URI);
+
+        verify(selectStatement).setString(1, FEED_URI);
+        verify(updateStatement).setString(1, "24");
+        verify(updateStatement).setString(2, FEED_URI_FOR_LAST_READ_ENTRY);
+        verify(updateStatement).setString(3, FEED_URI);
+        verify(updateStatement, times(1)).executeBatch();
+    }
+}